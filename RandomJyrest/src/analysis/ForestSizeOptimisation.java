@@ -17,8 +17,9 @@ import java.util.Map;
 import java.util.Random;
 
 import randomjyrest.Forest;
+import randomjyrest.LoadDataset;
+import randomjyrest.LoadedDataset;
 import randomjyrest.PredictionAnalysis;
-import utilities.DetermineDatasetProperties;
 
 /**
  * Implements the testing of different forest sizes.
@@ -214,11 +215,15 @@ public class ForestSizeOptimisation
 			seeds.add(seedToUse);
 		}
 		
+		// Load the dataset once. Every forest reuses its sorted feature columns.
+		LoadedDataset loadedData = LoadDataset.main(inputFile, featuresToRemove);
+		boolean[] featureMask = loadedData.createFeatureMask(featuresToRemove);
+		
 		// Determine the class of each observation.
-		List<String> classOfObservations = DetermineDatasetProperties.determineObservationClasses(inputFile);
+		List<String> classOfObservations = loadedData.determineObservationClasses();
 		
 		// Determine the vector of weights for the observations.
-		double[] weights = DetermineDatasetProperties.determineObservationWeights(inputFile, classWeights);
+		double[] weights = loadedData.determineObservationWeights(classWeights);
 
 		for (int i : forestSizesToUse)
 		{
@@ -246,7 +251,7 @@ public class ForestSizeOptimisation
 			{
 				// Grow the forest, generate the OOB predictions and construct the confusion matrix.
 				Forest forest = new Forest();
-				Map<String, double[]> predictions = forest.main(inputFile, i, mtry, featuresToRemove, weights, seeds.get(j),
+				Map<String, double[]> predictions = forest.main(loadedData, featureMask, i, mtry, weights, seeds.get(j),
 						numberOfThreads, isCalculateOOB);
 				Map<String, Map<String, Double>> confusionMatrix = PredictionAnalysis.calculateConfusionMatrix(classOfObservations,
 						predictions);
@@ -17,8 +17,9 @@ import java.util.Map;
 import java.util.Random;
 
 import randomjyrest.Forest;
+import randomjyrest.LoadDataset;
+import randomjyrest.LoadedDataset;
 import randomjyrest.PredictionAnalysis;
-import utilities.DetermineDatasetProperties;
 
 /**
  * Implements the testing of different mtry and class weight combinations.
@@ -242,8 +243,13 @@ public class WeightAndMtryOptimisation
 			seeds.add(seedToUse);
 		}
 		
+		// Load the dataset once. Every forest reuses its sorted feature columns, and only the class weights are regenerated when
+		// the observation weights change.
+		LoadedDataset loadedData = LoadDataset.main(inputFile, featuresToRemove);
+		boolean[] featureMask = loadedData.createFeatureMask(featuresToRemove);
+		
 		// Determine the class of each observation.
-		List<String> classOfObservations = DetermineDatasetProperties.determineObservationClasses(inputFile);
+		List<String> classOfObservations = loadedData.determineObservationClasses();
 
 		// Loop through all the mtry values to test.
 		for (int mtry : mtryToUse)
@@ -269,7 +275,7 @@ public class WeightAndMtryOptimisation
 				    classWeights.put("Unlabelled", uWeight);
 					
 					// Determine the weight vector for the observations for this positive/unlabelled weight combination.
-					double[] weights = DetermineDatasetProperties.determineObservationWeights(inputFile, classWeights);
+					double[] weights = loadedData.determineObservationWeights(classWeights);
 					
 					// Setup the aggregate confusion matrix.
 					Map<String, Map<String, Double>> aggregateConfusionMatrix = new HashMap<String, Map<String, Double>>();
@@ -296,7 +302,7 @@ public class WeightAndMtryOptimisation
 						// Grow the forest and generate the OOB predictions.
 						Date startTime = new Date();
 						Forest forest = new Forest();
-						Map<String, double[]> predictionsFromForest = forest.main(inputFile, numberOfTreesPerForest, mtry, featuresToRemove,
+						Map<String, double[]> predictionsFromForest = forest.main(loadedData, featureMask, numberOfTreesPerForest, mtry,
 								weights, seeds.get(i), numberOfThreads, isCalculateOOB);
 						Date endTime = new Date();
 						timeTaken += (endTime.getTime() - startTime.getTime());
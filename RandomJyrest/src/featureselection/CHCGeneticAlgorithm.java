@@ -20,8 +20,9 @@ import java.util.Set;
 
 
 import randomjyrest.Forest;
+import randomjyrest.LoadDataset;
+import randomjyrest.LoadedDataset;
 import randomjyrest.PredictionAnalysis;
-import utilities.DetermineDatasetProperties;
 import utilities.ImmutableFourValues;
 import utilities.ImmutableTwoValues;
 import utilities.IndexedDoubleData;
@@ -48,6 +49,30 @@ public class CHCGeneticAlgorithm
 	public static final void main(String inputFile, String resultsDir, int populationSize, boolean isVerboseOutput,
 			int mtry, int numberOfTrees, int numberOfThreads, double[] weights, List<String> featuresToRemove,
 			int generationsWithoutChange)
+	{
+		main(LoadDataset.main(inputFile, featuresToRemove), resultsDir, populationSize, isVerboseOutput, mtry, numberOfTrees,
+				numberOfThreads, weights, featuresToRemove, generationsWithoutChange);
+	}
+
+	/**
+	 * Run the CHC genetic algorithm on a dataset that has already been loaded.
+	 * 
+	 * The forests used to evaluate the fitness of the individuals are all grown from the loaded dataset, so no data is read or
+	 * sorted while the GA runs.
+	 * 
+	 * @param loadedData		The dataset used to grow the forests, loaded without the features in featuresToRemove.
+	 * @param resultsDir		The location where the results of the feature selection will be written.
+	 * @param populationSize	The size of the population to use for the GA.
+	 * @param isVerboseOutput	Whether status updates should be displayed.
+	 * @param mtry				The number of features to consider at each split in a tree.
+	 * @param numberOfTrees		The number of trees to grow in each forest.
+	 * @param numberOfThreads	The number of threads to use when growing a forest.
+	 * @param weights			The weights of the individual observations.
+	 * @param featuresToRemove	The features in the dataset that should be removed (not used in growing the forest).
+	 */
+	public static final void main(LoadedDataset loadedData, String resultsDir, int populationSize, boolean isVerboseOutput,
+			int mtry, int numberOfTrees, int numberOfThreads, double[] weights, List<String> featuresToRemove,
+			int generationsWithoutChange)
 	{
 		// Setup the directory for the results.
 		File resultsDirectory = new File(resultsDir);
@@ -76,10 +101,10 @@ public class CHCGeneticAlgorithm
 		}
 		
 		// Determine the class of each observation.
-		List<String> observationClasses = DetermineDatasetProperties.determineObservationClasses(inputFile);
+		List<String> observationClasses = loadedData.determineObservationClasses();
 		
 		// Determine the features that are to be used in the growing of the forest.
-		List<String> featuresInDataset = DetermineDatasetProperties.determineDatasetFeatures(inputFile, featuresToRemove);
+		List<String> featuresInDataset = loadedData.determineFeaturesUsed(loadedData.createFeatureMask(featuresToRemove));
 		
 		
 		// Determine the threshold Hamming distance between two individual that must be met before the individuals can undergo
@@ -115,7 +140,7 @@ public class CHCGeneticAlgorithm
 		    population = initialisePopulation(featuresInDataset, featuresToRemove, populationSize);
 	    
 		    // Calculate the fitness of the initial population.
-		    ImmutableTwoValues<List<Double>, List<Long>> populationFitness = calculateFitness(population, inputFile, numberOfTrees, mtry, numberOfThreads, weights, observationClasses);
+		    ImmutableTwoValues<List<Double>, List<Long>> populationFitness = calculateFitness(population, loadedData, numberOfTrees, mtry, numberOfThreads, weights, observationClasses);
 		    fitnessOfPopulation = populationFitness.first;
 		    seedsOfPopulation = populationFitness.second;
 		}
@@ -147,7 +172,7 @@ public class CHCGeneticAlgorithm
 		    		// Some offspring were created.
 		    		
 			    	// Calculate the fitness of the offspring.
-			    	ImmutableTwoValues<List<Double>, List<Long>> offspringFitness = calculateFitness(offspring, inputFile, numberOfTrees, mtry, numberOfThreads, weights, observationClasses);
+			    	ImmutableTwoValues<List<Double>, List<Long>> offspringFitness = calculateFitness(offspring, loadedData, numberOfTrees, mtry, numberOfThreads, weights, observationClasses);
 			    	List<Double> fitnessOfOffspring = offspringFitness.first;
 				    List<Long> seedsOfOffspring = offspringFitness.second;
 			    	
@@ -213,7 +238,7 @@ public class CHCGeneticAlgorithm
 	 * and seed used be the ith values in the fitness and seed lists returned.
 	 * 
 	 * @param population			The population of individuals that will have their fitness evaluated.
-	 * @param dataset				The dataset that each individual's fitness will be evaluated on.
+	 * @param dataset				The loaded dataset that each individual's fitness will be evaluated on.
 	 * @param numberOfTrees			The number of trees to grow in each forest.
 	 * @param mtry					The number of features to evaluate at each split in a tree.
 	 * @param numberOfThreads		The number of threads to use when growing a forest.
@@ -221,7 +246,7 @@ public class CHCGeneticAlgorithm
 	 * @param observationClasses	The classes of each observation.
 	 * @return						The fitness of each individual and the seed used to grow each forest.
 	 */
-	private static final ImmutableTwoValues<List<Double>, List<Long>> calculateFitness(List<List<String>> population, String dataset, int numberOfTrees, int mtry,
+	private static final ImmutableTwoValues<List<Double>, List<Long>> calculateFitness(List<List<String>> population, LoadedDataset dataset, int numberOfTrees, int mtry,
 			int numberOfThreads, double[] weights, List<String> observationClasses)
 	{
 		List<Double> fitness = new ArrayList<Double>();  // The fitnesses of the individuals.
@@ -232,7 +257,8 @@ public class CHCGeneticAlgorithm
 	    {
 	    	// Grow the forest and generate the OB predictions.
 	    	Forest forest = new Forest();
-	    	Map<String, double[]> predictions = forest.main(dataset, numberOfTrees, mtry, p, weights, numberOfThreads, true);
+	    	Map<String, double[]> predictions = forest.main(dataset, dataset.createFeatureMask(p), numberOfTrees, mtry, weights,
+	    			numberOfThreads, true);
 	    	Map<String, Map<String, Double>> confusionMatrix = PredictionAnalysis.calculateConfusionMatrix(observationClasses, predictions);
 
 	    	// Evaluate the fitness.
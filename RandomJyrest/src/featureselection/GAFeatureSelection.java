@@ -12,7 +12,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import utilities.DetermineDatasetProperties;
+import randomjyrest.LoadDataset;
+import randomjyrest.LoadedDataset;
 
 /**
  * Implements the feature selection using a genetic algorithm.
@@ -335,14 +336,15 @@ public class GAFeatureSelection
 			}
 		}
 		
-		// Determine the vector of weights for the observations.
-		double[] weights = DetermineDatasetProperties.determineObservationWeights(inputFile, classWeights);
+		// Load the dataset once for all the repetitions, and determine the vector of weights for the observations.
+		LoadedDataset loadedData = LoadDataset.main(inputFile, featuresToRemove);
+		double[] weights = loadedData.determineObservationWeights(classWeights);
 		
 		// Run the GA feature selection the specified number of times. If the startingIterationumber is not 0, then a continuation
 		// is being performed.
 		for (int i = startingIterationNumber; i < numberOfRepetitionsToPerform; i++)
 		{
-			CHCGeneticAlgorithm.main(inputFile, resultsDir + "/" + Integer.toString(i), populationSize, isVerboseOutput, mtry,
+			CHCGeneticAlgorithm.main(loadedData, resultsDir + "/" + Integer.toString(i), populationSize, isVerboseOutput, mtry,
 					numberOfTreesPerForest, numberOfThreads, weights, featuresToRemove, generationsWithoutChange);
 		}
 	}
@@ -17,7 +17,8 @@ import java.util.Map;
 import java.util.Random;
 
 import randomjyrest.Forest;
-import utilities.DetermineDatasetProperties;
+import randomjyrest.LoadDataset;
+import randomjyrest.LoadedDataset;
 
 /**
  * Implements the evaluation of the importance of the features in a dataset.
@@ -183,8 +184,12 @@ public class VariableImportance
 			System.exit(0);
 		}
 
+		// Load the dataset once. Every forest reuses its sorted feature columns.
+		LoadedDataset loadedData = LoadDataset.main(inputFile, featuresToRemove);
+		boolean[] featureMask = loadedData.createFeatureMask(featuresToRemove);
+		
 		// Determine the features in the dataset.
-		List<String> featuresInDataset = DetermineDatasetProperties.determineDatasetFeatures(inputFile, featuresToRemove);
+		List<String> featuresInDataset = loadedData.determineFeaturesUsed(featureMask);
 
 		// Write out the importance header (the features not being removed in the order that they appear in the dataset).
 		String variableImportanceLocation = resultsDir + "/VariableImportances.txt";
@@ -224,7 +229,7 @@ public class VariableImportance
 		}
 		
 		// Determine the vector of weights for the observations.
-		double[] weights = DetermineDatasetProperties.determineObservationWeights(inputFile, classWeights);
+		double[] weights = loadedData.determineObservationWeights(classWeights);
 
 		// Generate each forest, and determine the importance of the variables used to grow the forest.
 		for (int i = 0; i < numberOfForestsToCreate; i++)
@@ -236,7 +241,7 @@ public class VariableImportance
 
 		    // Grow the forest.
 		    Forest forest = new Forest();
-		    forest.main(inputFile, numberOfTreesPerForest, mtry, featuresToRemove, weights, seeds.get(i), numberOfThreads, isCalculateOOB);
+		    forest.main(loadedData, featureMask, numberOfTreesPerForest, mtry, weights, seeds.get(i), numberOfThreads, isCalculateOOB);
 			
 		    // Determine the variable importance for the forest.
 			System.out.println("\tNow determining variable importances.");
@@ -13,6 +13,8 @@ import java.util.List;
 import java.util.Map;
 
 import randomjyrest.Forest;
+import randomjyrest.LoadForest;
+import randomjyrest.SaveForest;
 import utilities.DetermineDatasetProperties;
 
 /**
@@ -47,6 +49,7 @@ public class Main
 		long seed = 0L;  // The seed used for growing the forest.
 		Map<String, Double> classWeights = new HashMap<String, Double>();  // The weights for each class in the input dataset.
 		List<String> featuresToRemove = new ArrayList<String>();  // The features in the input dataset that should be ignored.
+		String modelLocation = null;  // The location of the file that the forest is saved to, or loaded from if it exists.
 		BufferedReader reader = null;
 		try
 		{
@@ -95,6 +98,11 @@ public class Main
 					// If the first entry on the line is Seed, then the line contains the seed to use.
 					seed = Long.parseLong(chunks[1]);
 				}
+				else if (chunks[0].equals("Model"))
+				{
+					// If the first entry on the line is Model, then the line contains the location of the saved forest.
+					modelLocation = chunks[1];
+				}
 				else
 				{
 					// Got an unexpected line in the parameter file.
@@ -130,6 +138,16 @@ public class Main
 		}
 		
 		boolean isCalculateOOB = true;  // OOB error is being calculated.
+		
+		// Determine the vector of weights for the observations.
+		double[] weights = DetermineDatasetProperties.determineObservationWeights(trainingDataset, classWeights);
+		
+		// If a saved forest exists it is loaded rather than grown again, provided that it was grown with the parameters given.
+		Forest forest = null;
+		if (modelLocation != null && new File(modelLocation).exists())
+		{
+			forest = LoadForest.main(modelLocation, trainingDataset, numberOfTrees, mtry, featuresToRemove, weights, seed);
+		}
 
 		// Setup the results directory.
 		File resultsDirectory = new File(resultsDirLocation);
@@ -150,6 +168,32 @@ public class Main
 			System.exit(0);
 		}
 
+		// Determine the OOB predictions (predictions for the training set) and the test set predictions (if there is a test set).
+		// The forest is grown if it was not loaded, and saved if a location is given.
+		Map<String, double[]> oobPredictions = new HashMap<String, double[]>();
+		if (forest != null)
+		{
+			if (isCalculateOOB)
+			{
+				oobPredictions = forest.predictOOB();
+			}
+		}
+		else
+		{
+			forest = new Forest();
+			oobPredictions = forest.main(trainingDataset, numberOfTrees, mtry, featuresToRemove, weights, seed, numberOfThreads,
+					isCalculateOOB);
+			if (modelLocation != null)
+			{
+				SaveForest.main(forest, modelLocation, true);
+			}
+		}
+		Map<String, double[]> testSetPredictions = null;
+		if (testingDataset != null)
+		{
+			testSetPredictions = forest.predict(testingDataset, featuresToRemove);
+		}
+
 		// Write out the parameters used.
 		String parameterLocation = resultsDirLocation + "/Parameters.txt";
 		try
@@ -169,7 +213,12 @@ public class Main
 			parameterOutputWriter.newLine();
 			parameterOutputWriter.write("Features - " + featuresToRemove.toString());
 			parameterOutputWriter.newLine();
-			parameterOutputWriter.write("Seed - " + Long.toString(seed));
+			parameterOutputWriter.write("Seed - " + Long.toString(forest.getSeed()));
+			if (modelLocation != null)
+			{
+				parameterOutputWriter.newLine();
+				parameterOutputWriter.write("Model - " + modelLocation);
+			}
 			parameterOutputWriter.close();
 		}
 		catch (Exception e)
@@ -178,19 +227,6 @@ public class Main
 			System.exit(0);
 		}
 		
-		// Determine the vector of weights for the observations.
-		double[] weights = DetermineDatasetProperties.determineObservationWeights(trainingDataset, classWeights);
-		
-		// Determine the OOB predictions (predictions for the training set) and the test set predictions (if there is a test set).
-		Forest forest = new Forest();
-		Map<String, double[]> oobPredictions = forest.main(trainingDataset, numberOfTrees, mtry, featuresToRemove, weights,
-				seed, numberOfThreads, isCalculateOOB);
-		Map<String, double[]> testSetPredictions = null;
-		if (testingDataset != null)
-		{
-			testSetPredictions = forest.predict(testingDataset, featuresToRemove);
-		}
-		
 		// Define the names of the class and UniProt accession columns in the datasets.
 		String classFeatureColumnName = "Classification";
 		String accessionColumnName = "UPAccession";
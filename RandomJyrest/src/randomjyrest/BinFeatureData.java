@@ -0,0 +1,72 @@
+package randomjyrest;
+
+/**
+ * Implements the quantisation of the features of a processed dataset into bins for growing trees in binned mode.
+ */
+public final class BinFeatureData
+{
+
+	/**
+	 * Quantise every feature of a processed dataset into at most numberOfBins bins.
+	 *
+	 * The bins of a feature are chosen from its sorted values so that each bin holds roughly the same number of observations. A bin
+	 * boundary is only ever placed between two different values, so observations with equal values always share a bin. A feature
+	 * with no more distinct values than numberOfBins is given one bin per distinct value, and the cutpoints between its bins are then
+	 * the same as those considered by the exact split search.
+	 *
+	 * @param dataset		The processed dataset containing the sorted feature values.
+	 * @param numberOfBins	The maximum number of bins for each feature.
+	 * @return				The binned feature data.
+	 */
+	public static final BinnedFeatureData main(ProcessedDataset dataset, int numberOfBins)
+	{
+		double[][] sortedFeatureData = dataset.getSortedFeatureData();
+		int[][] sortedFeatureIndices = dataset.getSortedFeatureIndices();
+		int numberOfFeatures = dataset.getNumberOfFeatures();
+		int numberOfObservations = dataset.getNumberOfObservations();
+
+		byte[][] featureBins = new byte[numberOfFeatures][];
+		double[][] binThresholds = new double[numberOfFeatures][];
+		double[] thresholds = new double[numberOfBins - 1];  // The cutpoints of the feature currently being binned.
+		for (int f = 0; f < numberOfFeatures; f++)
+		{
+			double[] sortedValues = sortedFeatureData[f];
+			int[] sortedIndices = sortedFeatureIndices[f];
+			byte[] bins = new byte[numberOfObservations];
+
+			// Determine whether every distinct value can have its own bin.
+			int numberOfDistinctValues = 1;
+			for (int i = 1; i < numberOfObservations; i++)
+			{
+				if (sortedValues[i] != sortedValues[i - 1])
+				{
+					numberOfDistinctValues++;
+				}
+			}
+			boolean isBinPerValue = numberOfDistinctValues <= numberOfBins;
+
+			// Move through the sorted values, starting a new bin at the first change of value at or after each quantile.
+			int currentBin = 0;
+			int nextQuantile = 1;
+			for (int i = 0; i < numberOfObservations; i++)
+			{
+				if (i != 0 && sortedValues[i] != sortedValues[i - 1] && (isBinPerValue || (currentBin < numberOfBins - 1 &&
+						(long) i * numberOfBins >= (long) nextQuantile * numberOfObservations)))
+				{
+					thresholds[currentBin] = (sortedValues[i - 1] + sortedValues[i]) / 2.0;
+					currentBin++;
+					nextQuantile = (int) (((long) i * numberOfBins) / numberOfObservations) + 1;
+				}
+				bins[sortedIndices[i]] = (byte) currentBin;
+			}
+
+			double[] featureThresholds = new double[currentBin];
+			System.arraycopy(thresholds, 0, featureThresholds, 0, currentBin);
+			featureBins[f] = bins;
+			binThresholds[f] = featureThresholds;
+		}
+
+		return new BinnedFeatureData(featureBins, binThresholds);
+	}
+
+}
@@ -0,0 +1,100 @@
+package randomjyrest;
+
+/**
+ * Implements the scoring of candidate splits of a node when the dataset contains exactly two classes.
+ *
+ * With two classes the Gini impurity of a split reduces to
+ *
+ * 		(2 / w_p) * (l_0 * l_1 / w_l + r_0 * r_1 / w_r)
+ *
+ * where w_p is the weight of the node being split, l_i and r_i are the weights of class i in the left and right child, and w_l and
+ * w_r are the weights of the left and right child. The bracketed score needs two divisions rather than the six made by the
+ * per-class calculation in FindBestSplit, and is calculated for a whole block of splits in a loop with no branches, which the JIT
+ * compiler can vectorise.
+ *
+ * The score is only used to discard splits that cannot be better than the best split found so far. The impurity of any split that
+ * is not discarded is recalculated by splitImpurity with the arithmetic performed in the same order as in FindBestSplit, so the
+ * splits chosen are identical to those chosen for any number of classes.
+ */
+public final class BinarySplitKernel
+{
+
+	/**
+	 * The number of candidate splits scored in each block.
+	 */
+	public static final int BLOCK_SIZE = 64;
+
+	/**
+	 * The margin by which the impurity implied by a split's score must exceed the lowest impurity found for the split to be discarded.
+	 * This is far larger than the rounding error of either calculation of the impurity, which lies between 0 and 1.
+	 */
+	public static final double IMPURITY_MARGIN = 1e-9;
+
+
+	/**
+	 * Calculate the score of a block of candidate splits.
+	 *
+	 * @param leftChildClass0Weights	The weight of the first class in the left child of each split.
+	 * @param leftChildClass1Weights	The weight of the second class in the left child of each split.
+	 * @param parentClass0Weight		The weight of the first class in the node being split.
+	 * @param parentClass1Weight		The weight of the second class in the node being split.
+	 * @param splitScores				The array to fill with the score of each split.
+	 * @param numberOfSplits			The number of splits in the block.
+	 */
+	public static final void main(double[] leftChildClass0Weights, double[] leftChildClass1Weights, double parentClass0Weight,
+			double parentClass1Weight, double[] splitScores, int numberOfSplits)
+	{
+		for (int i = 0; i < numberOfSplits; i++)
+		{
+			double leftClass0Weight = leftChildClass0Weights[i];
+			double leftClass1Weight = leftChildClass1Weights[i];
+			double rightClass0Weight = parentClass0Weight - leftClass0Weight;
+			double rightClass1Weight = parentClass1Weight - leftClass1Weight;
+			splitScores[i] = ((leftClass0Weight * leftClass1Weight) / (leftClass0Weight + leftClass1Weight)) +
+					((rightClass0Weight * rightClass1Weight) / (rightClass0Weight + rightClass1Weight));
+		}
+	}
+
+	/**
+	 * Determine the largest score that a split can have and still possibly have an impurity lower than the lowest impurity found.
+	 *
+	 * @param lowestImpurity			The lowest impurity found.
+	 * @param totalParentNodeWeight		The total weight of all observations in the node being split.
+	 * @return							The score above which splits can be discarded.
+	 */
+	public static final double scoreBound(double lowestImpurity, double totalParentNodeWeight)
+	{
+		return (lowestImpurity + IMPURITY_MARGIN) * totalParentNodeWeight / 2.0;
+	}
+
+	/**
+	 * Calculate the Gini impurity of a split in exactly the same manner as FindBestSplit.
+	 *
+	 * @param leftClass0Weight			The weight of the first class in the left child.
+	 * @param leftClass1Weight			The weight of the second class in the left child.
+	 * @param parentClass0Weight		The weight of the first class in the node being split.
+	 * @param parentClass1Weight		The weight of the second class in the node being split.
+	 * @param totalParentNodeWeight		The total weight of all observations in the node being split.
+	 * @return							The impurity of the split.
+	 */
+	public static final double splitImpurity(double leftClass0Weight, double leftClass1Weight, double parentClass0Weight,
+			double parentClass1Weight, double totalParentNodeWeight)
+	{
+		double rightClass0Weight = parentClass0Weight - leftClass0Weight;
+		double rightClass1Weight = parentClass1Weight - leftClass1Weight;
+		double totalLeftChildWeight = 0.0 + leftClass0Weight + leftClass1Weight;
+		double totalRightChildWeight = 0.0 + rightClass0Weight + rightClass1Weight;
+
+		double leftFraction0 = leftClass0Weight / totalLeftChildWeight;
+		double leftFraction1 = leftClass1Weight / totalLeftChildWeight;
+		double leftChildImpurity = 1.0 - (leftFraction0 * leftFraction0) - (leftFraction1 * leftFraction1);
+
+		double rightFraction0 = rightClass0Weight / totalRightChildWeight;
+		double rightFraction1 = rightClass1Weight / totalRightChildWeight;
+		double rightChildImpurity = 1.0 - (rightFraction0 * rightFraction0) - (rightFraction1 * rightFraction1);
+
+		return ((totalLeftChildWeight / totalParentNodeWeight) * leftChildImpurity) +
+				((totalRightChildWeight / totalParentNodeWeight) * rightChildImpurity);
+	}
+
+}
@@ -0,0 +1,69 @@
+package randomjyrest;
+
+/**
+ * Implements a record of the features of a processed dataset after quantisation into bins, as generated by BinFeatureData.
+ *
+ * The bins of a feature are numbered in ascending order of the values they contain, and the bin of each observation is held in a
+ * byte (read as an unsigned value) in the order that the observations appear in the dataset. Every value in bin b is less than or
+ * equal to getBinThresholds(f)[b], and every value in bin b + 1 is greater than it, so a split between bins b and b + 1 can be
+ * recorded in a tree as the cutpoint getBinThresholds(f)[b] and used for prediction on unbinned data.
+ *
+ * Example:
+ * 		The values of a feature, F, with id 0 are			[4, 7, 2, 8, 3, 4]
+ * 		When quantised into at most 3 bins
+ * 		getFeatureBins()[0] is								[1, 2, 0, 2, 0, 1]
+ * 		getBinThresholds(0) is								[3.5, 5.5]
+ */
+public class BinnedFeatureData
+{
+
+	/**
+	 * The bin of each observation, indexed by feature id and then by the original index of the observation.
+	 */
+	private final byte[][] featureBins;
+
+	/**
+	 * The cutpoints between consecutive bins, indexed by feature id and then by the bin below the cutpoint.
+	 */
+	private final double[][] binThresholds;
+
+
+	/**
+	 * Class constructor for binned feature data.
+	 *
+	 * @param featureBins		The bin of each observation, indexed by feature id and then by the original index of the observation.
+	 * @param binThresholds		The cutpoints between consecutive bins, indexed by feature id.
+	 */
+	public BinnedFeatureData(byte[][] featureBins, double[][] binThresholds)
+	{
+		this.featureBins = featureBins;
+		this.binThresholds = binThresholds;
+	}
+
+	/**
+	 * @return		The bin of each observation, indexed by feature id and then by the original index of the observation.
+	 */
+	public final byte[][] getFeatureBins()
+	{
+		return this.featureBins;
+	}
+
+	/**
+	 * @param feature	The id of the feature of interest.
+	 * @return			The cutpoints between the consecutive bins of the feature.
+	 */
+	public final double[] getBinThresholds(int feature)
+	{
+		return this.binThresholds[feature];
+	}
+
+	/**
+	 * @param feature	The id of the feature of interest.
+	 * @return			The number of bins that the feature was quantised into.
+	 */
+	public final int getNumberOfBins(int feature)
+	{
+		return this.binThresholds[feature].length + 1;
+	}
+
+}
@@ -0,0 +1,128 @@
+package randomjyrest;
+
+/**
+ * Implements the node-local record of the in bag observations used while growing a tree in binned mode.
+ *
+ * Only the original indices of the unique in bag observations are kept. As in NodePartition, every node in the tree owns a
+ * contiguous range [start, end) of the observations, and when a node is split its range is stably partitioned in place so that the
+ * observations going to the left child precede those going to the right child. No per-feature copy of the data is needed, as the
+ * bin of an observation for any feature is looked up in the binned feature data by its original index. As in NodePartition, splitting
+ * a node also sums the weight of each class in each child.
+ */
+public class BinnedNodePartition
+{
+
+	/**
+	 * The original indices of the unique in bag observations. The indices within the range of any node are sorted in ascending order.
+	 */
+	private int[] nodeObservations;
+
+	/**
+	 * Scratch space used to hold the original indices of the observations going to the right child during a partition. The range of
+	 * the node being split is used, so that nodes with disjoint ranges can be split at the same time.
+	 */
+	private int[] rightChildIndexBuffer;
+
+	/**
+	 * The weight of each observation for each class, indexed by class id and then by the original index of the observation.
+	 */
+	private double[][] classWeights;
+
+	/**
+	 * The id of the class of each observation, indexed by the original index of the observation.
+	 */
+	private int[] observationClasses;
+
+	/**
+	 * The number of times each observation in the dataset is in bag.
+	 */
+	private int[] inBagObservations;
+
+
+	/**
+	 * Set up the node-local record for the root node of a tree.
+	 *
+	 * @param dataset						The processed dataset containing the class weights.
+	 * @param inBagObservations				An array recording the number of times each observation in the dataset is in bag.
+	 * 										Observations that are not in bag are given a value of 0.
+	 * @param numberOfUniqueObservations	The number of unique in bag observations.
+	 */
+	public BinnedNodePartition(ProcessedDataset dataset, int[] inBagObservations, int numberOfUniqueObservations)
+	{
+		this.nodeObservations = new int[numberOfUniqueObservations];
+		int currentInsertionIndex = 0;
+		for (int i = 0; i < inBagObservations.length; i++)
+		{
+			if (inBagObservations[i] != 0)
+			{
+				this.nodeObservations[currentInsertionIndex] = i;
+				currentInsertionIndex++;
+			}
+		}
+		this.rightChildIndexBuffer = new int[numberOfUniqueObservations];
+		this.classWeights = dataset.getClassWeights();
+		this.observationClasses = dataset.getObservationClasses();
+		this.inBagObservations = inBagObservations;
+	}
+
+	/**
+	 * @return		The original indices of the unique in bag observations, ordered within each node's range as the observations
+	 * 				appear in the dataset.
+	 */
+	public final int[] getObservations()
+	{
+		return this.nodeObservations;
+	}
+
+	/**
+	 * Partition the range of a node into the observations going to the left child and those going to the right child.
+	 *
+	 * An observation goes to the left child when its bin for the feature being split on is less than or equal to the split bin.
+	 * After partitioning, the left child owns the range [start, start + return) and the right child the range [start + return, end).
+	 *
+	 * @param featureBins				The bin of each observation for the feature being split on, indexed by the original index of
+	 * 									the observation.
+	 * @param splitBin					The highest bin that goes to the left child.
+	 * @param start						The start (inclusive) of the range of the node being split.
+	 * @param end						The end (exclusive) of the range of the node being split.
+	 * @param leftChildClassWeights		Filled with the weight of each class in the left child, indexed by class id. The weights are
+	 * 									summed in the order that the observations appear in the dataset.
+	 * @param rightChildClassWeights	Filled with the weight of each class in the right child, indexed by class id.
+	 * @return							The number of unique observations going to the left child.
+	 */
+	public final int split(byte[] featureBins, int splitBin, int start, int end, double[] leftChildClassWeights,
+			double[] rightChildClassWeights)
+	{
+		for (int c = 0; c < leftChildClassWeights.length; c++)
+		{
+			leftChildClassWeights[c] = 0.0;
+			rightChildClassWeights[c] = 0.0;
+		}
+
+		int leftInsertionIndex = start;
+		int rightInsertionIndex = start;
+		for (int i = start; i < end; i++)
+		{
+			int originalIndex = this.nodeObservations[i];
+			int classOfObs = this.observationClasses[originalIndex];
+			double observationWeight = this.classWeights[classOfObs][originalIndex] * this.inBagObservations[originalIndex];
+			if ((featureBins[originalIndex] & 0xFF) <= splitBin)
+			{
+				leftChildClassWeights[classOfObs] += observationWeight;
+				this.nodeObservations[leftInsertionIndex] = originalIndex;
+				leftInsertionIndex++;
+			}
+			else
+			{
+				rightChildClassWeights[classOfObs] += observationWeight;
+				this.rightChildIndexBuffer[rightInsertionIndex] = originalIndex;
+				rightInsertionIndex++;
+			}
+		}
+
+		// Copy the observations going to the right child back in after those going to the left child.
+		System.arraycopy(this.rightChildIndexBuffer, start, this.nodeObservations, leftInsertionIndex, rightInsertionIndex - start);
+		return leftInsertionIndex - start;
+	}
+
+}
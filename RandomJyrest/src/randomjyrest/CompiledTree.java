@@ -0,0 +1,414 @@
+package randomjyrest;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Implements a tree flattened into parallel primitive arrays for prediction.
+ *
+ * The nodes of the tree are numbered in depth first (pre-order) order starting from the root at 0, so the left child of a
+ * nonterminal node i is always node i + 1. For each node i:
+ * 		splitFeatures[i]		The id of the feature the node is split on, or -1 if the node is terminal.
+ * 		splitValues[i]			The value of the feature that is used to split the node (unused for terminal nodes).
+ * 		rightChildOrLeaf[i]		The index of the node's right child if it is nonterminal, or the index of the node's entry in the leaf
+ * 								arrays if it is terminal.
+ * For each terminal node, l, indexed in the leaf arrays:
+ * 		leafClasses[l]			The id of the class with the greatest weight in the terminal node.
+ * 		leafWeights[l]			The weight of the observations in the training set that reached the terminal node.
+ * 		leafClassWeights[l * numberOfClasses + c]	The weight of class c in the observations in the training set that reached the
+ * 								terminal node. Pure terminal nodes have a non-zero weight for at most one class.
+ *
+ * Feature ids index the feature names of the dataset the tree was grown from, and class ids index its class names.
+ *
+ * Example:
+ * 		The tree						  F1 <= 0.5
+ * 										 /         \
+ * 									   A(3)       F0 <= 2
+ * 												  /     \
+ * 												B(2)    A(4)
+ *
+ * 		is stored as
+ * 		splitFeatures					[1, -1, 0, -1, -1]
+ * 		splitValues						[0.5, 0, 2, 0, 0]
+ * 		rightChildOrLeaf				[2, 0, 4, 1, 2]
+ * 		leafClasses						[A, B, A]	(as class ids)
+ * 		leafWeights						[3, 2, 4]
+ * 		leafClassWeights				[3, 0, 0, 2, 4, 0]	(with A as class 0 and B as class 1)
+ */
+public class CompiledTree
+{
+
+	/**
+	 * The id of the feature each node is split on, or -1 for terminal nodes.
+	 */
+	private final int[] splitFeatures;
+
+	/**
+	 * The value of the feature that is used to split each node.
+	 */
+	private final double[] splitValues;
+
+	/**
+	 * The index of the right child of each nonterminal node, or the leaf index of each terminal node.
+	 */
+	private final int[] rightChildOrLeaf;
+
+	/**
+	 * The id of the class predicted by each terminal node, indexed by leaf index.
+	 */
+	private final int[] leafClasses;
+
+	/**
+	 * The weight of the training observations that reached each terminal node, indexed by leaf index.
+	 */
+	private final double[] leafWeights;
+
+	/**
+	 * The number of classes in the dataset the tree was grown from.
+	 */
+	private final int numberOfClasses;
+
+	/**
+	 * The weight of each class in the training observations that reached each terminal node, indexed by leaf index * numberOfClasses +
+	 * class id.
+	 */
+	private final double[] leafClassWeights;
+
+
+	/**
+	 * Flatten a grown tree.
+	 *
+	 * @param root	The root node of the tree.
+	 */
+	public CompiledTree(Node root)
+	{
+		// Determine the number of nodes and terminal nodes in the tree.
+		int numberOfNodes = 0;
+		int numberOfLeaves = 0;
+		int numberOfClasses = 0;
+		Node[] nodeStack = new Node[16];
+		int stackSize = 0;
+		nodeStack[stackSize++] = root;
+		while (stackSize > 0)
+		{
+			Node currentNode = nodeStack[--stackSize];
+			numberOfNodes++;
+			if (currentNode instanceof NodeNonTerminal)
+			{
+				NodeNonTerminal nonTerminal = (NodeNonTerminal) currentNode;
+				if (stackSize + 2 > nodeStack.length)
+				{
+					nodeStack = Arrays.copyOf(nodeStack, nodeStack.length * 2);
+				}
+				nodeStack[stackSize++] = nonTerminal.children[1];
+				nodeStack[stackSize++] = nonTerminal.children[0];
+			}
+			else
+			{
+				numberOfLeaves++;
+				numberOfClasses = ((NodeTerminal) currentNode).classWeightsInNode.length;
+			}
+		}
+
+		this.splitFeatures = new int[numberOfNodes];
+		this.splitValues = new double[numberOfNodes];
+		this.rightChildOrLeaf = new int[numberOfNodes];
+		this.leafClasses = new int[numberOfLeaves];
+		this.leafWeights = new double[numberOfLeaves];
+		this.numberOfClasses = numberOfClasses;
+		this.leafClassWeights = new double[numberOfLeaves * numberOfClasses];
+
+		// Number the nodes in pre-order. Right children are pushed before left children so that the left child of node i is i + 1.
+		// The parent stack records the index of the parent of each right child on the node stack (-1 for left children and the root).
+		int[] parentStack = new int[nodeStack.length];
+		int currentNodeIndex = 0;
+		int currentLeafIndex = 0;
+		stackSize = 0;
+		nodeStack[stackSize] = root;
+		parentStack[stackSize] = -1;
+		stackSize++;
+		while (stackSize > 0)
+		{
+			stackSize--;
+			Node currentNode = nodeStack[stackSize];
+			int parentIndex = parentStack[stackSize];
+			if (parentIndex != -1)
+			{
+				this.rightChildOrLeaf[parentIndex] = currentNodeIndex;
+			}
+
+			if (currentNode instanceof NodeNonTerminal)
+			{
+				NodeNonTerminal nonTerminal = (NodeNonTerminal) currentNode;
+				this.splitFeatures[currentNodeIndex] = nonTerminal.featureIndexSplitOn;
+				this.splitValues[currentNodeIndex] = nonTerminal.splitValue;
+				nodeStack[stackSize] = nonTerminal.children[1];
+				parentStack[stackSize] = currentNodeIndex;
+				stackSize++;
+				nodeStack[stackSize] = nonTerminal.children[0];
+				parentStack[stackSize] = -1;
+				stackSize++;
+			}
+			else
+			{
+				NodeTerminal terminal = (NodeTerminal) currentNode;
+				this.splitFeatures[currentNodeIndex] = -1;
+				this.rightChildOrLeaf[currentNodeIndex] = currentLeafIndex;
+				this.leafClasses[currentLeafIndex] = terminal.classIndexPresent;
+				this.leafWeights[currentLeafIndex] = terminal.weightInNode;
+				System.arraycopy(terminal.classWeightsInNode, 0, this.leafClassWeights, currentLeafIndex * numberOfClasses,
+						numberOfClasses);
+				currentLeafIndex++;
+			}
+			currentNodeIndex++;
+		}
+	}
+
+	/**
+	 * Rebuild a flattened tree from its node and leaf arrays, as written by SaveForest.
+	 *
+	 * The class and weight of each terminal node are determined from its class weights in the same way as when the tree was grown.
+	 *
+	 * @param splitFeatures		The id of the feature each node is split on, or -1 for terminal nodes.
+	 * @param splitValues		The value of the feature that is used to split each node.
+	 * @param rightChildOrLeaf	The index of the right child of each nonterminal node, or the leaf index of each terminal node.
+	 * @param numberOfClasses	The number of classes in the dataset the tree was grown from.
+	 * @param leafClassWeights	The weight of each class in each terminal node, indexed by leaf index * numberOfClasses + class id.
+	 */
+	CompiledTree(int[] splitFeatures, double[] splitValues, int[] rightChildOrLeaf, int numberOfClasses, double[] leafClassWeights)
+	{
+		this.splitFeatures = splitFeatures;
+		this.splitValues = splitValues;
+		this.rightChildOrLeaf = rightChildOrLeaf;
+		this.numberOfClasses = numberOfClasses;
+		this.leafClassWeights = leafClassWeights;
+		int numberOfLeaves = (numberOfClasses == 0 ? 0 : leafClassWeights.length / numberOfClasses);
+		this.leafClasses = new int[numberOfLeaves];
+		this.leafWeights = new double[numberOfLeaves];
+		for (int l = 0; l < numberOfLeaves; l++)
+		{
+			NodeTerminal terminal = new NodeTerminal(Arrays.copyOfRange(leafClassWeights, l * numberOfClasses,
+					(l + 1) * numberOfClasses));
+			this.leafClasses[l] = terminal.classIndexPresent;
+			this.leafWeights[l] = terminal.weightInNode;
+		}
+	}
+
+	/**
+	 * Determine the terminal node that an observation reaches.
+	 *
+	 * @param datasetToPredict	The values of the observations being predicted, indexed by feature id and then by observation.
+	 * @param observation		The index of the observation to predict.
+	 * @return					The leaf index of the terminal node that the observation reaches.
+	 */
+	public final int findLeaf(double[][] datasetToPredict, int observation)
+	{
+		int currentNode = 0;
+		int feature;
+		while ((feature = this.splitFeatures[currentNode]) != -1)
+		{
+			currentNode = (datasetToPredict[feature][observation] <= this.splitValues[currentNode]) ?
+					currentNode + 1 : this.rightChildOrLeaf[currentNode];
+		}
+		return this.rightChildOrLeaf[currentNode];
+	}
+
+	/**
+	 * Determine the terminal node that an observation reaches when the value of one of its features is replaced.
+	 *
+	 * @param datasetToPredict	The values of the observations being predicted, indexed by feature id and then by observation.
+	 * @param observation		The index of the observation to predict.
+	 * @param replacedFeature	The id of the feature whose value is replaced.
+	 * @param replacementValue	The value to use for the replaced feature.
+	 * @return					The leaf index of the terminal node that the observation reaches.
+	 */
+	public final int findLeaf(double[][] datasetToPredict, int observation, int replacedFeature, double replacementValue)
+	{
+		int currentNode = 0;
+		int feature;
+		while ((feature = this.splitFeatures[currentNode]) != -1)
+		{
+			double value = (feature == replacedFeature) ? replacementValue : datasetToPredict[feature][observation];
+			currentNode = (value <= this.splitValues[currentNode]) ? currentNode + 1 : this.rightChildOrLeaf[currentNode];
+		}
+		return this.rightChildOrLeaf[currentNode];
+	}
+
+	/**
+	 * Record the features that the tree splits on.
+	 *
+	 * @param featuresUsed	An array indexed by feature id. The entry for each feature that the tree splits on is set to true, and
+	 * 						the other entries are left unchanged.
+	 */
+	public final void markFeaturesUsed(boolean[] featuresUsed)
+	{
+		for (int feature : this.splitFeatures)
+		{
+			if (feature != -1)
+			{
+				featuresUsed[feature] = true;
+			}
+		}
+	}
+
+	/**
+	 * Add the prediction of the tree for an observation to the record of the predictions.
+	 *
+	 * @param datasetToPredict	The values of the observations being predicted, indexed by feature id and then by observation.
+	 * @param observation		The index of the observation to predict.
+	 * @param predictions		The predicted weight of each class for each observation, indexed by class id and then by observation.
+	 */
+	public final void predict(double[][] datasetToPredict, int observation, double[][] predictions)
+	{
+		this.addLeafWeights(this.findLeaf(datasetToPredict, observation), observation, predictions);
+	}
+
+	/**
+	 * Add the predictions of the tree for a block of consecutive observations to the record of the predictions.
+	 *
+	 * Each observation is walked down the tree using only primitive indices, and the weight of each class in the terminal node it
+	 * reaches is added to the observation's entry for that class.
+	 *
+	 * @param datasetToPredict	The values of the observations being predicted, indexed by feature id and then by observation.
+	 * @param firstObservation	The index of the first observation in the block (inclusive).
+	 * @param lastObservation	The index of the last observation in the block (exclusive).
+	 * @param predictions		The predicted weight of each class for each observation, indexed by class id and then by observation.
+	 */
+	public final void predict(double[][] datasetToPredict, int firstObservation, int lastObservation, double[][] predictions)
+	{
+		for (int i = firstObservation; i < lastObservation; i++)
+		{
+			this.addLeafWeights(this.findLeaf(datasetToPredict, i), i, predictions);
+		}
+	}
+
+	/**
+	 * Add the predictions of the tree for a subset of the observations to the record of the predictions.
+	 *
+	 * @param datasetToPredict	The values of the observations being predicted, indexed by feature id and then by observation.
+	 * @param observations		The indices of the observations to predict.
+	 * @param firstPosition		The position in observations of the first observation to predict (inclusive).
+	 * @param lastPosition		The position in observations of the last observation to predict (exclusive).
+	 * @param predictions		The predicted weight of each class for each observation, indexed by class id and then by observation.
+	 */
+	public final void predict(double[][] datasetToPredict, int[] observations, int firstPosition, int lastPosition,
+			double[][] predictions)
+	{
+		for (int i = firstPosition; i < lastPosition; i++)
+		{
+			int observation = observations[i];
+			this.addLeafWeights(this.findLeaf(datasetToPredict, observation), observation, predictions);
+		}
+	}
+
+	/**
+	 * Add the predictions of the tree for the observations in a range that are members of a set to the record of the predictions.
+	 *
+	 * @param datasetToPredict	The values of the observations being predicted, indexed by feature id and then by observation.
+	 * @param observations		The set of observations to predict, with the bit for each observation to predict set.
+	 * @param firstObservation	The index of the first observation in the range (inclusive).
+	 * @param lastObservation	The index of the last observation in the range (exclusive).
+	 * @param predictions		The predicted weight of each class for each observation, indexed by class id and then by observation.
+	 */
+	public final void predict(double[][] datasetToPredict, BitSet observations, int firstObservation, int lastObservation,
+			double[][] predictions)
+	{
+		for (int i = observations.nextSetBit(firstObservation); i != -1 && i < lastObservation; i = observations.nextSetBit(i + 1))
+		{
+			this.addLeafWeights(this.findLeaf(datasetToPredict, i), i, predictions);
+		}
+	}
+
+	/**
+	 * Add the class weights of a terminal node to the predictions for an observation.
+	 *
+	 * @param leaf			The leaf index of the terminal node.
+	 * @param observation	The index of the observation.
+	 * @param predictions	The predicted weight of each class for each observation, indexed by class id and then by observation.
+	 */
+	private final void addLeafWeights(int leaf, int observation, double[][] predictions)
+	{
+		int offset = leaf * this.numberOfClasses;
+		for (int c = 0; c < this.numberOfClasses; c++)
+		{
+			predictions[c][observation] += this.leafClassWeights[offset + c];
+		}
+	}
+
+	/**
+	 * @param leaf	The leaf index of a terminal node.
+	 * @return		The id of the class with the greatest weight in the terminal node.
+	 */
+	public final int getLeafClass(int leaf)
+	{
+		return this.leafClasses[leaf];
+	}
+
+	/**
+	 * @param leaf	The leaf index of a terminal node.
+	 * @return		The weight of the training observations that reached the terminal node.
+	 */
+	public final double getLeafWeight(int leaf)
+	{
+		return this.leafWeights[leaf];
+	}
+
+	/**
+	 * @param leaf	The leaf index of a terminal node.
+	 * @param c		The id of a class.
+	 * @return		The weight of the class in the training observations that reached the terminal node.
+	 */
+	public final double getLeafClassWeight(int leaf, int c)
+	{
+		return this.leafClassWeights[leaf * this.numberOfClasses + c];
+	}
+
+	/**
+	 * @return		The id of the feature each node is split on, or -1 for terminal nodes.
+	 */
+	final int[] getSplitFeatures()
+	{
+		return this.splitFeatures;
+	}
+
+	/**
+	 * @return		The value of the feature that is used to split each node.
+	 */
+	final double[] getSplitValues()
+	{
+		return this.splitValues;
+	}
+
+	/**
+	 * @return		The index of the right child of each nonterminal node, or the leaf index of each terminal node.
+	 */
+	final int[] getRightChildOrLeaf()
+	{
+		return this.rightChildOrLeaf;
+	}
+
+	/**
+	 * @return		The weight of each class in each terminal node, indexed by leaf index * numberOfClasses + class id.
+	 */
+	final double[] getLeafClassWeights()
+	{
+		return this.leafClassWeights;
+	}
+
+	/**
+	 * @return		The number of nodes in the tree.
+	 */
+	public final int getNumberOfNodes()
+	{
+		return this.splitFeatures.length;
+	}
+
+	/**
+	 * @return		The number of terminal nodes in the tree.
+	 */
+	public final int getNumberOfLeaves()
+	{
+		return this.leafClasses.length;
+	}
+
+}
@@ -0,0 +1,160 @@
+package randomjyrest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Implements the binding of the features used to grow a forest to the columns of a dataset that is to be predicted.
+ *
+ * The binding is determined once from the names of the columns, before any observation is predicted. The columns may be in any order
+ * and the dataset may contain columns that the forest does not use, but every feature used to grow the forest must have a column.
+ * Once bound, the columns of the dataset are arranged by feature id, so the trees access the value of a feature by its integer id.
+ *
+ * Example:
+ * 		The features used by the forest		["F1", "F2"]
+ * 		and the columns of the dataset		["UPAccession", "F2", "F3", "F1"]
+ *
+ * 		are bound as
+ * 		featureColumns						[3, 1]
+ */
+public class FeatureBinding
+{
+
+	/**
+	 * The features used to grow the forest, indexed by feature id.
+	 */
+	private final String[] featureNames;
+
+	/**
+	 * The index of the column of the dataset that holds each feature, indexed by feature id, or -1 for a feature that has no column.
+	 */
+	private final int[] featureColumns;
+
+	/**
+	 * The features used to grow the forest that have no column in the dataset, in order of feature id.
+	 */
+	private final List<String> missingFeatures = new ArrayList<String>();
+
+
+	/**
+	 * Class constructor for a binding.
+	 *
+	 * @param featureNames	The features used to grow the forest, indexed by feature id.
+	 * @param columnNames	The names of the columns of the dataset to be predicted, in the order that the columns appear. A column whose
+	 * 						name is null is never bound.
+	 */
+	public FeatureBinding(String[] featureNames, String[] columnNames)
+	{
+		this.featureNames = featureNames;
+		Map<String, Integer> columnIndices = new HashMap<String, Integer>();
+		for (int i = columnNames.length - 1; i >= 0; i--)
+		{
+			// Iterate backwards so that the first column with a given name is bound.
+			columnIndices.put(columnNames[i], i);
+		}
+		this.featureColumns = new int[featureNames.length];
+		for (int i = 0; i < featureNames.length; i++)
+		{
+			Integer column = columnIndices.get(featureNames[i]);
+			if (column == null)
+			{
+				this.featureColumns[i] = -1;
+				this.missingFeatures.add(featureNames[i]);
+			}
+			else
+			{
+				this.featureColumns[i] = column;
+			}
+		}
+	}
+
+	/**
+	 * @return		Whether every feature used to grow the forest has a column in the dataset.
+	 */
+	public final boolean isComplete()
+	{
+		return this.missingFeatures.isEmpty();
+	}
+
+	/**
+	 * @return		The features used to grow the forest that have no column in the dataset, in order of feature id.
+	 */
+	public final List<String> getMissingFeatures()
+	{
+		return this.missingFeatures;
+	}
+
+	/**
+	 * @param datasetDescription	A description of the dataset, e.g. its location.
+	 * @return						A message stating the features that have no column in the dataset.
+	 */
+	public final String describeMissingFeatures(String datasetDescription)
+	{
+		return String.format("%s does not contain %d of the %d features used to grow the forest: %s", datasetDescription,
+				this.missingFeatures.size(), this.featureNames.length, this.missingFeatures.toString());
+	}
+
+	/**
+	 * Exit if any feature used to grow the forest has no column in the dataset.
+	 *
+	 * @param datasetDescription	A description of the dataset, e.g. its location.
+	 */
+	public final void exitIfIncomplete(String datasetDescription)
+	{
+		if (!this.isComplete())
+		{
+			System.out.println(this.describeMissingFeatures(datasetDescription));
+			System.exit(0);
+		}
+	}
+
+	/**
+	 * @return		The index of the column of the dataset that holds each feature, indexed by feature id, or -1 for a feature that has
+	 * 				no column.
+	 */
+	public final int[] getFeatureColumns()
+	{
+		return this.featureColumns;
+	}
+
+	/**
+	 * Determine the slot of each column of the dataset when it is read with a LineReader, so that only the columns bound to a feature
+	 * are parsed, each into the slot given by its feature id.
+	 *
+	 * @param numberOfColumns	The number of columns in the dataset.
+	 * @return					The slot of each column, with LineReader.COLUMN_NOT_KEPT for the columns not bound to a feature.
+	 */
+	final int[] determineColumnSlots(int numberOfColumns)
+	{
+		int[] slots = new int[numberOfColumns];
+		Arrays.fill(slots, LineReader.COLUMN_NOT_KEPT);
+		for (int i = 0; i < this.featureColumns.length; i++)
+		{
+			if (this.featureColumns[i] != -1)
+			{
+				slots[this.featureColumns[i]] = i;
+			}
+		}
+		return slots;
+	}
+
+	/**
+	 * Arrange the columns of the dataset by feature id. The columns are not copied.
+	 *
+	 * @param columns	The values of the observations in the dataset, indexed by column and then by observation. Must be complete.
+	 * @return			The values of the observations for each feature used to grow the forest, indexed by feature id.
+	 */
+	public final double[][] bind(double[][] columns)
+	{
+		double[][] boundColumns = new double[this.featureColumns.length][];
+		for (int i = 0; i < this.featureColumns.length; i++)
+		{
+			boundColumns[i] = columns[this.featureColumns[i]];
+		}
+		return boundColumns;
+	}
+
+}
@@ -0,0 +1,298 @@
+package randomjyrest;
+
+import java.util.Arrays;
+
+/**
+ * Implements the determination of the best feature split value when growing a tree in binned mode.
+ */
+public class FindBestBinnedSplit
+{
+
+	/**
+	 * Determine the feature and the bin boundary such that the binary split induced has the minimal impurity out of all splits
+	 * between bins.
+	 *
+	 * When a node holds at least as many observations as a feature has bins, the weight of each class in each bin of the feature is
+	 * accumulated in a histogram, and the splits are evaluated by moving through the bins. If the parent of the node has a histogram
+	 * for the feature, then the histogram of whichever of the node and its sibling holds fewer observations is calculated directly,
+	 * and the histogram of the node is found by subtracting the sibling's histogram from the parent's. The histograms calculated are
+	 * recorded in nodeHistograms and siblingHistograms so that they can be reused by the children and sibling of the node. The arrays
+	 * of the histograms are taken from the pool in scratch, and only their first numberOfBins (* numberOfClasses) entries are used.
+	 *
+	 * When a node holds fewer observations than a feature has bins, the observations are instead sorted by their bin, and the splits
+	 * are evaluated by moving through the sorted observations as in FindBestSplit.
+	 *
+	 * @param dataset					The processed dataset containing the class weights of the observations.
+	 * @param binnedData				The bin of each observation for each feature.
+	 * @param partition					The node-local record of the unique in bag observations.
+	 * @param inBagObservations			An array recording the number of times each observation in the dataset is in bag.
+	 * 									Observations that are not in bag are given a value of 0.
+	 * @param featuresToSplitOn			An array whose first numberOfFeaturesToSplitOn entries are the ids of the features that
+	 * 									are to be tested for a split value.
+	 * @param numberOfFeaturesToSplitOn	The number of features to test.
+	 * @param start						The start (inclusive) of the node's range in the partition.
+	 * @param end						The end (exclusive) of the node's range in the partition.
+	 * @param nodeHistograms			The histograms calculated for the node.
+	 * @param parentHistograms			The histograms calculated for the parent of the node, or null if the node is the root.
+	 * @param siblingHistograms			The histograms calculated for the sibling of the node, or null if the node is the root.
+	 * @param siblingStart				The start (inclusive) of the sibling's range in the partition.
+	 * @param siblingEnd				The end (exclusive) of the sibling's range in the partition.
+	 * @param scratch					The scratch space for the tree. The value of the feature and the highest bin going to the
+	 * 									left child for the split are recorded in it.
+	 * @return							The id of the feature to split on, or -1 if no split could be made.
+	 */
+	public static final int main(ProcessedDataset dataset, BinnedFeatureData binnedData, BinnedNodePartition partition,
+			int[] inBagObservations, int[] featuresToSplitOn, int numberOfFeaturesToSplitOn, int start, int end,
+			NodeHistograms nodeHistograms, NodeHistograms parentHistograms, NodeHistograms siblingHistograms, int siblingStart,
+			int siblingEnd, SplitScratch scratch)
+	{
+		// Initialise the values for the best split found.
+		int bestFeatureForSplit = -1;
+		double splitValue = 0.0;
+		int splitBin = -1;
+		double lowestImpurity = 1.0;
+
+		double[][] classData = dataset.getClassWeights();
+		int[] observationClasses = dataset.getObservationClasses();
+		int numberOfClasses = classData.length;
+		int[] nodeObservations = partition.getObservations();
+		int numberOfUniqueObservations = end - start;
+		double[] parentNodeClassWeights = scratch.parentClassWeights;
+		double[] leftChildClassWeights = scratch.leftChildClassWeights;
+		double[] rightChildClassWeights = scratch.rightChildClassWeights;
+		byte[][] featureBins = binnedData.getFeatureBins();
+
+		for (int featureIndex = 0; featureIndex < numberOfFeaturesToSplitOn; featureIndex++)
+		{
+			int f = featuresToSplitOn[featureIndex];
+			byte[] bins = featureBins[f];
+			double[] thresholds = binnedData.getBinThresholds(f);
+			int numberOfBins = thresholds.length + 1;
+			int histogramLength = numberOfBins * numberOfClasses;
+
+			for (int i = 0; i < numberOfClasses; i++)
+			{
+				parentNodeClassWeights[i] = 0.0;
+				leftChildClassWeights[i] = 0.0;
+			}
+
+			if (numberOfUniqueObservations >= numberOfBins)
+			{
+				// Get the histogram of the feature for the node.
+				int position = nodeHistograms.find(f);
+				if (position == -1)
+				{
+					int parentPosition = (parentHistograms == null ? -1 : parentHistograms.find(f));
+					if (parentPosition != -1 && (siblingEnd - siblingStart) < numberOfUniqueObservations)
+					{
+						// Subtract the sibling's histogram from the parent's.
+						int siblingPosition = siblingHistograms.find(f);
+						if (siblingPosition == -1)
+						{
+							siblingPosition = siblingHistograms.add(f, scratch.takeHistogramClassWeights(histogramLength),
+									scratch.takeHistogramObservationCounts(numberOfBins));
+							calculateHistogram(bins, classData, observationClasses, inBagObservations, nodeObservations,
+									siblingStart, siblingEnd, numberOfClasses, siblingHistograms.getClassWeights(siblingPosition),
+									siblingHistograms.getObservationCounts(siblingPosition));
+						}
+						double[] parentWeights = parentHistograms.getClassWeights(parentPosition);
+						int[] parentCounts = parentHistograms.getObservationCounts(parentPosition);
+						double[] siblingWeights = siblingHistograms.getClassWeights(siblingPosition);
+						int[] siblingCounts = siblingHistograms.getObservationCounts(siblingPosition);
+						double[] nodeWeights = scratch.takeHistogramClassWeights(histogramLength);
+						int[] nodeCounts = scratch.takeHistogramObservationCounts(numberOfBins);
+						for (int b = 0; b < numberOfBins; b++)
+						{
+							nodeCounts[b] = parentCounts[b] - siblingCounts[b];
+						}
+						for (int k = 0; k < histogramLength; k++)
+						{
+							nodeWeights[k] = parentWeights[k] - siblingWeights[k];
+						}
+						position = nodeHistograms.add(f, nodeWeights, nodeCounts);
+					}
+					else
+					{
+						// Calculate the histogram from the observations in the node.
+						position = nodeHistograms.add(f, scratch.takeHistogramClassWeights(histogramLength),
+								scratch.takeHistogramObservationCounts(numberOfBins));
+						calculateHistogram(bins, classData, observationClasses, inBagObservations, nodeObservations, start, end,
+								numberOfClasses, nodeHistograms.getClassWeights(position),
+								nodeHistograms.getObservationCounts(position));
+					}
+				}
+				double[] histogramWeights = nodeHistograms.getClassWeights(position);
+				int[] histogramCounts = nodeHistograms.getObservationCounts(position);
+
+				// Determine the class weights in the node.
+				for (int b = 0; b < numberOfBins; b++)
+				{
+					int offset = b * numberOfClasses;
+					for (int c = 0; c < numberOfClasses; c++)
+					{
+						parentNodeClassWeights[c] += histogramWeights[offset + c];
+					}
+				}
+				double totalParentNodeWeight = 0.0;
+				for (int c = 0; c < numberOfClasses; c++)
+				{
+					totalParentNodeWeight += parentNodeClassWeights[c];
+				}
+
+				// Check for a split after every bin containing observations, except for the bin containing the last observation.
+				int observationsInLeftChild = 0;
+				for (int b = 0; b < numberOfBins - 1; b++)
+				{
+					int observationsInBin = histogramCounts[b];
+					if (observationsInBin == 0)
+					{
+						// The split would be the same as the split after the last non-empty bin.
+						continue;
+					}
+					observationsInLeftChild += observationsInBin;
+					if (observationsInLeftChild == numberOfUniqueObservations)
+					{
+						// All remaining bins are empty.
+						break;
+					}
+					int offset = b * numberOfClasses;
+					for (int c = 0; c < numberOfClasses; c++)
+					{
+						leftChildClassWeights[c] += histogramWeights[offset + c];
+					}
+
+					double splitImpurity = calculateSplitImpurity(parentNodeClassWeights, leftChildClassWeights,
+							rightChildClassWeights, numberOfClasses, totalParentNodeWeight);
+					if (splitImpurity < lowestImpurity)
+					{
+						lowestImpurity = splitImpurity;
+						bestFeatureForSplit = f;
+						splitValue = thresholds[b];
+						splitBin = b;
+					}
+				}
+			}
+			else
+			{
+				// Sort the observations in the node by their bin, keeping the original index of each observation in the low bits.
+				long[] binnedObservations = scratch.binnedObservations;
+				if (binnedObservations == null || binnedObservations.length < numberOfUniqueObservations)
+				{
+					binnedObservations = new long[Math.max(numberOfUniqueObservations, GrowthParameters.MAXIMUM_NUMBER_OF_BINS)];
+					scratch.binnedObservations = binnedObservations;
+				}
+				for (int k = start; k < end; k++)
+				{
+					int j = nodeObservations[k];
+					binnedObservations[k - start] = (((long) (bins[j] & 0xFF)) << 32) | j;
+					int classOfObs = observationClasses[j];
+					parentNodeClassWeights[classOfObs] += classData[classOfObs][j] * inBagObservations[j];
+				}
+				Arrays.sort(binnedObservations, 0, numberOfUniqueObservations);
+				double totalParentNodeWeight = 0.0;
+				for (int c = 0; c < numberOfClasses; c++)
+				{
+					totalParentNodeWeight += parentNodeClassWeights[c];
+				}
+
+				// Check for a split between every pair of consecutive observations that are in different bins.
+				int observationsToCheck = numberOfUniqueObservations - 1;
+				for (int i = 0; i < observationsToCheck; i++)
+				{
+					int j = (int) binnedObservations[i];
+					int classOfObs = observationClasses[j];
+					leftChildClassWeights[classOfObs] += classData[classOfObs][j] * inBagObservations[j];
+
+					int currentBin = (int) (binnedObservations[i] >>> 32);
+					int nextBin = (int) (binnedObservations[i + 1] >>> 32);
+					if (currentBin != nextBin)
+					{
+						double splitImpurity = calculateSplitImpurity(parentNodeClassWeights, leftChildClassWeights,
+								rightChildClassWeights, numberOfClasses, totalParentNodeWeight);
+						if (splitImpurity < lowestImpurity)
+						{
+							lowestImpurity = splitImpurity;
+							bestFeatureForSplit = f;
+							splitValue = thresholds[currentBin];
+							splitBin = currentBin;
+						}
+					}
+				}
+			}
+		}
+
+		scratch.splitValue = splitValue;
+		scratch.splitImpurity = lowestImpurity;
+		scratch.splitBin = splitBin;
+		return bestFeatureForSplit;
+	}
+
+
+	/**
+	 * Accumulate the weight of each class and the number of unique observations in each bin of a feature over a range of a partition.
+	 *
+	 * @param bins					The bin of each observation for the feature, indexed by the original index of the observation.
+	 * @param classData				The weight of each observation for each class.
+	 * @param observationClasses	The id of the class of each observation.
+	 * @param inBagObservations		The number of times each observation in the dataset is in bag.
+	 * @param nodeObservations		The original indices of the unique in bag observations.
+	 * @param start					The start (inclusive) of the range in nodeObservations.
+	 * @param end					The end (exclusive) of the range in nodeObservations.
+	 * @param numberOfClasses		The number of classes in the dataset.
+	 * @param histogramWeights		The array to fill with the weight of each class in each bin, indexed by bin * numberOfClasses +
+	 * 								class id.
+	 * @param histogramCounts		The array to fill with the number of unique observations in each bin.
+	 */
+	private static final void calculateHistogram(byte[] bins, double[][] classData, int[] observationClasses, int[] inBagObservations,
+			int[] nodeObservations, int start, int end, int numberOfClasses, double[] histogramWeights, int[] histogramCounts)
+	{
+		for (int k = start; k < end; k++)
+		{
+			int j = nodeObservations[k];
+			int bin = bins[j] & 0xFF;
+			int classOfObs = observationClasses[j];
+			histogramWeights[bin * numberOfClasses + classOfObs] += classData[classOfObs][j] * inBagObservations[j];
+			histogramCounts[bin]++;
+		}
+	}
+
+	/**
+	 * Determine the Gini impurity of a split in the same manner as FindBestSplit.
+	 *
+	 * @param parentNodeClassWeights	The weight of each class in the node being split.
+	 * @param leftChildClassWeights		The weight of each class in the left child.
+	 * @param rightChildClassWeights	Scratch space that is filled with the weight of each class in the right child.
+	 * @param numberOfClasses			The number of classes in the dataset.
+	 * @param totalParentNodeWeight		The total weight of all observations in the node being split.
+	 * @return							The impurity of the split.
+	 */
+	private static final double calculateSplitImpurity(double[] parentNodeClassWeights, double[] leftChildClassWeights,
+			double[] rightChildClassWeights, int numberOfClasses, double totalParentNodeWeight)
+	{
+		double totalLeftChildWeight = 0.0;
+		double totalRightChildWeight = 0.0;
+		for (int c = 0; c < numberOfClasses; c++)
+		{
+			totalLeftChildWeight += leftChildClassWeights[c];
+
+			double rightChildWeight = parentNodeClassWeights[c] - leftChildClassWeights[c];
+			rightChildClassWeights[c] = rightChildWeight;
+			totalRightChildWeight += rightChildWeight;
+		}
+
+		double leftChildImpurity = 1.0;
+		double rightChildImpurity = 1.0;
+		for (int c = 0; c < numberOfClasses; c++)
+		{
+			double fractionOfClassSInLeftChild = leftChildClassWeights[c] / totalLeftChildWeight;
+			leftChildImpurity = leftChildImpurity - (fractionOfClassSInLeftChild * fractionOfClassSInLeftChild);
+
+			double fractionOfClassSInRightChild = rightChildClassWeights[c] / totalRightChildWeight;
+			rightChildImpurity = rightChildImpurity - (fractionOfClassSInRightChild * fractionOfClassSInRightChild);
+		}
+
+		return ((totalLeftChildWeight / totalParentNodeWeight) * leftChildImpurity) +
+				((totalRightChildWeight / totalParentNodeWeight) * rightChildImpurity);
+	}
+
+}
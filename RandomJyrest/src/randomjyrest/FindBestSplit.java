@@ -1,11 +1,5 @@
 package randomjyrest;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
-
-import utilities.ImmutableTwoValues;
-
 /**
  * Implements the determination of the best feature split value.
  */
@@ -15,93 +9,137 @@ public class FindBestSplit
 	/**
 	 * Determine the feature and its value such that the binary split induced has the minimal impurity out of all possible splits.
 	 * 
-	 * @param dataset						A mapping from the feature names to the data values sorted in ascending order.
-	 * @param dataIndices					A mapping from the feature names to the original indices of the data values. For example, if
-	 * 										the smallest observation value for feature F comes from the 3rd observation in the input file,
-	 * 										then the 0th entry in the array mapped to by F will be 2.
-	 * @param classData						A mapping from each class to an array containing the weight of each observation for the class.
-	 * 										The observations are ordered by their original indices (dataIndices ordering).
-	 * @param inBagObservations				An array recording which observations in the dataset have reached the node for which the split
-	 * 										is being determined (in bag observations). Observations that are not in bag are given a value
-	 * 										of 0.
-	 * @param featuresToSplitOn				The features that are to be tested for a split value.
-	 * @param numberOfUniqueObservations	The number of unique observations that have reached the node. Observations can be duplicates
-	 * 										as sampling is performed with replacement.
-	 * @return								The feature to split on, along with the value of the feature to use for the split.
+	 * Only the observations in the node's range of the partition are examined, so the cost of the search is proportional to the
+	 * number of observations that have reached the node rather than the number of observations in the dataset. The class weights of
+	 * the child nodes are maintained as running totals in the scratch space as the candidate split point moves through the sorted
+	 * observations, so no memory is allocated during the search. When the dataset contains two classes, the splits are scored in
+	 * blocks by BinarySplitKernel.
+	 * 
+	 * @param dataset					The processed dataset containing the class weights of the observations.
+	 * @param partition					The node-local record of the unique in bag observations sorted in ascending order for
+	 * 									each feature.
+	 * @param inBagObservations			An array recording the number of times each observation in the dataset is in bag.
+	 * 									Observations that are not in bag are given a value of 0.
+	 * @param featuresToSplitOn			An array whose first numberOfFeaturesToSplitOn entries are the ids of the features that
+	 * 									are to be tested for a split value.
+	 * @param numberOfFeaturesToSplitOn	The number of features to test.
+	 * @param start						The start (inclusive) of the node's range in the partition.
+	 * @param end						The end (exclusive) of the node's range in the partition.
+	 * @param scratch					The scratch space for the tree. The value of the feature to use for the split is recorded
+	 * 									in it.
+	 * @return							The id of the feature to split on, or -1 if no split could be made.
 	 */
-	public static final ImmutableTwoValues<String, Double> main(Map<String, double[]> dataset, Map<String, int[]> dataIndices,
-			Map<String, double[]> classData, int[] inBagObservations, List<String> featuresToSplitOn, int numberOfUniqueObservations)
+	public static final int main(ProcessedDataset dataset, NodePartition partition, int[] inBagObservations, int[] featuresToSplitOn,
+			int numberOfFeaturesToSplitOn, int start, int end, SplitScratch scratch)
 	{
 		// Initialise the values for the best split found.
-		String bestFeatureForSplit = null;
+		int bestFeatureForSplit = -1;
 		double splitValue = 0.0;
 		double lowestImpurity = 1.0;
 		
 		// Determine the number of observations in the node and the different classes of these observations.
-		List<String> allClasses = new ArrayList<String>(classData.keySet());
-		int numberOfClasses = allClasses.size();
-		int numberOfObservations = inBagObservations.length;
+		double[][] classData = dataset.getClassWeights();
+		int[] observationClasses = dataset.getObservationClasses();
+		int numberOfClasses = classData.length;
+		int numberOfUniqueObservations = end - start;
+		double[] parentNodeClassWeights = scratch.parentClassWeights;  // The individual weight for each class in the parent node.
+		double[] leftChildClassWeights = scratch.leftChildClassWeights;  // The running weight of each class in the left child.
+		double[] rightChildClassWeights = scratch.rightChildClassWeights;  // The weight of each class in the right child.
 		
 		// Evaluate all possible binary splits for each feature being analysed.
-		for (String f : featuresToSplitOn)
+		for (int featureIndex = 0; featureIndex < numberOfFeaturesToSplitOn; featureIndex++)
 		{
-			double[] allFeatureData = dataset.get(f);  // Get the sorted observation values for feature f.
-			double[] subsetFeatureData = new double[numberOfUniqueObservations];  // Set up the array for the values of the unique in bag observations.
-			int[] featureIndices = dataIndices.get(f);  // Get the original indices of the in bag observations.
-			int[] subsetFeatureIndices = new int[numberOfUniqueObservations];  // Set up the array for the indices of the unique in bag observations.
-			int curretInsertionIndex = 0;
-			// Go through all observations and record the data value and original index of the unique in bag observations.
-			for (int i = 0; i < numberOfObservations; i++)
+			int f = featuresToSplitOn[featureIndex];
+			// Get the values and original indices of the unique in bag observations that have reached the node. These are already
+			// sorted in ascending order of their value for feature f.
+			double[] allFeatureData = partition.getFeatureData(f);
+			int[] allFeatureIndices = partition.getFeatureIndices(f);
+			
+			// Determine the class weight for each class. The weight of the observation with original index j is its class weight
+			// multiplied by the number of times it is in bag, and it contributes only to the weight of its own class.
+			for (int i = 0; i < numberOfClasses; i++)
 			{
-				int originalIndex = featureIndices[i];  // The original index of the observation with the ith smallest value for feature f.
-				if (inBagObservations[originalIndex] != 0)
-				{
-					// If the index is in bag and has not been encountered before, then record the value and original index of the
-					// observation. Recording only unique observations reduces the number of split evaluations and logic that is needed.
-					subsetFeatureData[curretInsertionIndex] = allFeatureData[i];
-					subsetFeatureIndices[curretInsertionIndex] = featureIndices[i];
-					curretInsertionIndex++;
-				}
+				parentNodeClassWeights[i] = 0.0;
+				leftChildClassWeights[i] = 0.0;
+			}
+			for (int k = start; k < end; k++)
+			{
+				int j = allFeatureIndices[k];
+				int classOfObs = observationClasses[j];
+				parentNodeClassWeights[classOfObs] += classData[classOfObs][j] * inBagObservations[j];
 			}
-			
-			// Initialise weights for the classes.
 			double totalParentNodeWeight = 0.0;  // The total weight of all observations in the parent node.
-			double[] parentNodeClassWeights = new double[numberOfClasses];  // The individual weight for each class in the parent node.
-			// The cumulative weight for each class, C, is an array where the value at index i+1 is equal to the value at index i plus the
-			// weight for class C of observation i+1.
-			double[][] cumulativeClassWeights = new double[numberOfClasses][numberOfUniqueObservations];
-			
-			// Determine the class weight for each class.
 			for (int i = 0; i < numberOfClasses; i++)
 			{
-				String currentClass = allClasses.get(i);
-				double[] classWeights = classData.get(currentClass);
-				double[] classCumulativeWeights = new double[numberOfUniqueObservations];
-				double totalClassWeight = 0.0;
-				int currentInsertionIndex = 0;
-				// For each unique observation in bag.
-				for (int j : subsetFeatureIndices)
-				{
-					// The weight of the observation with original index j is its class weight multiplied by the number of times it is
-					// in bag. The class weight for j can be 0, in which case j is of a different class. In this case there will be no
-					// increase in the totalClassWeight.
-					double weightOfThisObs = classWeights[j] * inBagObservations[j];
-					totalClassWeight += weightOfThisObs;  // Increment the total weight for the class by the weight of observation j.
-					classCumulativeWeights[currentInsertionIndex] = totalClassWeight;
-					currentInsertionIndex++;
-				}
-				parentNodeClassWeights[i] = totalClassWeight;
-				cumulativeClassWeights[i] = classCumulativeWeights;
-				totalParentNodeWeight += totalClassWeight;
+				totalParentNodeWeight += parentNodeClassWeights[i];
 			}
 			
 			// Check for a split between all pairs of observations except for the second to last and last observations, as the last
 			// observation (the one with largest value for feature f) must always go to the right child node.
 			int observationsToCheck = numberOfUniqueObservations - 1;
+			if (numberOfClasses == 2)
+			{
+				// Record the running class weights of the left child at each point where the value of the feature changes, and score
+				// each full block of these candidate splits at once with BinarySplitKernel.
+				double[] leftChildClass0Weights = scratch.leftChildClass0Weights;
+				double[] leftChildClass1Weights = scratch.leftChildClass1Weights;
+				double[] splitScores = scratch.splitScores;
+				int[] splitPositions = scratch.splitPositions;
+				double[] inBagWeights = scratch.getInBagWeights(classData, observationClasses, inBagObservations);
+				leftChildClassWeights[0] = 0.0;
+				leftChildClassWeights[1] = 0.0;
+				int numberOfSplitsInBlock = 0;
+				for (int i = 0; i < observationsToCheck; i++)
+				{
+					int j = allFeatureIndices[start + i];
+					leftChildClassWeights[observationClasses[j]] += inBagWeights[j];
+					if (allFeatureData[start + i] - allFeatureData[start + i + 1] != 0)
+					{
+						leftChildClass0Weights[numberOfSplitsInBlock] = leftChildClassWeights[0];
+						leftChildClass1Weights[numberOfSplitsInBlock] = leftChildClassWeights[1];
+						splitPositions[numberOfSplitsInBlock] = start + i;
+						numberOfSplitsInBlock++;
+					}
+
+					if (numberOfSplitsInBlock == BinarySplitKernel.BLOCK_SIZE || (i == observationsToCheck - 1 &&
+							numberOfSplitsInBlock != 0))
+					{
+						// Score the block, and then calculate the impurity of the splits that could be better than the best split
+						// found. The splits are checked in ascending order of their position, so ties are resolved in the same
+						// manner as for any number of classes.
+						BinarySplitKernel.main(leftChildClass0Weights, leftChildClass1Weights, parentNodeClassWeights[0],
+								parentNodeClassWeights[1], splitScores, numberOfSplitsInBlock);
+						double scoreBound = BinarySplitKernel.scoreBound(lowestImpurity, totalParentNodeWeight);
+						for (int b = 0; b < numberOfSplitsInBlock; b++)
+						{
+							if (splitScores[b] < scoreBound)
+							{
+								double splitImpurity = BinarySplitKernel.splitImpurity(leftChildClass0Weights[b],
+										leftChildClass1Weights[b], parentNodeClassWeights[0], parentNodeClassWeights[1],
+										totalParentNodeWeight);
+								if (splitImpurity < lowestImpurity)
+								{
+									int position = splitPositions[b];
+									lowestImpurity = splitImpurity;
+									bestFeatureForSplit = f;
+									splitValue = (allFeatureData[position] + allFeatureData[position + 1]) / 2.0;
+								}
+							}
+						}
+						numberOfSplitsInBlock = 0;
+					}
+				}
+				continue;
+			}
 			for (int i = 0; i < observationsToCheck; i++)
 			{
-				double currentFeatureValue = subsetFeatureData[i];  // Value of feature f for the observation with the ith smallest value for f.
-				double nextFeatureValue = subsetFeatureData[i + 1];  // Value of feature f for the observation with the i+1 smallest value for feature f.
+				// Move the observation with the ith smallest value for f into the left child.
+				int j = allFeatureIndices[start + i];
+				int classOfObs = observationClasses[j];
+				leftChildClassWeights[classOfObs] += classData[classOfObs][j] * inBagObservations[j];
+				
+				double currentFeatureValue = allFeatureData[start + i];  // Value of feature f for the observation with the ith smallest value for f.
+				double nextFeatureValue = allFeatureData[start + i + 1];  // Value of feature f for the observation with the i+1 smallest value for feature f.
 				// If the value for observation i == value for i+1, then there can be no split. Therefore, only split when there is a
 				// difference between the values (and in this case nextFeatureValue > currentFeatureValue due to the ordering).
 				if (currentFeatureValue - nextFeatureValue != 0)
@@ -114,17 +152,13 @@ public class FindBestSplit
 					// where w_c is the weight of child c, i is a class, w_i is the weight of all class i observations in c ad n_i is the
 					// number of observations of class i in the node.
 					double totalLeftChildWeight = 0.0;  // Total left child weight.
-					double[] leftChildClassWeights = new double[numberOfClasses];  // Weight of each class in the left child.
 					double totalRightChildWeight = 0.0;  // Total right child weight.
-					double[] rightChildClassWeights = new double[numberOfClasses];  // Weight of each class in the right child.
-					for (int j = 0; j < numberOfClasses; j++)
+					for (int c = 0; c < numberOfClasses; c++)
 					{
-						double leftChildWeight = cumulativeClassWeights[j][i];
-						leftChildClassWeights[j] = leftChildWeight;
-						totalLeftChildWeight += leftChildWeight;
+						totalLeftChildWeight += leftChildClassWeights[c];
 						
-						double rightChildWeight = parentNodeClassWeights[j] - leftChildWeight;
-						rightChildClassWeights[j] = rightChildWeight;
+						double rightChildWeight = parentNodeClassWeights[c] - leftChildClassWeights[c];
+						rightChildClassWeights[c] = rightChildWeight;
 						totalRightChildWeight += rightChildWeight;
 					}
 					
@@ -136,12 +170,12 @@ public class FindBestSplit
 					// number of observations of class i in the node and w_c is the total weight in child c.
 					double leftChildImpurity = 1.0;
 					double rightChildImpurity = 1.0;
-					for (int j = 0; j < numberOfClasses; j++)
+					for (int c = 0; c < numberOfClasses; c++)
 					{
-						double fractionOfClassSInLeftChild = leftChildClassWeights[j] / totalLeftChildWeight;
+						double fractionOfClassSInLeftChild = leftChildClassWeights[c] / totalLeftChildWeight;
 						leftChildImpurity = leftChildImpurity - (fractionOfClassSInLeftChild * fractionOfClassSInLeftChild);
 
-						double fractionOfClassSInRightChild = rightChildClassWeights[j] / totalRightChildWeight;
+						double fractionOfClassSInRightChild = rightChildClassWeights[c] / totalRightChildWeight;
 						rightChildImpurity = rightChildImpurity - (fractionOfClassSInRightChild * fractionOfClassSInRightChild);
 					}
 					
@@ -165,7 +199,9 @@ public class FindBestSplit
 			}
 		}
 
-		return new ImmutableTwoValues<String, Double>(bestFeatureForSplit, splitValue);
+		scratch.splitValue = splitValue;
+		scratch.splitImpurity = lowestImpurity;
+		return bestFeatureForSplit;
 	}
 
 }
@@ -1,22 +1,22 @@
 package randomjyrest;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
-import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.SplittableRandom;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
 
-import utilities.DetermineDatasetProperties;
-import utilities.ImmutableThreeValues;
 import utilities.ImmutableTwoValues;
 
 /**
@@ -26,9 +26,9 @@ public class Forest
 {
 	
 	/**
-	 * The trees that make up the forest.
+	 * The trees that make up the forest, flattened into the array-backed form used for prediction.
 	 */
-	private List<Tree> forest;
+	private List<CompiledTree> forest;
 	
 	/**
 	 * The location of the dataset that was used to train the forest.
@@ -41,20 +41,55 @@ public class Forest
 	private List<String> featuresRemoved;
 	
 	/**
-	 * A record of the classes that were used in training the tree.
+	 * The loaded dataset that was used to train the forest, or null if the forest was trained directly from a file.
+	 */
+	private LoadedDataset loadedDataset;
+	
+	/**
+	 * The features that were used in growing the forest, indexed by the feature ids used in the trees.
+	 */
+	private String[] featuresInTrainingSet;
+	
+	/**
+	 * A record of the classes that were used in training the tree, indexed by the class ids used in the trees.
 	 */
 	private List<String> classesInTrainingSet;
 	
+	/**
+	 * The id of the class of each observation in the training dataset.
+	 */
+	private int[] observationClassesInTrainingSet;
+	
 	/**
 	 * The seed used to grow the forest.
 	 */
 	private long seedUsedForGrowing;
 	
 	/**
-	 * A sorted list of the indices of the observations that are OOB on each tree. For example, this.oobObservations.get(i) contains
-	 * the indices of the set of observations that are OOB on the ith tree.
+	 * The number of features evaluated for the cutpoint in each nonterminal node when growing the forest.
+	 */
+	private int mtryUsedForGrowing;
+	
+	/**
+	 * The fingerprint of the observation weights used to grow the forest (see fingerprintWeights).
+	 */
+	private long weightsFingerprint;
+	
+	/**
+	 * The observations that are OOB on each tree, held as one bit per observation in the training dataset. For example, the bit for
+	 * observation j in this.oobObservations.get(i) is set if observation j is OOB on the ith tree.
 	 */
-	private List<Set<Integer>> oobObservations;
+	private List<BitSet> oobObservations;
+	
+	/**
+	 * The number of threads to use for growing the forest and making predictions with it.
+	 */
+	private int numberOfThreads;
+	
+	/**
+	 * The parameters controlling how the trees in the forest are grown.
+	 */
+	private GrowthParameters growthParameters = new GrowthParameters();
 
 
 	/**
@@ -65,19 +100,21 @@ public class Forest
 	 * @param mtry				The number of features to evaluate for the cutpoint in each nonterminal node.
 	 * @param featuresToRemove	The features in the dataset that should be removed (not processed).
 	 * @param weights			The weights for each observation ordered in the same order that the observations appear in the dataset.
-	 * @param numberOfThreads	The number of threads to use for growing the forest.
+	 * @param numberOfThreads	The number of threads to use for growing the forest and making predictions with it.
 	 * @param isCalcualteOOB	Should the OOB predictions be made.
 	 * @return					The forest.
 	 */
 	public final Map<String, double[]> main(String dataset, int numberOfTrees, int mtry, List<String> featuresToRemove, double[] weights,
 			int numberOfThreads, boolean isCalcualteOOB)
 	{
-		this.forest = new ArrayList<Tree>(numberOfTrees);
+		this.forest = new ArrayList<CompiledTree>(numberOfTrees);
 		this.trainingDataset = dataset;
 		Random seedGenerator = new Random();
 		this.featuresRemoved = featuresToRemove;
 		this.seedUsedForGrowing = seedGenerator.nextLong();
-		return growForest(weights, numberOfTrees, mtry, numberOfThreads, isCalcualteOOB);
+		this.numberOfThreads = numberOfThreads;
+		this.loadedDataset = LoadDataset.loadOrReuse(dataset, featuresToRemove);
+		return growForest(this.loadedDataset, null, weights, numberOfTrees, mtry, numberOfThreads, isCalcualteOOB);
 	}
 
 	/**
@@ -89,127 +126,448 @@ public class Forest
 	 * @param featuresToRemove	The features in the dataset that should be removed (not processed).
 	 * @param weights			The weights for each observation ordered in the same order that the observations appear in the dataset.
 	 * @param seed				The seed to use to seed the random number generator.
-	 * @param numberOfThreads	The number of threads to use for growing the forest.
+	 * @param numberOfThreads	The number of threads to use for growing the forest and making predictions with it.
 	 * @param isCalcualteOOB	Should the OOB predictions be made.
 	 * @return					The forest.
 	 */
 	public final Map<String, double[]> main(String dataset, int numberOfTrees, int mtry, List<String> featuresToRemove, double[] weights,
 			long seed, int numberOfThreads, boolean isCalcualteOOB)
 	{
-		this.forest = new ArrayList<Tree>(numberOfTrees);
+		this.forest = new ArrayList<CompiledTree>(numberOfTrees);
 		this.trainingDataset = dataset;
 		this.featuresRemoved = featuresToRemove;
 		this.seedUsedForGrowing = seed;
-		return growForest(weights, numberOfTrees, mtry, numberOfThreads, isCalcualteOOB);
+		this.numberOfThreads = numberOfThreads;
+		this.loadedDataset = LoadDataset.loadOrReuse(dataset, featuresToRemove);
+		return growForest(this.loadedDataset, null, weights, numberOfTrees, mtry, numberOfThreads, isCalcualteOOB);
+	}
+
+	/**
+	 * Initialise a random forest from a dataset that has already been loaded.
+	 * 
+	 * No file is read and no data is sorted, so this should be used when many forests are grown from the same dataset.
+	 * 
+	 * @param dataset			The loaded dataset.
+	 * @param featureMask		The features to use, indexed as the features of the loaded dataset are (see LoadedDataset).
+	 * @param numberOfTrees		The number of trees to grow in the forest.
+	 * @param mtry				The number of features to evaluate for the cutpoint in each nonterminal node.
+	 * @param weights			The weights for each observation ordered in the same order that the observations appear in the dataset.
+	 * @param numberOfThreads	The number of threads to use for growing the forest and making predictions with it.
+	 * @param isCalcualteOOB	Should the OOB predictions be made.
+	 * @return					The forest.
+	 */
+	public final Map<String, double[]> main(LoadedDataset dataset, boolean[] featureMask, int numberOfTrees, int mtry, double[] weights,
+			int numberOfThreads, boolean isCalcualteOOB)
+	{
+		Random seedGenerator = new Random();
+		return this.main(dataset, featureMask, numberOfTrees, mtry, weights, seedGenerator.nextLong(), numberOfThreads, isCalcualteOOB);
+	}
+
+	/**
+	 * Initialise a random forest from a dataset that has already been loaded.
+	 * 
+	 * No file is read and no data is sorted, so this should be used when many forests are grown from the same dataset.
+	 * 
+	 * @param dataset			The loaded dataset.
+	 * @param featureMask		The features to use, indexed as the features of the loaded dataset are (see LoadedDataset).
+	 * @param numberOfTrees		The number of trees to grow in the forest.
+	 * @param mtry				The number of features to evaluate for the cutpoint in each nonterminal node.
+	 * @param weights			The weights for each observation ordered in the same order that the observations appear in the dataset.
+	 * @param seed				The seed to use to seed the random number generator.
+	 * @param numberOfThreads	The number of threads to use for growing the forest and making predictions with it.
+	 * @param isCalcualteOOB	Should the OOB predictions be made.
+	 * @return					The forest.
+	 */
+	public final Map<String, double[]> main(LoadedDataset dataset, boolean[] featureMask, int numberOfTrees, int mtry, double[] weights,
+			long seed, int numberOfThreads, boolean isCalcualteOOB)
+	{
+		this.forest = new ArrayList<CompiledTree>(numberOfTrees);
+		this.recordLoadedDataset(dataset, featureMask);
+		this.seedUsedForGrowing = seed;
+		this.numberOfThreads = numberOfThreads;
+		return growForest(dataset, featureMask, weights, numberOfTrees, mtry, numberOfThreads, isCalcualteOOB);
+	}
+
+	/**
+	 * Grow a random forest from a dataset that has already been loaded, streaming each tree to a set of consumers rather than
+	 * retaining it.
+	 * 
+	 * At most maximumTreesInFlight trees are being grown (or waiting to be delivered) at any one time, and each tree is delivered to
+	 * the consumers as soon as it and all the trees before it have been grown. The trees grown are the same as those grown by main
+	 * with the same seed, but the forest holds no trees afterwards, so the memory needed does not grow with the number of trees. Use
+	 * an OOBVoteAccumulator to get the OOB predictions and an ImportanceAccumulator to get the importance of the features, as the
+	 * forest can not be used to predict, calculate importance or be saved once it has been streamed.
+	 * 
+	 * @param dataset				The loaded dataset.
+	 * @param featureMask			The features to use, indexed as the features of the loaded dataset are (see LoadedDataset).
+	 * @param numberOfTrees			The number of trees to grow in the forest.
+	 * @param mtry					The number of features to evaluate for the cutpoint in each nonterminal node.
+	 * @param weights				The weights for each observation ordered in the same order that the observations appear in the
+	 * 								dataset.
+	 * @param seed					The seed to use to seed the random number generator.
+	 * @param numberOfThreads		The number of threads to use for growing the forest.
+	 * @param maximumTreesInFlight	The maximum number of trees that are grown or held at once (at least 1).
+	 * @param consumers				The consumers to deliver the trees to, in the order that they should receive each tree.
+	 */
+	public final void stream(LoadedDataset dataset, boolean[] featureMask, int numberOfTrees, int mtry, double[] weights, long seed,
+			int numberOfThreads, int maximumTreesInFlight, List<TreeConsumer> consumers)
+	{
+		if (maximumTreesInFlight < 1)
+		{
+			System.out.format("The maximum number of trees in flight must be at least 1. The value supplied was %d.\n",
+					maximumTreesInFlight);
+			System.exit(0);
+		}
+		this.forest = null;
+		this.oobObservations = null;
+		this.recordLoadedDataset(dataset, featureMask);
+		this.seedUsedForGrowing = seed;
+		this.numberOfThreads = numberOfThreads;
+		if (featureMask == null)
+		{
+			featureMask = new boolean[dataset.getNumberOfFeatures()];
+			Arrays.fill(featureMask, true);
+		}
+		this.growTrees(dataset, featureMask, weights, numberOfTrees, mtry, numberOfThreads, maximumTreesInFlight, consumers);
+	}
+	
+	/**
+	 * Record the loaded dataset that the forest is grown from, and the features of its file that are not used. These are the features
+	 * that were not loaded, along with the loaded features that are excluded by the feature mask.
+	 * 
+	 * @param dataset		The loaded dataset.
+	 * @param featureMask	The features to use, indexed as the features of the loaded dataset are, or null if all are used.
+	 */
+	private final void recordLoadedDataset(LoadedDataset dataset, boolean[] featureMask)
+	{
+		this.trainingDataset = dataset.getDatasetLocation();
+		this.loadedDataset = dataset;
+		String[] featureNames = dataset.getFeatureNames();
+		this.featuresRemoved = new ArrayList<String>(dataset.getFeaturesRemoved());
+		for (int i = 0; i < featureNames.length; i++)
+		{
+			if (featureMask != null && !featureMask[i])
+			{
+				this.featuresRemoved.add(featureNames[i]);
+			}
+		}
 	}
 	
 
 	/**
 	 * Grow a random forest.
 	 * 
+	 * @param loadedData		The loaded training dataset.
+	 * @param featureMask		The features to use, or null if all loaded features should be used.
 	 * @param weights			The weights for each observation ordered in the same order that the observations appear in the dataset.
 	 * @param numberOfTrees		The number of trees to grow in the forest.
 	 * @param mtry				The number of features to evaluate for the cutpoint in each nonterminal node.
-	 * @param numberOfThreads	The number of threads to use for growing the forest.
+	 * @param numberOfThreads	The number of threads to use for growing the forest and making predictions with it.
 	 * @param isCalcualteOOB	Should the OOB predictions be made.
 	 * @return					The forest.
 	 */
-	private final Map<String, double[]> growForest(double[] weights, int numberOfTrees, int mtry, int numberOfThreads,
-			boolean isCalcualteOOB)
+	private final Map<String, double[]> growForest(LoadedDataset loadedData, boolean[] featureMask, double[] weights, int numberOfTrees,
+			int mtry, int numberOfThreads, boolean isCalcualteOOB)
+	{
+		this.oobObservations = new ArrayList<BitSet>(numberOfTrees);
+		if (featureMask == null)
+		{
+			featureMask = new boolean[loadedData.getNumberOfFeatures()];
+			Arrays.fill(featureMask, true);
+		}
+		
+		// Grow the trees, retaining every one of them.
+		List<TreeConsumer> consumers = new ArrayList<TreeConsumer>();
+		consumers.add(new TreeConsumer()
+			{
+				public void consume(int treeIndex, CompiledTree tree, BitSet oobObservations)
+				{
+					Forest.this.forest.add(tree);
+					Forest.this.oobObservations.add(oobObservations);
+				}
+			});
+		int numberOfObservations = this.growTrees(loadedData, featureMask, weights, numberOfTrees, mtry, numberOfThreads,
+				numberOfTrees, consumers);
+		
+		// Make OOB predictions if required.
+		Map<String, double[]> predictions = new HashMap<String, double[]>();
+		if (isCalcualteOOB)
+		{
+			// Generate the entire set of prediction data (this is the same as the training data, but will be subsetted).
+			double[][] datasetToPredict = this.bindDatasetToPredict(this.mapLoadedDataset(loadedData));
+
+			// For each tree predict the class of the OOB observations.
+			double[][] oobPredictions = ForestPrediction.predictOOB(this.forest, this.oobObservations, datasetToPredict,
+					numberOfObservations, this.classesInTrainingSet.size(), numberOfThreads);
+			predictions = this.predictionsToMap(oobPredictions);
+		}
+		
+		return predictions;
+	}
+	
+	/**
+	 * Grow the trees of a random forest, delivering each tree to a set of consumers in the order that the trees appear in the forest.
+	 * 
+	 * The trees are submitted to the growth pool in order, with at most maximumTreesInFlight trees submitted but not yet delivered.
+	 * 
+	 * @param loadedData			The loaded training dataset.
+	 * @param featureMask			The features to use.
+	 * @param weights				The weights for each observation ordered in the same order that the observations appear in the
+	 * 								dataset.
+	 * @param numberOfTrees			The number of trees to grow in the forest.
+	 * @param mtry					The number of features to evaluate for the cutpoint in each nonterminal node.
+	 * @param numberOfThreads		The number of threads to use for growing the forest.
+	 * @param maximumTreesInFlight	The maximum number of trees that are submitted but not yet delivered.
+	 * @param consumers				The consumers to deliver the trees to.
+	 * @return						The number of observations in the training dataset.
+	 */
+	private final int growTrees(LoadedDataset loadedData, boolean[] featureMask, double[] weights, int numberOfTrees, int mtry,
+			int numberOfThreads, int maximumTreesInFlight, List<TreeConsumer> consumers)
 	{
 		// Initialise the random number generator used to grow the forest.
 		Random forestRNG = new Random(this.seedUsedForGrowing);
 		
-		this.oobObservations = new ArrayList<Set<Integer>>(numberOfTrees);
-		int numberOfObservations = 0;
+		// Process the training dataset.
+		ProcessedDataset processedData = ProcessDataset.main(loadedData, featureMask, weights);
 
-		{	
-			// Process the training dataset.
-			ImmutableThreeValues<Map<String, double[]>, Map<String, int[]>, Map<String, double[]>> processedData =
-					ProcessDataset.main(this.trainingDataset, this.featuresRemoved, weights);
-			Map<String, double[]> processedFeatureData = processedData.first;
-			Map<String, int[]> processedIndexData = processedData.second;
-			Map<String, double[]> processedClassData = processedData.third;
-	
-			// Determine the classes in the dataset, and the indices of the observations in each class.
-			this.classesInTrainingSet = new ArrayList<String>(processedClassData.keySet());
-			numberOfObservations = processedClassData.get(this.classesInTrainingSet.get(0)).length;
-			Map<String, List<Integer>> observationsFromEachClass = new HashMap<String, List<Integer>>();
-			for (String s : this.classesInTrainingSet)
+		// Determine the classes in the dataset, and the indices of the observations in each class.
+		this.featuresInTrainingSet = processedData.getFeatureNames();
+		this.classesInTrainingSet = Arrays.asList(processedData.getClassNames());
+		this.observationClassesInTrainingSet = processedData.getObservationClasses();
+		int numberOfObservations = processedData.getNumberOfObservations();
+		this.mtryUsedForGrowing = mtry;
+		this.weightsFingerprint = fingerprintWeights(weights, numberOfObservations);
+		int numberOfClasses = processedData.getNumberOfClasses();
+		double[][] processedClassData = processedData.getClassWeights();
+		int[][] observationsFromEachClass = new int[numberOfClasses][];
+		for (int c = 0; c < numberOfClasses; c++)
+		{
+			double[] classWeights = processedClassData[c];
+			int numberOfObservationsInClass = 0;
+			for (int i = 0; i < numberOfObservations; i++)
 			{
-				double[] classWeights = processedClassData.get(s);
-				List<Integer> observationsInClass = new ArrayList<Integer>();
-				for (int i = 0; i < numberOfObservations; i++)
+				if (classWeights[i] != 0.0)
 				{
-					if (classWeights[i] != 0.0)
-					{
-						observationsInClass.add(i);
-					}
+					numberOfObservationsInClass++;
 				}
-				observationsFromEachClass.put(s, observationsInClass);
-			}
-			
-			// Grow trees.
-			final ExecutorService treeGrowthPool = Executors.newFixedThreadPool(numberOfThreads);
-			List<Future<ImmutableTwoValues<Set<Integer>, Tree>>> futureGrowers = new ArrayList<Future<ImmutableTwoValues<Set<Integer>, Tree>>>(numberOfTrees);
-			for (int i = 0; i < numberOfTrees; i++)
-			{
-				futureGrowers.add(treeGrowthPool.submit(new TreeGrower(processedFeatureData, processedIndexData, processedClassData,
-						mtry, forestRNG.nextLong(), observationsFromEachClass, numberOfObservations)));
 			}
-			
-			// Get the results of growing the trees.
-			try
+			int[] observationsInClass = new int[numberOfObservationsInClass];
+			int currentInsertionIndex = 0;
+			for (int i = 0; i < numberOfObservations; i++)
 			{
-				for (Future<ImmutableTwoValues<Set<Integer>, Tree>> t : futureGrowers)
+				if (classWeights[i] != 0.0)
 				{
-					ImmutableTwoValues<Set<Integer>, Tree> growthReturn = t.get();
-					t = null;
-					this.oobObservations.add(growthReturn.first);
-					this.forest.add(growthReturn.second);
+					observationsInClass[currentInsertionIndex] = i;
+					currentInsertionIndex++;
 				}
 			}
-			catch (ExecutionException e)
-			{
-				System.out.println("Error in a grower thread.");
-				e.printStackTrace();
-				System.exit(0);
-			}
-			catch (InterruptedException e)
-			{
-				// Interrupted the thread, so exit the program.
-				System.out.println("Grower interruption received.");
-				e.printStackTrace();
-				System.exit(0);
-			}
-			finally
-			{
-				treeGrowthPool.shutdown();
-			}
+			observationsFromEachClass[c] = observationsInClass;
 		}
 		
-		// Make OOB predictions if required.
-		Map<String, double[]> predictions = new HashMap<String, double[]>();
-		if (isCalcualteOOB)
+		// Quantise the features if the trees are to be grown in binned mode.
+		BinnedFeatureData binnedData = null;
+		if (this.growthParameters.isBinned())
 		{
-			// Generate the entire set of prediction data (this is the same as the training data, but will be subsetted).
-			Map<String, double[]> datasetToPredict = ProcessPredictionData.main(this.trainingDataset, this.featuresRemoved).first;
-
-			// Setup the prediction output.
-			for (String s : this.classesInTrainingSet)
+			binnedData = BinFeatureData.main(processedData, this.growthParameters.getNumberOfBins());
+		}
+		
+		Map<String, double[]> trainingDataMap = this.mapLoadedDataset(loadedData);
+		String[] datasetFeatureNames = trainingDataMap.keySet().toArray(new String[trainingDataMap.size()]);
+		double[][] trainingData = this.bindDatasetToPredict(trainingDataMap);
+		for (TreeConsumer consumer : consumers)
+		{
+			consumer.start(this.featuresInTrainingSet, datasetFeatureNames, this.classesInTrainingSet, trainingData,
+					this.observationClassesInTrainingSet);
+		}
+		
+		// Grow trees. When growing with fork-join parallelism the trees are grown in a fork-join pool, so that the subtrees forked
+		// within each tree can be stolen by any idle thread.
+		final ExecutorService treeGrowthPool = (this.growthParameters.isForkJoin() ? new ForkJoinPool(numberOfThreads) :
+				Executors.newFixedThreadPool(numberOfThreads));
+		ArrayDeque<Future<ImmutableTwoValues<BitSet, CompiledTree>>> futureGrowers =
+				new ArrayDeque<Future<ImmutableTwoValues<BitSet, CompiledTree>>>();
+		int treesDelivered = 0;
+		try
+		{
+			for (int i = 0; i < numberOfTrees; i++)
 			{
-				predictions.put(s, new double[numberOfObservations]);
+				// Deliver the oldest tree before submitting another if the maximum number of trees are in flight.
+				if (futureGrowers.size() == maximumTreesInFlight)
+				{
+					this.deliverTree(futureGrowers.poll().get(), treesDelivered++, consumers);
+				}
+				futureGrowers.add(treeGrowthPool.submit(new TreeGrower(processedData, binnedData, this.growthParameters, mtry,
+						forestRNG.nextLong(), observationsFromEachClass)));
 			}
-
-			// For each tree predict the class of the OOB observations.
-			for (int i = 0; i < numberOfTrees; i++)
+			while (!futureGrowers.isEmpty())
 			{
-				Tree treeToPredictOn = this.forest.get(i);
-				predictions = treeToPredictOn.predict(datasetToPredict, this.oobObservations.get(i), predictions); 
+				this.deliverTree(futureGrowers.poll().get(), treesDelivered++, consumers);
 			}
 		}
+		catch (ExecutionException e)
+		{
+			System.out.println("Error in a grower thread.");
+			e.printStackTrace();
+			System.exit(0);
+		}
+		catch (InterruptedException e)
+		{
+			// Interrupted the thread, so exit the program.
+			System.out.println("Grower interruption received.");
+			e.printStackTrace();
+			System.exit(0);
+		}
+		finally
+		{
+			treeGrowthPool.shutdown();
+		}
 		
-		return predictions;
+		for (TreeConsumer consumer : consumers)
+		{
+			consumer.finish();
+		}
+		return numberOfObservations;
+	}
+	
+	/**
+	 * Deliver a grown tree to a set of consumers.
+	 * 
+	 * @param growthReturn	The observations that are OOB on the tree, and the tree.
+	 * @param treeIndex		The position of the tree in the forest.
+	 * @param consumers		The consumers to deliver the tree to.
+	 */
+	private final void deliverTree(ImmutableTwoValues<BitSet, CompiledTree> growthReturn, int treeIndex, List<TreeConsumer> consumers)
+	{
+		for (TreeConsumer consumer : consumers)
+		{
+			consumer.consume(treeIndex, growthReturn.second, growthReturn.first);
+		}
+	}
+	
+	/**
+	 * Restore a forest that was saved with SaveForest (see LoadForest). Predictions are made with as many threads as there are
+	 * processors available.
+	 * 
+	 * @param trees					The trees that make up the forest.
+	 * @param trainingDataset		The location of the dataset that was used to train the forest.
+	 * @param featuresRemoved		The features that were removed from the training dataset.
+	 * @param featureNames			The features that were used in growing the forest, indexed by the feature ids used in the trees.
+	 * @param classNames			The classes in the training dataset, indexed by the class ids used in the trees.
+	 * @param observationClasses	The id of the class of each observation in the training dataset.
+	 * @param seed					The seed used to grow the forest.
+	 * @param mtry					The number of features evaluated for the cutpoint in each nonterminal node.
+	 * @param weightsFingerprint	The fingerprint of the observation weights used to grow the forest.
+	 * @param oobObservations		The observations that are OOB on each tree, or null if they were not saved.
+	 */
+	final void restore(List<CompiledTree> trees, String trainingDataset, List<String> featuresRemoved, String[] featureNames,
+			List<String> classNames, int[] observationClasses, long seed, int mtry, long weightsFingerprint,
+			List<BitSet> oobObservations)
+	{
+		this.forest = trees;
+		this.trainingDataset = trainingDataset;
+		this.featuresRemoved = featuresRemoved;
+		this.loadedDataset = null;
+		this.featuresInTrainingSet = featureNames;
+		this.classesInTrainingSet = classNames;
+		this.observationClassesInTrainingSet = observationClasses;
+		this.seedUsedForGrowing = seed;
+		this.mtryUsedForGrowing = mtry;
+		this.weightsFingerprint = weightsFingerprint;
+		this.oobObservations = oobObservations;
+		this.numberOfThreads = Runtime.getRuntime().availableProcessors();
+	}
+	
+	/**
+	 * @return		The trees that make up the forest.
+	 */
+	final List<CompiledTree> getTrees()
+	{
+		return this.forest;
+	}
+	
+	/**
+	 * @return		The location of the dataset that was used to train the forest.
+	 */
+	final String getTrainingDataset()
+	{
+		return this.trainingDataset;
+	}
+	
+	/**
+	 * @return		The features that were removed from the training dataset.
+	 */
+	final List<String> getFeaturesRemoved()
+	{
+		return this.featuresRemoved;
+	}
+	
+	/**
+	 * @return		The features that were used in growing the forest, indexed by the feature ids used in the trees.
+	 */
+	final String[] getFeaturesInTrainingSet()
+	{
+		return this.featuresInTrainingSet;
+	}
+	
+	/**
+	 * @return		The classes in the training dataset, indexed by the class ids used in the trees.
+	 */
+	final List<String> getClassesInTrainingSet()
+	{
+		return this.classesInTrainingSet;
+	}
+	
+	/**
+	 * @return		The id of the class of each observation in the training dataset.
+	 */
+	final int[] getObservationClassesInTrainingSet()
+	{
+		return this.observationClassesInTrainingSet;
+	}
+	
+	/**
+	 * @return		The observations that are OOB on each tree, or null if they are not known.
+	 */
+	final List<BitSet> getOOBObservations()
+	{
+		return this.oobObservations;
+	}
+	
+	/**
+	 * @return		The number of features evaluated for the cutpoint in each nonterminal node when growing the forest.
+	 */
+	final int getMtry()
+	{
+		return this.mtryUsedForGrowing;
+	}
+	
+	/**
+	 * @return		The fingerprint of the observation weights used to grow the forest (see fingerprintWeights).
+	 */
+	final long getWeightsFingerprint()
+	{
+		return this.weightsFingerprint;
+	}
+	
+	/**
+	 * Calculate a fingerprint of the observation weights used to grow a forest, so that the weights can be compared without saving
+	 * them. The weights are padded with 1.0s in the same way as when the dataset is processed (see ProcessDataset), so an empty weight
+	 * vector has the same fingerprint as a vector of 1.0s.
+	 * 
+	 * @param weights				The weights for each observation ordered in the same order that the observations appear in the
+	 * 								dataset.
+	 * @param numberOfObservations	The number of observations in the training dataset.
+	 * @return						The fingerprint of the weights.
+	 */
+	static final long fingerprintWeights(double[] weights, int numberOfObservations)
+	{
+		long fingerprint = 1;
+		for (int i = 0; i < numberOfObservations; i++)
+		{
+			double weight = (i < weights.length) ? weights[i] : 1.0;
+			fingerprint = 31 * fingerprint + Double.doubleToLongBits(weight);
+		}
+		return fingerprint;
 	}
 	
 	/**
@@ -222,6 +580,24 @@ public class Forest
 		return this.seedUsedForGrowing;
 	}
 	
+	/**
+	 * @return		The parameters controlling how the trees in the forest are grown.
+	 */
+	public final GrowthParameters getGrowthParameters()
+	{
+		return this.growthParameters;
+	}
+	
+	/**
+	 * Set the parameters controlling how the trees in the forest are grown. Must be called before the forest is grown.
+	 * 
+	 * @param growthParameters	The growth parameters.
+	 */
+	public final void setGrowthParameters(GrowthParameters growthParameters)
+	{
+		this.growthParameters = growthParameters;
+	}
+	
 	/**
 	 * Predict the class of observations in a dataset.
 	 * 
@@ -233,33 +609,74 @@ public class Forest
 	 */
 	public final Map<String, double[]> predict(String dataset, List<String> featuresToRemove)
 	{
-		ImmutableTwoValues<Map<String, double[]>, Integer> predictionData = ProcessPredictionData.main(dataset, featuresToRemove);
-		Map<String, double[]> datasetToPredict = predictionData.first;
-		int numberOfObservations = predictionData.second;
+		return this.predict(dataset, featuresToRemove, this.numberOfThreads);
+	}
+	
+	/**
+	 * Predict the class of observations in a dataset.
+	 * 
+	 * The predictions are the same whatever the number of threads used.
+	 * 
+	 * @param dataset			The location of the file containing the data to be predicted.
+	 * @param featuresToRemove	The features in the dataset that should be removed (not processed).
+	 * @param numberOfThreads	The number of threads to use for making the predictions.
+	 * @return					A mapping from class names to observations. Each class contains an entry for each observation in the
+	 * 							dataset. For an observation, i, the ith entry in the array for each class, c, will record the predicted
+	 * 							weight given to class c for observation i. 
+	 */
+	public final Map<String, double[]> predict(String dataset, List<String> featuresToRemove, int numberOfThreads)
+	{
+		this.checkTreesRetained();
 		
-		// Determine the observations being predicted.
-		Set<Integer> observationsToPredict = new HashSet<Integer>();
-		for (int i = 0; i < numberOfObservations; i++)
-		{
-			observationsToPredict.add(i);
-		}
-
-		// Setup the prediction output.
-		Map<String, double[]> predictions = new HashMap<String, double[]>();
-		for (String s : this.classesInTrainingSet)
-		{
-			predictions.put(s, new double[numberOfObservations]);
-		}
+		// Bind the columns of the dataset to the features used to grow the forest, and parse only the bound columns.
+		ParsedDataFile parsedData = ParseDataFile.main(dataset, featuresToRemove, this.featuresInTrainingSet);
+		double[][] datasetToPredict = parsedData.getFeatureData();
+		int numberOfObservations = parsedData.getNumberOfObservations();
 
-		// For each tree in the forest, add the predictions for each observation.
-		int numberOfTrees = this.forest.size();
-		for (int i = 0; i < numberOfTrees; i++)
-		{
-			Tree treeToPredictOn = this.forest.get(i);
-			predictions = treeToPredictOn.predict(datasetToPredict, observationsToPredict, predictions); 
-		}
+		// For each block of observations, add the predictions from each tree in the forest.
+		double[][] predictions = ForestPrediction.predict(this.forest, datasetToPredict, numberOfObservations,
+				this.classesInTrainingSet.size(), numberOfThreads);
 		
-		return predictions;
+		return this.predictionsToMap(predictions);
+	}
+	
+	/**
+	 * Predict the class of observations in a dataset that is streamed from a file, writing the predictions to a file as they are made.
+	 * 
+	 * The dataset is read and predicted in blocks of observations (see StreamPrediction), so the memory used does not depend on the
+	 * size of the dataset. The predicted weights are the same as those returned by predict.
+	 * 
+	 * @param dataset				The location of the file containing the data to be predicted.
+	 * @param identifierColumn		The name of the column identifying each observation (e.g. UPAccession), or null if the observations
+	 * 								should be identified by their position in the dataset.
+	 * @param outputLocation		The location of the file to write the predictions to.
+	 * @param blockSize				The number of observations read and predicted at a time.
+	 */
+	public final void predictToFile(String dataset, String identifierColumn, String outputLocation, int blockSize)
+	{
+		this.checkTreesRetained();
+		StreamPrediction.main(this.forest, this.featuresInTrainingSet, this.classesInTrainingSet, dataset, identifierColumn,
+				outputLocation, blockSize, this.numberOfThreads);
+	}
+	
+	/**
+	 * Predict the class of the observations in the training dataset using only the trees that each observation is OOB on.
+	 * 
+	 * The predictions are the same as those returned when the forest was grown with the OOB predictions being made, and so can be
+	 * used to recover them for a forest that has been loaded (see LoadForest) without regrowing it.
+	 * 
+	 * @return		A mapping from class names to the predicted weight of the class for each observation in the training dataset.
+	 */
+	public final Map<String, double[]> predictOOB()
+	{
+		this.checkTreesRetained();
+		this.checkOOBObservationsKnown();
+		Map<String, double[]> datasetToPredict = (this.loadedDataset != null) ? this.mapLoadedDataset(this.loadedDataset) :
+			ProcessPredictionData.main(this.trainingDataset, this.featuresRemoved).first;
+		double[][] oobPredictions = ForestPrediction.predictOOB(this.forest, this.oobObservations,
+				this.bindDatasetToPredict(datasetToPredict), this.observationClassesInTrainingSet.length,
+				this.classesInTrainingSet.size(), this.numberOfThreads);
+		return this.predictionsToMap(oobPredictions);
 	}
 	
 	/**
@@ -274,144 +691,146 @@ public class Forest
 	 * of the OOB observations on t and the prediction of the permuted data is calculated. For each feature the arithmetic average
 	 * of the change in quality measure over all trees is determined, and this is the importance of that feature.
 	 * 
+	 * Trees that do not split on a feature can not have their predictions altered by permuting it, and so are not re-predicted (see
+	 * PermutationImportance). The calculation uses the same number of threads as were used to grow the forest.
+	 * 
+	 * The permutations are generated from the seed used to grow the forest, so the importance of the features in a forest grown with
+	 * a given seed can be reproduced.
+	 * 
 	 * @return		A mapping from the feature names to their importance.
 	 */
 	public final Map<String, Double> variableImportance()
 	{
+		return this.variableImportance(this.seedUsedForGrowing);
+	}
+	
+	/**
+	 * Determine the importance of each feature in the training dataset.
+	 * 
+	 * See variableImportance() for a description of the calculation.
+	 * 
+	 * @param seed	The seed used to generate the permutations of the features. The seed for the permutations on each tree is derived
+	 * 				from this in the order that the trees appear in the forest.
+	 * @return		A mapping from the feature names to their importance.
+	 */
+	public final Map<String, Double> variableImportance(long seed)
+	{
+		this.checkTreesRetained();
+		this.checkOOBObservationsKnown();
 		
-		List<Double> baseOOBQualityMeasure = new ArrayList<Double>(this.forest.size());
-		int numberOfTrees = this.forest.size();
-		
-		// Generate the original prediction data.
-		Map<String, double[]> datasetToPredict = ProcessPredictionData.main(this.trainingDataset, this.featuresRemoved).first;
+		// Derive the seed for the permutations on each tree.
+		SplittableRandom importanceRNG = new SplittableRandom(seed);
+		long[] permutationSeeds = new long[this.forest.size()];
+		for (int i = 0; i < permutationSeeds.length; i++)
+		{
+			permutationSeeds[i] = importanceRNG.nextLong();
+		}
 		
-		// Setup the record of the class of each oob observation for each tree.
-		List<String> classOfObservations = DetermineDatasetProperties.determineObservationClasses(this.trainingDataset);
-		List<List<String>> oobObservationClasses = new ArrayList<List<String>>();
+		// Generate the original prediction data. This contains every feature in the dataset that was not removed, including those
+		// that were not used to grow the forest.
+		Map<String, double[]> datasetToPredict = (this.loadedDataset != null) ? this.mapLoadedDataset(this.loadedDataset) :
+			ProcessPredictionData.main(this.trainingDataset, this.featuresRemoved).first;
 		
-		// Determine the number of observations in the dataset.
-		int numberOfObservations = classOfObservations.size();
-
-		// Determine the base quality measure for each tree in the forest.
+		// Determine the importance of the features used to grow the forest.
+		double[] importanceOfFeaturesUsed = PermutationImportance.main(this.forest, this.oobObservations,
+				this.bindDatasetToPredict(datasetToPredict), this.observationClassesInTrainingSet, this.classesInTrainingSet.size(),
+				permutationSeeds, this.numberOfThreads);
+		Map<String, Double> variableImportance = new HashMap<String, Double>();
+		for (String s : datasetToPredict.keySet())
 		{
-			for (int i = 0; i < numberOfTrees; i++)
-			{
-				// Determine the class of each observation that is oob on this tree.
-				List<String> classOfOOB = new ArrayList<String>();
-				for (Integer j : this.oobObservations.get(i))
-				{
-					classOfOOB.add(classOfObservations.get(j));
-				}
-				oobObservationClasses.add(classOfOOB);
-				
-				// Setup the prediction output.
-				Map<String, double[]> predictions = new HashMap<String, double[]>();
-				for (String s : this.classesInTrainingSet)
-				{
-					predictions.put(s, new double[numberOfObservations]);
-				}
-				
-				// Generate the predictions.
-				Tree treeToPredictOn = this.forest.get(i);
-				predictions = treeToPredictOn.predict(datasetToPredict, this.oobObservations.get(i), predictions);
-				Map<String, Map<String, Double>> confusionMatrix = PredictionAnalysis.calculateConfusionMatrix(classOfObservations,
-						predictions, this.oobObservations.get(i));
-				baseOOBQualityMeasure.add(PredictionAnalysis.calculateGMean(confusionMatrix, classOfOOB));
-			}
+			// Features that were not used to grow the forest (e.g. because they only have one value) can not alter the predictions.
+			variableImportance.put(s, 0.0);
+		}
+		for (int i = 0; i < this.featuresInTrainingSet.length; i++)
+		{
+			variableImportance.put(this.featuresInTrainingSet[i], importanceOfFeaturesUsed[i]);
 		}
 		
-		// Determine the features in the dataset.
-		List<String> featuresInDataset = new ArrayList<String>();
-		BufferedReader reader = null;
-		try
+		return variableImportance;
+	}
+	
+	
+	/**
+	 * Exit if the forest holds no trees, as is the case for a forest that was streamed (see stream) or has not been grown.
+	 */
+	final void checkTreesRetained()
+	{
+		if (this.forest == null)
 		{
-			reader = new BufferedReader(new FileReader(this.trainingDataset));
-			String line = reader.readLine();
-			line = line.replaceAll("\n", "");
-			String[] featureNames = line.split("\t");
-			String classFeatureColumnName = "Classification";
-
-			for (String feature : featureNames)
-			{
-				if (feature.equals(classFeatureColumnName))
-				{
-					// Ignore the class column.
-					;
-				}
-				else if (!this.featuresRemoved.contains(feature))
-				{
-					featuresInDataset.add(feature);
-				}
-			}
+			System.out.println("The forest holds no trees. A forest that was streamed does not retain the trees that were grown.");
+			System.exit(0);
 		}
-		catch (IOException e)
+	}
+	
+	/**
+	 * Exit if the observations that are OOB on each tree are not known, as is the case for a forest loaded from a file that was
+	 * saved without them.
+	 */
+	private final void checkOOBObservationsKnown()
+	{
+		if (this.oobObservations == null)
 		{
-			// Caught an error while reading the file. Indicate this and exit.
-			System.out.println("An error occurred while determining the features to use.");
-			e.printStackTrace();
+			System.out.println("The OOB observations of the forest are not known. Save the forest with its OOB observations to use them.");
 			System.exit(0);
 		}
-		finally
+	}
+	
+	/**
+	 * Arrange the data to be predicted into columns indexed by the ids of the features used to grow the forest.
+	 * 
+	 * @param datasetToPredict	A mapping from each feature name to the values of the observations for it.
+	 * @return					The values of the observations for each feature used to grow the forest, indexed by feature id.
+	 */
+	private final double[][] bindDatasetToPredict(Map<String, double[]> datasetToPredict)
+	{
+		String[] columnNames = datasetToPredict.keySet().toArray(new String[datasetToPredict.size()]);
+		double[][] columns = new double[columnNames.length][];
+		for (int i = 0; i < columnNames.length; i++)
 		{
-			try
-			{
-				if (reader != null)
-				{
-					reader.close();
-				}
-			}
-			catch (IOException e)
-			{
-				// Caught an error while closing the file. Indicate this and exit.
-				System.out.println("An error occurred while closing the input data file during the determining of the features used.");
-				e.printStackTrace();
-				System.exit(0);
-			}
+			columns[i] = datasetToPredict.get(columnNames[i]);
 		}
-		
-		// Determine the variable importance for each feature.
-		Map<String, Double> variableImportance = new HashMap<String, Double>();
-		for (String s : featuresInDataset)
+		FeatureBinding binding = new FeatureBinding(this.featuresInTrainingSet, columnNames);
+		binding.exitIfIncomplete("The training dataset " + this.trainingDataset);
+		return binding.bind(columns);
+	}
+	
+	/**
+	 * Generate a mapping from the names of the features of a loaded dataset that were not removed to their values.
+	 * 
+	 * @param loadedData	The loaded dataset.
+	 * @return				A mapping from each feature name to the values of the observations for it.
+	 */
+	private final Map<String, double[]> mapLoadedDataset(LoadedDataset loadedData)
+	{
+		Map<String, double[]> datasetToPredict = new HashMap<String, double[]>();
+		Set<String> featuresToIgnore = new HashSet<String>(this.featuresRemoved);
+		String[] featureNames = loadedData.getFeatureNames();
+		double[][] featureData = loadedData.getFeatureData();
+		for (int i = 0; i < featureNames.length; i++)
 		{
-			// Record a copy of the non-permuted data for feature s.
-			double[] dataForFeatureS = datasetToPredict.get(s);
-			double[] copyOfOriginalValuesForFeatureS = new double[numberOfObservations];
-			for (int i = 0; i < numberOfObservations; i++)
+			if (!featuresToIgnore.contains(featureNames[i]))
 			{
-				copyOfOriginalValuesForFeatureS[i] = dataForFeatureS[i];
-			}
-			
-			double cumulativeQualityMeasureChange = 0.0;
-			for (int i = 0; i < numberOfTrees; i++)
-			{
-				// Permute the data.
-				double[] permutedFeatureValues = PermuteData.main(this.oobObservations.get(i), copyOfOriginalValuesForFeatureS);
-				datasetToPredict.put(s, permutedFeatureValues);
-				
-				// Setup the prediction output.
-				Map<String, double[]> predictions = new HashMap<String, double[]>();
-				for (String p : this.classesInTrainingSet)
-				{
-					predictions.put(p, new double[numberOfObservations]);
-				}
-				
-				// Make the predictions on the permuted data.
-				predictions = this.forest.get(i).predict(datasetToPredict, this.oobObservations.get(i), predictions);
-				
-				// Determine the change in quality caused by permuting the data.
-				Map<String, Map<String, Double>> confusionMatrix = PredictionAnalysis.calculateConfusionMatrix(classOfObservations,
-						predictions, this.oobObservations.get(i));
-				double permutedQualityMeasure = PredictionAnalysis.calculateGMean(confusionMatrix, oobObservationClasses.get(i));
-				cumulativeQualityMeasureChange += (baseOOBQualityMeasure.get(i) - permutedQualityMeasure);
+				datasetToPredict.put(featureNames[i], featureData[i]);
 			}
-			cumulativeQualityMeasureChange /= numberOfTrees;
-			variableImportance.put(s, cumulativeQualityMeasureChange);
-			
-			// Reset the values for feature s back to their original values.
-			datasetToPredict.put(s, copyOfOriginalValuesForFeatureS);
 		}
-		
-		return variableImportance;
+		return datasetToPredict;
+	}
+	
+	/**
+	 * Convert predictions indexed by class id into a mapping from the class names to the predictions.
+	 * 
+	 * @param predictions	The predicted weight of each class for each observation, indexed by class id and then by observation.
+	 * @return				A mapping from class names to the predicted weight of the class for each observation.
+	 */
+	private final Map<String, double[]> predictionsToMap(double[][] predictions)
+	{
+		Map<String, double[]> predictionMap = new HashMap<String, double[]>();
+		int numberOfClasses = this.classesInTrainingSet.size();
+		for (int i = 0; i < numberOfClasses; i++)
+		{
+			predictionMap.put(this.classesInTrainingSet.get(i), predictions[i]);
+		}
+		return predictionMap;
 	}
 
 }
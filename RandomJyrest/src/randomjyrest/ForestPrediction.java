@@ -0,0 +1,253 @@
+package randomjyrest;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Implements the parallel prediction of observations using the trees of a forest.
+ *
+ * The observations are divided into contiguous chunks, and each chunk is predicted by a separate task. Within a chunk the
+ * observations are processed in blocks small enough to stay in cache, with each block being passed down every tree in the order
+ * that the trees appear in the forest. As the chunks are disjoint, every task writes to its own part of the prediction arrays and no
+ * merging is required. The weights for an observation are always summed over the trees in the same order, so the predictions are
+ * identical regardless of the number of threads used.
+ */
+public final class ForestPrediction
+{
+
+	/**
+	 * The number of observations in each block of observations that is predicted on every tree before moving on to the next block.
+	 */
+	static final int PREDICTION_BLOCK_SIZE = 256;
+
+	/**
+	 * The number of chunks of observations to create for each thread. Using more chunks than threads balances the load when some
+	 * chunks take longer than others.
+	 */
+	private static final int CHUNKS_PER_THREAD = 4;
+
+
+	/**
+	 * Predict every observation in a dataset.
+	 *
+	 * @param forest				The trees of the forest.
+	 * @param datasetToPredict		The values of the observations being predicted, indexed by feature id and then by observation.
+	 * @param numberOfObservations	The number of observations being predicted.
+	 * @param numberOfClasses		The number of classes the forest was trained on.
+	 * @param numberOfThreads		The number of threads to use for the prediction.
+	 * @return						The predicted weight of each class for each observation, indexed by class id and then by
+	 * 								observation.
+	 */
+	public static final double[][] predict(final List<CompiledTree> forest, final double[][] datasetToPredict, int numberOfObservations,
+			int numberOfClasses, int numberOfThreads)
+	{
+		final double[][] predictions = new double[numberOfClasses][numberOfObservations];
+		runTasks(createPredictionTasks(forest, datasetToPredict, numberOfObservations, numberOfThreads, predictions), numberOfThreads);
+		return predictions;
+	}
+
+	/**
+	 * Predict every observation in a dataset using an existing executor.
+	 *
+	 * Use this when many datasets are predicted one after another (e.g. the blocks of a streamed dataset), so that a new set of
+	 * threads is not started for each of them.
+	 *
+	 * @param forest				The trees of the forest.
+	 * @param datasetToPredict		The values of the observations being predicted, indexed by feature id and then by observation.
+	 * @param numberOfObservations	The number of observations being predicted.
+	 * @param numberOfClasses		The number of classes the forest was trained on.
+	 * @param numberOfThreads		The number of threads in the executor.
+	 * @param predictionPool		The executor to make the predictions on, or null if they should be made on the calling thread.
+	 * @return						The predicted weight of each class for each observation, indexed by class id and then by
+	 * 								observation.
+	 */
+	public static final double[][] predict(final List<CompiledTree> forest, final double[][] datasetToPredict, int numberOfObservations,
+			int numberOfClasses, int numberOfThreads, ExecutorService predictionPool)
+	{
+		final double[][] predictions = new double[numberOfClasses][numberOfObservations];
+		runTasks(createPredictionTasks(forest, datasetToPredict, numberOfObservations, numberOfThreads, predictions), predictionPool);
+		return predictions;
+	}
+
+	/**
+	 * Predict the observations in a dataset using only the trees on which they are out of bag.
+	 *
+	 * @param forest				The trees of the forest.
+	 * @param oobObservations		The observations that are OOB on each tree, with the bit for each OOB observation set.
+	 * @param datasetToPredict		The values of the observations being predicted, indexed by feature id and then by observation.
+	 * @param numberOfObservations	The number of observations being predicted.
+	 * @param numberOfClasses		The number of classes the forest was trained on.
+	 * @param numberOfThreads		The number of threads to use for the prediction.
+	 * @return						The predicted weight of each class for each observation, indexed by class id and then by
+	 * 								observation.
+	 */
+	public static final double[][] predictOOB(final List<CompiledTree> forest, final List<BitSet> oobObservations,
+			final double[][] datasetToPredict, int numberOfObservations, int numberOfClasses, int numberOfThreads)
+	{
+		final double[][] predictions = new double[numberOfClasses][numberOfObservations];
+		final int numberOfTrees = forest.size();
+		List<Callable<Void>> predictionTasks = new ArrayList<Callable<Void>>();
+		for (final int[] chunk : determineChunks(numberOfObservations, numberOfThreads))
+		{
+			predictionTasks.add(new Callable<Void>()
+				{
+					public Void call()
+					{
+						for (int blockStart = chunk[0]; blockStart < chunk[1]; blockStart += PREDICTION_BLOCK_SIZE)
+						{
+							int blockEnd = Math.min(chunk[1], blockStart + PREDICTION_BLOCK_SIZE);
+							for (int i = 0; i < numberOfTrees; i++)
+							{
+								forest.get(i).predict(datasetToPredict, oobObservations.get(i), blockStart, blockEnd, predictions);
+							}
+						}
+						return null;
+					}
+				});
+		}
+		runTasks(predictionTasks, numberOfThreads);
+		return predictions;
+	}
+
+
+	/**
+	 * Create the tasks that predict every observation in a dataset, one for each chunk of the observations.
+	 *
+	 * @param forest				The trees of the forest.
+	 * @param datasetToPredict		The values of the observations being predicted, indexed by feature id and then by observation.
+	 * @param numberOfObservations	The number of observations being predicted.
+	 * @param numberOfThreads		The number of threads that will be used for the prediction.
+	 * @param predictions			The predicted weight of each class for each observation, indexed by class id and then by
+	 * 								observation.
+	 * @return						The tasks.
+	 */
+	private static final List<Callable<Void>> createPredictionTasks(final List<CompiledTree> forest, final double[][] datasetToPredict,
+			int numberOfObservations, int numberOfThreads, final double[][] predictions)
+	{
+		List<Callable<Void>> predictionTasks = new ArrayList<Callable<Void>>();
+		for (final int[] chunk : determineChunks(numberOfObservations, numberOfThreads))
+		{
+			predictionTasks.add(new Callable<Void>()
+				{
+					public Void call()
+					{
+						for (int blockStart = chunk[0]; blockStart < chunk[1]; blockStart += PREDICTION_BLOCK_SIZE)
+						{
+							int blockEnd = Math.min(chunk[1], blockStart + PREDICTION_BLOCK_SIZE);
+							for (CompiledTree treeToPredictOn : forest)
+							{
+								treeToPredictOn.predict(datasetToPredict, blockStart, blockEnd, predictions);
+							}
+						}
+						return null;
+					}
+				});
+		}
+		return predictionTasks;
+	}
+
+	/**
+	 * Divide the observations into contiguous chunks aligned to the prediction block size.
+	 *
+	 * @param numberOfObservations	The number of observations being predicted.
+	 * @param numberOfThreads		The number of threads that will be used for the prediction.
+	 * @return						The start (inclusive) and end (exclusive) of each chunk.
+	 */
+	static final List<int[]> determineChunks(int numberOfObservations, int numberOfThreads)
+	{
+		int numberOfBlocks = (numberOfObservations + PREDICTION_BLOCK_SIZE - 1) / PREDICTION_BLOCK_SIZE;
+		int numberOfChunks = Math.max(1, Math.min(numberOfBlocks, numberOfThreads * CHUNKS_PER_THREAD));
+		int blocksPerChunk = (numberOfBlocks + numberOfChunks - 1) / numberOfChunks;
+		List<int[]> chunks = new ArrayList<int[]>();
+		for (int chunkStart = 0; chunkStart < numberOfObservations; chunkStart += blocksPerChunk * PREDICTION_BLOCK_SIZE)
+		{
+			int chunkEnd = Math.min(numberOfObservations, chunkStart + (blocksPerChunk * PREDICTION_BLOCK_SIZE));
+			chunks.add(new int[]{chunkStart, chunkEnd});
+		}
+		return chunks;
+	}
+
+	/**
+	 * Run a set of prediction tasks and wait for them to complete.
+	 *
+	 * @param predictionTasks	The tasks to run.
+	 * @param numberOfThreads	The number of threads to run the tasks on.
+	 */
+	static final void runTasks(List<Callable<Void>> predictionTasks, int numberOfThreads)
+	{
+		if (numberOfThreads <= 1 || predictionTasks.size() == 1)
+		{
+			// Run the tasks on the calling thread.
+			runTasks(predictionTasks, null);
+			return;
+		}
+
+		final ExecutorService predictionPool = Executors.newFixedThreadPool(numberOfThreads);
+		try
+		{
+			runTasks(predictionTasks, predictionPool);
+		}
+		finally
+		{
+			predictionPool.shutdown();
+		}
+	}
+
+	/**
+	 * Run a set of prediction tasks on an existing executor and wait for them to complete.
+	 *
+	 * This avoids starting a new set of threads for each set of tasks when many sets are predicted one after another.
+	 *
+	 * @param predictionTasks	The tasks to run.
+	 * @param predictionPool	The executor to run the tasks on, or null if the tasks should be run on the calling thread.
+	 */
+	static final void runTasks(List<Callable<Void>> predictionTasks, ExecutorService predictionPool)
+	{
+		if (predictionPool == null || predictionTasks.size() == 1)
+		{
+			// Run the tasks on the calling thread.
+			for (Callable<Void> task : predictionTasks)
+			{
+				try
+				{
+					task.call();
+				}
+				catch (Exception e)
+				{
+					System.out.println("Error in a prediction task.");
+					e.printStackTrace();
+					System.exit(0);
+				}
+			}
+			return;
+		}
+
+		try
+		{
+			for (Future<Void> f : predictionPool.invokeAll(predictionTasks))
+			{
+				f.get();
+			}
+		}
+		catch (ExecutionException e)
+		{
+			System.out.println("Error in a prediction thread.");
+			e.printStackTrace();
+			System.exit(0);
+		}
+		catch (InterruptedException e)
+		{
+			// Interrupted the thread, so exit the program.
+			System.out.println("Prediction interruption received.");
+			e.printStackTrace();
+			System.exit(0);
+		}
+	}
+
+}
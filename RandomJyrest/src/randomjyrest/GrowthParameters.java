@@ -0,0 +1,366 @@
+package randomjyrest;
+
+/**
+ * Implements a record of the parameters that control how the trees in a forest are grown.
+ *
+ * The default parameters grow trees exactly as they have always been grown, evaluating every distinct value of each candidate
+ * feature as a cutpoint.
+ *
+ * Setting the number of bins to a value greater than 0 grows the trees in binned mode. In binned mode the values of each feature are
+ * quantised once into at most that many bins, and the cutpoints considered are restricted to the boundaries between bins. The split
+ * for a node is then found from per-class weight histograms of the bins rather than from the sorted values of the observations.
+ *
+ * The nodes of each tree are grown depth-first by default. They can instead be grown breadth-first or best-first.
+ *
+ * By default a node is only made terminal once it is pure (or can not be split). The stopping rules can make a node terminal
+ * earlier: when it reaches the maximum depth, when its weight is below the minimum node weight, when the best split found decreases
+ * the weighted impurity by less than the minimum impurity decrease, when the tree already has the maximum number of leaves, or when
+ * the maximum number of draws of candidate features have all failed to give a split. Terminal nodes that are not pure predict the
+ * weight of every class present in them.
+ *
+ * With fork-join parallelism enabled, the forest is grown in a ForkJoinPool. Within each tree, the subtrees of large nodes are grown as
+ * separate tasks, and the candidate features of large nodes are evaluated in parallel, so idle threads can steal work from trees that
+ * are still growing. Each node then has its own random number generator, seeded from its parent's, and is grown depth-first. The
+ * trees grown are therefore the same for any number of threads and any minimum node size to fork, but differ from those grown without
+ * fork-join parallelism.
+ */
+public class GrowthParameters
+{
+
+	/**
+	 * The number of bins that indicates that the exact split search should be used.
+	 */
+	public static final int EXACT_SPLITS = 0;
+
+	/**
+	 * The maximum number of bins that a feature can be quantised into, as bins are recorded in a byte.
+	 */
+	public static final int MAXIMUM_NUMBER_OF_BINS = 256;
+
+	/**
+	 * Grow the nodes of a tree depth-first, growing all of the left subtree of a node before its right subtree. Trees grown depth-first
+	 * are the same as those grown by the original recursive implementation.
+	 */
+	public static final int DEPTH_FIRST = 0;
+
+	/**
+	 * Grow the nodes of a tree breadth-first, growing every node at one depth before any node at the next.
+	 */
+	public static final int BREADTH_FIRST = 1;
+
+	/**
+	 * Grow the nodes of a tree best-first, always growing the node whose split gives the greatest decrease in weighted impurity.
+	 */
+	public static final int BEST_FIRST = 2;
+
+	/**
+	 * The default for the smallest number of unique observations a node must have for its subtree to be grown as a separate task, and
+	 * for its candidate features to be evaluated in parallel, when trees are grown with fork-join parallelism.
+	 */
+	public static final int DEFAULT_MINIMUM_OBSERVATIONS_TO_FORK = 4096;
+
+	/**
+	 * The value of the maximum depth, maximum number of leaves and maximum number of split attempts that places no limit on them.
+	 */
+	public static final int UNLIMITED = Integer.MAX_VALUE;
+
+	/**
+	 * The maximum number of bins that each feature is quantised into, or EXACT_SPLITS if the trees are grown with exact splits.
+	 */
+	private int numberOfBins = EXACT_SPLITS;
+
+	/**
+	 * The order in which the nodes of a tree are grown (DEPTH_FIRST, BREADTH_FIRST or BEST_FIRST).
+	 */
+	private int growthOrder = DEPTH_FIRST;
+
+	/**
+	 * Whether the trees are grown with fork-join parallelism within each tree.
+	 */
+	private boolean isForkJoin = false;
+
+	/**
+	 * The smallest number of unique observations a node must have to be grown in parallel when growing with fork-join parallelism.
+	 */
+	private int minimumObservationsToFork = DEFAULT_MINIMUM_OBSERVATIONS_TO_FORK;
+
+	/**
+	 * The maximum depth of a tree. Nodes at this depth are made terminal. The root has depth 0.
+	 */
+	private int maximumDepth = UNLIMITED;
+
+	/**
+	 * The minimum in bag weight that a node must have to be split.
+	 */
+	private double minimumNodeWeight = 0.0;
+
+	/**
+	 * The minimum decrease in weighted impurity that the split of a node must achieve for the node to be split.
+	 */
+	private double minimumImpurityDecrease = 0.0;
+
+	/**
+	 * The maximum number of terminal nodes in a tree.
+	 */
+	private int maximumLeafNodes = UNLIMITED;
+
+	/**
+	 * The maximum number of times the candidate features of a node are drawn before the node is made terminal, when none of the
+	 * candidates drawn can split the node.
+	 */
+	private int maximumSplitAttempts = UNLIMITED;
+
+
+	/**
+	 * Class constructor for the default parameters.
+	 */
+	public GrowthParameters()
+	{
+	}
+
+	/**
+	 * @return		The maximum number of bins that each feature is quantised into, or EXACT_SPLITS if the trees are grown with exact
+	 * 				splits.
+	 */
+	public final int getNumberOfBins()
+	{
+		return this.numberOfBins;
+	}
+
+	/**
+	 * @return		Whether the trees are grown in binned mode.
+	 */
+	public final boolean isBinned()
+	{
+		return this.numberOfBins != EXACT_SPLITS;
+	}
+
+	/**
+	 * Set the maximum number of bins that each feature is quantised into.
+	 *
+	 * @param numberOfBins	The maximum number of bins (between 2 and MAXIMUM_NUMBER_OF_BINS), or EXACT_SPLITS to grow the trees with
+	 * 						exact splits.
+	 */
+	public final void setNumberOfBins(int numberOfBins)
+	{
+		if (numberOfBins != EXACT_SPLITS && (numberOfBins < 2 || numberOfBins > MAXIMUM_NUMBER_OF_BINS))
+		{
+			System.out.format("The number of bins must be between 2 and %d, or %d for exact splits. The value supplied was %d.\n",
+					MAXIMUM_NUMBER_OF_BINS, EXACT_SPLITS, numberOfBins);
+			System.exit(0);
+		}
+		this.numberOfBins = numberOfBins;
+	}
+
+	/**
+	 * @return		The order in which the nodes of a tree are grown.
+	 */
+	public final int getGrowthOrder()
+	{
+		return this.growthOrder;
+	}
+
+	/**
+	 * Set the order in which the nodes of a tree are grown.
+	 *
+	 * As the candidate features of each node are drawn from the tree's random number generator in the order that the nodes are grown,
+	 * the trees grown with different orders are different, although they are grown by the same rules.
+	 *
+	 * @param growthOrder	The growth order (DEPTH_FIRST, BREADTH_FIRST or BEST_FIRST).
+	 */
+	public final void setGrowthOrder(int growthOrder)
+	{
+		if (growthOrder != DEPTH_FIRST && growthOrder != BREADTH_FIRST && growthOrder != BEST_FIRST)
+		{
+			System.out.format("The growth order must be %d (depth-first), %d (breadth-first) or %d (best-first). " +
+					"The value supplied was %d.\n", DEPTH_FIRST, BREADTH_FIRST, BEST_FIRST, growthOrder);
+			System.exit(0);
+		}
+		this.growthOrder = growthOrder;
+	}
+
+	/**
+	 * @return		Whether the trees are grown with fork-join parallelism within each tree.
+	 */
+	public final boolean isForkJoin()
+	{
+		return this.isForkJoin;
+	}
+
+	/**
+	 * Set whether the trees are grown with fork-join parallelism within each tree.
+	 *
+	 * Fork-join parallelism can not be used while the number of leaf nodes is limited (see setMaximumLeafNodes).
+	 *
+	 * @param isForkJoin	Whether fork-join parallelism should be used. If it is, the growth order is always depth-first.
+	 */
+	public final void setForkJoin(boolean isForkJoin)
+	{
+		if (isForkJoin && this.maximumLeafNodes != UNLIMITED)
+		{
+			System.out.println("The maximum number of leaf nodes can not be limited when growing with fork-join parallelism.");
+			System.exit(0);
+		}
+		this.isForkJoin = isForkJoin;
+	}
+
+	/**
+	 * @return		The smallest number of unique observations a node must have to be grown in parallel when growing with fork-join
+	 * 				parallelism.
+	 */
+	public final int getMinimumObservationsToFork()
+	{
+		return this.minimumObservationsToFork;
+	}
+
+	/**
+	 * Set the smallest number of unique observations a node must have to be grown in parallel when growing with fork-join parallelism.
+	 *
+	 * @param minimumObservationsToFork	The minimum number of unique observations (at least 1).
+	 */
+	public final void setMinimumObservationsToFork(int minimumObservationsToFork)
+	{
+		if (minimumObservationsToFork < 1)
+		{
+			System.out.format("The minimum number of observations to fork must be at least 1. The value supplied was %d.\n",
+					minimumObservationsToFork);
+			System.exit(0);
+		}
+		this.minimumObservationsToFork = minimumObservationsToFork;
+	}
+
+	/**
+	 * @return		The maximum depth of a tree.
+	 */
+	public final int getMaximumDepth()
+	{
+		return this.maximumDepth;
+	}
+
+	/**
+	 * Set the maximum depth of a tree.
+	 *
+	 * @param maximumDepth	The maximum depth (at least 0), or UNLIMITED.
+	 */
+	public final void setMaximumDepth(int maximumDepth)
+	{
+		if (maximumDepth < 0)
+		{
+			System.out.format("The maximum depth must be at least 0. The value supplied was %d.\n", maximumDepth);
+			System.exit(0);
+		}
+		this.maximumDepth = maximumDepth;
+	}
+
+	/**
+	 * @return		The minimum in bag weight that a node must have to be split.
+	 */
+	public final double getMinimumNodeWeight()
+	{
+		return this.minimumNodeWeight;
+	}
+
+	/**
+	 * Set the minimum in bag weight that a node must have to be split. The weight of a node is the sum over the observations in it of
+	 * the weight of the observation's class multiplied by the number of times it is in bag.
+	 *
+	 * @param minimumNodeWeight	The minimum weight (at least 0).
+	 */
+	public final void setMinimumNodeWeight(double minimumNodeWeight)
+	{
+		if (!(minimumNodeWeight >= 0.0))
+		{
+			System.out.format("The minimum node weight must be at least 0. The value supplied was %f.\n", minimumNodeWeight);
+			System.exit(0);
+		}
+		this.minimumNodeWeight = minimumNodeWeight;
+	}
+
+	/**
+	 * @return		The minimum decrease in weighted impurity that the split of a node must achieve for the node to be split.
+	 */
+	public final double getMinimumImpurityDecrease()
+	{
+		return this.minimumImpurityDecrease;
+	}
+
+	/**
+	 * Set the minimum decrease in weighted impurity that the split of a node must achieve for the node to be split. The decrease is
+	 * the weight of the node multiplied by the difference between the Gini impurity of the node and the weighted Gini impurity of its
+	 * children.
+	 *
+	 * @param minimumImpurityDecrease	The minimum decrease (at least 0).
+	 */
+	public final void setMinimumImpurityDecrease(double minimumImpurityDecrease)
+	{
+		if (!(minimumImpurityDecrease >= 0.0))
+		{
+			System.out.format("The minimum impurity decrease must be at least 0. The value supplied was %f.\n",
+					minimumImpurityDecrease);
+			System.exit(0);
+		}
+		this.minimumImpurityDecrease = minimumImpurityDecrease;
+	}
+
+	/**
+	 * @return		The maximum number of terminal nodes in a tree.
+	 */
+	public final int getMaximumLeafNodes()
+	{
+		return this.maximumLeafNodes;
+	}
+
+	/**
+	 * Set the maximum number of terminal nodes in a tree.
+	 *
+	 * Once a tree has this many terminal nodes (counting the nodes still waiting to be grown), every remaining node is made terminal.
+	 * Which nodes are split therefore depends on the growth order, and best-first growth splits the nodes that decrease the impurity
+	 * the most. As the order in which nodes are split is not fixed when growing with fork-join parallelism, the number of leaves can
+	 * not be limited then, and setting a limit while fork-join parallelism is used is an error.
+	 *
+	 * @param maximumLeafNodes	The maximum number of terminal nodes (at least 1), or UNLIMITED.
+	 */
+	public final void setMaximumLeafNodes(int maximumLeafNodes)
+	{
+		if (maximumLeafNodes < 1)
+		{
+			System.out.format("The maximum number of leaf nodes must be at least 1. The value supplied was %d.\n", maximumLeafNodes);
+			System.exit(0);
+		}
+		if (this.isForkJoin && maximumLeafNodes != UNLIMITED)
+		{
+			System.out.println("The maximum number of leaf nodes can not be limited when growing with fork-join parallelism.");
+			System.exit(0);
+		}
+		this.maximumLeafNodes = maximumLeafNodes;
+	}
+
+	/**
+	 * @return		The maximum number of times the candidate features of a node are drawn before the node is made terminal.
+	 */
+	public final int getMaximumSplitAttempts()
+	{
+		return this.maximumSplitAttempts;
+	}
+
+	/**
+	 * Set the maximum number of times the candidate features of a node are drawn before the node is made terminal, when none of the
+	 * candidates drawn can split the node.
+	 *
+	 * A node that no feature can split is always made terminal without drawing any candidates, so the draws are only repeated when
+	 * the candidates drawn happen to be features that can not split the node.
+	 *
+	 * @param maximumSplitAttempts	The maximum number of draws (at least 1), or UNLIMITED.
+	 */
+	public final void setMaximumSplitAttempts(int maximumSplitAttempts)
+	{
+		if (maximumSplitAttempts < 1)
+		{
+			System.out.format("The maximum number of split attempts must be at least 1. The value supplied was %d.\n",
+					maximumSplitAttempts);
+			System.exit(0);
+		}
+		this.maximumSplitAttempts = maximumSplitAttempts;
+	}
+
+}
@@ -0,0 +1,122 @@
+package randomjyrest;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Implements a tree consumer that accumulates the permutation importance of the features of a forest as it is streamed.
+ *
+ * The change in quality caused by permuting each feature is calculated for each tree as it is delivered (see PermutationImportance),
+ * using seeds derived in tree order from the seed given, and summed. The importance is therefore the same as that calculated by
+ * Forest.variableImportance with the same seed for the forest grown in full, including an importance of 0 for each feature of the
+ * training dataset that was not used to grow the forest. The calculation for each tree is performed on the thread streaming the
+ * forest.
+ */
+public class ImportanceAccumulator extends TreeConsumer
+{
+
+	/**
+	 * The generator of the seed used to permute the features on each tree.
+	 */
+	private SplittableRandom importanceRNG;
+
+	/**
+	 * The names of the features used to grow the forest, indexed by feature id.
+	 */
+	private String[] featureNames;
+
+	/**
+	 * The names of the features of the training dataset that were not removed, including those not used to grow the forest.
+	 */
+	private String[] datasetFeatureNames;
+
+	/**
+	 * The number of classes in the training dataset.
+	 */
+	private int numberOfClasses;
+
+	/**
+	 * The values of the training observations, indexed by feature id and then by observation.
+	 */
+	private double[][] trainingData;
+
+	/**
+	 * The id of the class of each training observation.
+	 */
+	private int[] observationClasses;
+
+	/**
+	 * The sum over the trees received of the change in quality caused by permuting each feature, indexed by feature id.
+	 */
+	private double[] qualityChanges;
+
+	/**
+	 * The number of trees received.
+	 */
+	private int numberOfTrees = 0;
+
+
+	/**
+	 * Class constructor for an importance accumulator.
+	 *
+	 * @param seed	The seed used to generate the permutations of the features. The seed for the permutations on each tree is derived
+	 * 				from this in the order that the trees appear in the forest.
+	 */
+	public ImportanceAccumulator(long seed)
+	{
+		this.importanceRNG = new SplittableRandom(seed);
+	}
+
+	@Override
+	public void start(String[] featureNames, String[] datasetFeatureNames, List<String> classNames, double[][] trainingData,
+			int[] observationClasses)
+	{
+		this.featureNames = featureNames;
+		this.datasetFeatureNames = datasetFeatureNames;
+		this.numberOfClasses = classNames.size();
+		this.trainingData = trainingData;
+		this.observationClasses = observationClasses;
+		this.qualityChanges = new double[featureNames.length];
+	}
+
+	@Override
+	public void consume(int treeIndex, CompiledTree tree, BitSet oobObservations)
+	{
+		double[] treeQualityChanges = PermutationImportance.calculateQualityChanges(tree, oobObservations, this.trainingData,
+				this.observationClasses, this.numberOfClasses, this.featureNames.length, this.importanceRNG.nextLong());
+		for (int j = 0; j < this.qualityChanges.length; j++)
+		{
+			this.qualityChanges[j] += treeQualityChanges[j];
+		}
+		this.numberOfTrees++;
+	}
+
+	@Override
+	public void finish()
+	{
+		this.trainingData = null;
+		this.observationClasses = null;
+	}
+
+	/**
+	 * @return		A mapping from the feature names to their importance.
+	 */
+	public final Map<String, Double> getImportance()
+	{
+		Map<String, Double> variableImportance = new HashMap<String, Double>();
+		for (String s : this.datasetFeatureNames)
+		{
+			// Features that were not used to grow the forest (e.g. because they only have one value) can not alter the predictions.
+			variableImportance.put(s, 0.0);
+		}
+		for (int j = 0; j < this.featureNames.length; j++)
+		{
+			variableImportance.put(this.featureNames[j], this.qualityChanges[j] / this.numberOfTrees);
+		}
+		return variableImportance;
+	}
+
+}
@@ -0,0 +1,237 @@
+package randomjyrest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Implements the reading of a tab separated data file line by line, handing the values of the columns needed from each line to a
+ * subclass.
+ *
+ * The file is read in large chunks of bytes through a FileChannel, and each line is tokenised in place by scanning for tabs, so no
+ * String is created for a line or a value. The first line of the file names the columns, and the subclass determines from it which
+ * column each value is kept in (its slot). Lines containing only whitespace are ignored, and leading and trailing whitespace is
+ * removed from all other lines. Only the columns up to the last one kept are scanned, and every line must contain at least that
+ * many columns.
+ *
+ * Example:
+ * 		The columns of the file		["UPAccession", "F1", "Classification", "F2", "F3"]
+ * 		may have the slots			[COLUMN_NOT_KEPT, 0, -2, 1, COLUMN_NOT_KEPT]
+ *
+ * 		and then only the first four columns of each line are scanned, with parseValue being called for the second, third and
+ * 		fourth columns.
+ */
+public abstract class LineReader
+{
+
+	/**
+	 * The slot of a column that is not kept. Every other slot is chosen by the subclass.
+	 */
+	static final int COLUMN_NOT_KEPT = -1;
+
+	/**
+	 * The character set that the file is decoded with.
+	 */
+	static final Charset FILE_CHARSET = Charset.defaultCharset();
+
+	/**
+	 * The number of bytes to read from the file at a time.
+	 */
+	private static final int READ_BUFFER_SIZE = 1 << 20;
+
+	/**
+	 * For each column in the file up to the last one kept, the slot of the column, or null if the header has not been read.
+	 */
+	private int[] columnSlots = null;
+
+	/**
+	 * The number of the line currently being read (starting from 1 for the header).
+	 */
+	private long currentLineNumber = 0;
+
+
+	/**
+	 * Read the file and hand each line of it to the subclass.
+	 *
+	 * @param channel		The channel to read the file from.
+	 * @throws IOException
+	 * @throws NumberFormatException	If parseValue is given a value that is not a number.
+	 */
+	final void read(FileChannel channel) throws IOException
+	{
+		byte[] buffer = new byte[READ_BUFFER_SIZE];
+		ByteBuffer bufferWrapper = ByteBuffer.wrap(buffer);
+		int bufferEnd = 0;  // The number of bytes in the buffer that contain data from the file.
+		boolean isEndOfFile = false;
+		while (!isEndOfFile)
+		{
+			if (bufferEnd == buffer.length)
+			{
+				// The buffer contains a single partial line, so grow it to make room for the rest of the line.
+				buffer = Arrays.copyOf(buffer, buffer.length * 2);
+				bufferWrapper = ByteBuffer.wrap(buffer);
+			}
+
+			// Fill the buffer after any partial line left over from the last read.
+			bufferWrapper.limit(buffer.length);
+			bufferWrapper.position(bufferEnd);
+			int bytesRead = channel.read(bufferWrapper);
+			if (bytesRead == -1)
+			{
+				isEndOfFile = true;
+			}
+			else
+			{
+				bufferEnd += bytesRead;
+			}
+
+			// Read each complete line in the buffer. At the end of the file the final line need not end with a newline.
+			int lineStart = 0;
+			for (int i = 0; i < bufferEnd; i++)
+			{
+				if (buffer[i] == '\n')
+				{
+					this.readLine(buffer, lineStart, i);
+					lineStart = i + 1;
+				}
+			}
+			if (isEndOfFile && lineStart < bufferEnd)
+			{
+				this.readLine(buffer, lineStart, bufferEnd);
+				lineStart = bufferEnd;
+			}
+
+			// Move the partial line at the end of the buffer to the start.
+			System.arraycopy(buffer, lineStart, buffer, 0, bufferEnd - lineStart);
+			bufferEnd -= lineStart;
+		}
+
+		if (this.columnSlots == null)
+		{
+			// The file was empty.
+			System.out.println("The input data file contains no header.");
+			System.exit(0);
+		}
+	}
+
+	/**
+	 * @return		The number of the line currently being read (starting from 1 for the header).
+	 */
+	final long getCurrentLineNumber()
+	{
+		return this.currentLineNumber;
+	}
+
+	/**
+	 * Determine the slot of each column in the file from the names of the columns.
+	 *
+	 * @param columnNames	The names of the columns, in the order that they appear in the header.
+	 * @return				The slot of each column, with COLUMN_NOT_KEPT for the columns whose values are not needed.
+	 */
+	abstract int[] determineColumnSlots(String[] columnNames);
+
+	/**
+	 * Prepare to record the values of the next observation.
+	 *
+	 * @param lineLength	The length in bytes of the line holding the observation, counting one byte for its newline.
+	 */
+	abstract void startObservation(int lineLength);
+
+	/**
+	 * Record a value of the current observation.
+	 *
+	 * @param slot		The slot of the column that the value is in.
+	 * @param buffer	The buffer containing the value.
+	 * @param start		The index of the first byte of the value (inclusive).
+	 * @param end		The index of the last byte of the value (exclusive).
+	 */
+	abstract void parseValue(int slot, byte[] buffer, int start, int end);
+
+	/**
+	 * Finish recording the current observation, once all of its values have been recorded.
+	 */
+	abstract void finishObservation();
+
+	/**
+	 * Read a single line of the file.
+	 *
+	 * @param buffer	The buffer containing the line.
+	 * @param start		The index of the first byte of the line (inclusive).
+	 * @param end		The index of the last byte of the line (exclusive), not including the newline.
+	 */
+	private final void readLine(byte[] buffer, int start, int end)
+	{
+		this.currentLineNumber++;
+		if (this.columnSlots == null)
+		{
+			if (end > start && buffer[end - 1] == '\r')
+			{
+				end--;
+			}
+			this.readHeader(new String(buffer, start, end - start, FILE_CHARSET));
+			return;
+		}
+
+		// Trim the whitespace (and any carriage return) from the ends of the line.
+		while (start < end && (buffer[start] & 0xFF) <= ' ')
+		{
+			start++;
+		}
+		while (end > start && (buffer[end - 1] & 0xFF) <= ' ')
+		{
+			end--;
+		}
+		if (start == end)
+		{
+			// If the line is made up of all whitespace, then ignore the line.
+			return;
+		}
+
+		this.startObservation(end - start + 1);
+
+		// Hand over the values in the columns that are kept.
+		int numberOfColumnsNeeded = this.columnSlots.length;
+		int column = 0;
+		int fieldStart = start;
+		for (int i = start; i <= end && column < numberOfColumnsNeeded; i++)
+		{
+			if (i == end || buffer[i] == '\t')
+			{
+				int slot = this.columnSlots[column];
+				if (slot != COLUMN_NOT_KEPT)
+				{
+					this.parseValue(slot, buffer, fieldStart, i);
+				}
+				column++;
+				fieldStart = i + 1;
+			}
+		}
+		if (column < numberOfColumnsNeeded)
+		{
+			System.out.format("Line %d of the input data file contains %d columns, but at least %d are needed.\n", this.currentLineNumber,
+					column, numberOfColumnsNeeded);
+			System.exit(0);
+		}
+
+		this.finishObservation();
+	}
+
+	/**
+	 * Read the header of the file, and determine the slot of each column up to the last one kept.
+	 *
+	 * @param header	The first line of the file.
+	 */
+	private final void readHeader(String header)
+	{
+		int[] slots = this.determineColumnSlots(header.split("\t"));
+		int lastColumnNeeded = slots.length - 1;
+		while (lastColumnNeeded >= 0 && slots[lastColumnNeeded] == COLUMN_NOT_KEPT)
+		{
+			lastColumnNeeded--;
+		}
+		this.columnSlots = Arrays.copyOf(slots, lastColumnNeeded + 1);
+	}
+
+}
@@ -0,0 +1,104 @@
+package randomjyrest;
+
+import java.io.File;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Implements the loading of a dataset into memory so that it can be used to grow many forests.
+ */
+public final class LoadDataset
+{
+
+	/**
+	 * The most recently loaded dataset that can be reused. The reference is soft, so the dataset is discarded if memory runs low.
+	 */
+	private static SoftReference<LoadedDataset> reusableDataset = new SoftReference<LoadedDataset>(null);
+
+	/**
+	 * The absolute location of the file that the reusable dataset was loaded from.
+	 */
+	private static String reusableDatasetLocation = null;
+
+	/**
+	 * The features that were not loaded in the reusable dataset.
+	 */
+	private static Set<String> reusableDatasetFeaturesRemoved = null;
+
+	/**
+	 * The last modification time of the file when the reusable dataset was loaded.
+	 */
+	private static long reusableDatasetLastModified = 0L;
+
+	/**
+	 * The size of the file when the reusable dataset was loaded.
+	 */
+	private static long reusableDatasetSize = 0L;
+
+
+	/**
+	 * Loads a file containing a dataset of observations, and sorts the values of each feature.
+	 *
+	 * The file is expected to be in the format described in ProcessDataset. The features in featuresToRemove are not loaded, and
+	 * should include any columns that do not contain numeric values (e.g. accessions). Features that have the same value for every
+	 * observation are loaded, but are never used to grow a forest.
+	 *
+	 * @param dataset			The location of the file containing the data to be loaded.
+	 * @param featuresToRemove	The features in the dataset that should not be loaded.
+	 * @return					The loaded dataset.
+	 */
+	public static final LoadedDataset main(String dataset, List<String> featuresToRemove)
+	{
+		// Parse the file.
+		ParsedDataFile parsedData = ParseDataFile.main(dataset, featuresToRemove, true);
+		double[][] featureData = parsedData.getFeatureData();
+		int numberOfFeatures = featureData.length;
+
+		// Sort the values of each feature.
+		double[][] sortedFeatureData = new double[numberOfFeatures][];
+		int[][] sortedFeatureIndices = new int[numberOfFeatures][];
+		SortFeatureData.main(featureData, sortedFeatureData, sortedFeatureIndices, Runtime.getRuntime().availableProcessors());
+
+		return new LoadedDataset(dataset, parsedData.getFeatureNames(), new ArrayList<String>(featuresToRemove), featureData,
+				sortedFeatureData, sortedFeatureIndices, parsedData.getClassNames(), parsedData.getObservationClasses());
+	}
+
+	/**
+	 * Loads a dataset, reusing the most recently loaded dataset if it was loaded from the same unchanged file with the same
+	 * features removed.
+	 * 
+	 * This allows forests that are grown from a file to share the sorted feature columns of the file, rather than each forest
+	 * parsing and sorting the file again. Only one dataset is kept for reuse, and it is only softly referenced.
+	 * 
+	 * @param dataset			The location of the file containing the data to be loaded.
+	 * @param featuresToRemove	The features in the dataset that should not be loaded.
+	 * @return					The loaded dataset.
+	 */
+	public static final synchronized LoadedDataset loadOrReuse(String dataset, List<String> featuresToRemove)
+	{
+		File datasetFile = new File(dataset);
+		String datasetLocation = datasetFile.getAbsolutePath();
+		long lastModified = datasetFile.lastModified();
+		long size = datasetFile.length();
+		Set<String> featuresRemoved = new HashSet<String>(featuresToRemove);
+
+		LoadedDataset loadedData = reusableDataset.get();
+		if (loadedData != null && datasetLocation.equals(reusableDatasetLocation) && featuresRemoved.equals(reusableDatasetFeaturesRemoved)
+				&& lastModified == reusableDatasetLastModified && size == reusableDatasetSize)
+		{
+			return loadedData;
+		}
+
+		loadedData = main(dataset, featuresToRemove);
+		reusableDataset = new SoftReference<LoadedDataset>(loadedData);
+		reusableDatasetLocation = datasetLocation;
+		reusableDatasetFeaturesRemoved = featuresRemoved;
+		reusableDatasetLastModified = lastModified;
+		reusableDatasetSize = size;
+		return loadedData;
+	}
+
+}
@@ -0,0 +1,259 @@
+package randomjyrest;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Implements the loading of a forest that was saved by SaveForest (see SaveForest for the format of the file).
+ *
+ * The file is memory mapped, and the arrays of each tree are copied out of it with bulk gets, so no parsing of the trees is needed.
+ * The loaded forest can be used to make predictions in exactly the same way as the forest that was saved, and, if the OOB
+ * observations were saved, to make OOB predictions and to calculate the importance of the features from the training dataset.
+ */
+public final class LoadForest
+{
+
+	/**
+	 * Load a saved forest.
+	 *
+	 * @param location	The location of the file containing the saved forest.
+	 * @return			The forest.
+	 */
+	public static final Forest main(String location)
+	{
+		Forest forest = new Forest();
+		FileChannel channel = null;
+		try
+		{
+			channel = FileChannel.open(Paths.get(location), StandardOpenOption.READ);
+			if (channel.size() > Integer.MAX_VALUE)
+			{
+				System.out.format("The saved forest file %s is too large to be loaded (%d bytes).\n", location, channel.size());
+				System.exit(0);
+			}
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			read(forest, buffer, location);
+		}
+		catch (IOException e)
+		{
+			// Caught an error while reading the file. Indicate this and exit.
+			System.out.println("An error occurred while loading the saved forest.");
+			e.printStackTrace();
+			System.exit(0);
+		}
+		catch (BufferUnderflowException e)
+		{
+			// The file ended before all the blocks recorded in it were read.
+			System.out.format("The saved forest file %s is truncated.\n", location);
+			e.printStackTrace();
+			System.exit(0);
+		}
+		catch (IllegalArgumentException e)
+		{
+			// An offset or size recorded in the file lies outside it.
+			System.out.format("The saved forest file %s is corrupt.\n", location);
+			e.printStackTrace();
+			System.exit(0);
+		}
+		finally
+		{
+			try
+			{
+				if (channel != null)
+				{
+					channel.close();
+				}
+			}
+			catch (IOException e)
+			{
+				// Caught an error while closing the file. Indicate this and exit.
+				System.out.println("An error occurred while closing the saved forest file.");
+				e.printStackTrace();
+				System.exit(0);
+			}
+		}
+
+		return forest;
+	}
+
+	/**
+	 * Load a saved forest, exiting if it was not grown in the way that is expected.
+	 *
+	 * The observation weights are compared through their fingerprint (see Forest.fingerprintWeights), as the weights themselves are
+	 * not saved.
+	 *
+	 * @param location			The location of the file containing the saved forest.
+	 * @param trainingDataset	The location of the dataset that the forest is expected to have been grown from.
+	 * @param numberOfTrees		The number of trees that the forest is expected to contain.
+	 * @param mtry				The number of features that are expected to have been evaluated for the cutpoint in each nonterminal
+	 * 							node.
+	 * @param featuresRemoved	The features that are expected to have been removed from the training dataset.
+	 * @param weights			The observation weights that the forest is expected to have been grown with.
+	 * @param seed				The seed that the forest is expected to have been grown with.
+	 * @return					The forest.
+	 */
+	public static final Forest main(String location, String trainingDataset, int numberOfTrees, int mtry,
+			List<String> featuresRemoved, double[] weights, long seed)
+	{
+		Forest forest = main(location);
+
+		// Record every difference between the saved forest and the expected one.
+		List<String> differences = new ArrayList<String>();
+		if (forest.getTrainingDataset() == null ||
+				!Paths.get(forest.getTrainingDataset()).toAbsolutePath().normalize().equals(
+						Paths.get(trainingDataset).toAbsolutePath().normalize()))
+		{
+			differences.add(String.format("it was grown from %s rather than %s", forest.getTrainingDataset(), trainingDataset));
+		}
+		if (forest.getTrees().size() != numberOfTrees)
+		{
+			differences.add(String.format("it contains %d trees rather than %d", forest.getTrees().size(), numberOfTrees));
+		}
+		if (forest.getMtry() != mtry)
+		{
+			differences.add(String.format("it was grown with an mtry of %d rather than %d", forest.getMtry(), mtry));
+		}
+		if (!new HashSet<String>(forest.getFeaturesRemoved()).equals(new HashSet<String>(featuresRemoved)))
+		{
+			differences.add(String.format("the features %s were removed rather than %s", forest.getFeaturesRemoved().toString(),
+					featuresRemoved.toString()));
+		}
+		if (forest.getSeed() != seed)
+		{
+			differences.add(String.format("it was grown with the seed %d rather than %d", forest.getSeed(), seed));
+		}
+		if (forest.getWeightsFingerprint() != Forest.fingerprintWeights(weights, forest.getObservationClassesInTrainingSet().length))
+		{
+			differences.add("it was grown with different observation weights");
+		}
+		if (!differences.isEmpty())
+		{
+			System.out.format("The saved forest %s was not grown with the parameters given: %s. Remove it to grow the forest again.\n",
+					location, String.join("; ", differences));
+			System.exit(0);
+		}
+
+		return forest;
+	}
+
+	/**
+	 * Read a saved forest.
+	 *
+	 * @param forest	The forest to restore the saved forest into.
+	 * @param buffer	The contents of the file containing the saved forest.
+	 * @param location	The location of the file containing the saved forest.
+	 */
+	private static final void read(Forest forest, ByteBuffer buffer, String location)
+	{
+		// Read and check the header.
+		if (buffer.getInt() != SaveForest.MAGIC_NUMBER)
+		{
+			System.out.format("The file %s does not contain a saved forest.\n", location);
+			System.exit(0);
+		}
+		int formatVersion = buffer.getInt();
+		if (formatVersion != SaveForest.FORMAT_VERSION)
+		{
+			System.out.format("The saved forest file %s is version %d, but only version %d can be loaded.\n", location, formatVersion,
+					SaveForest.FORMAT_VERSION);
+			System.exit(0);
+		}
+		int flags = buffer.getInt();
+		int numberOfTrees = buffer.getInt();
+		int numberOfClasses = buffer.getInt();
+		int numberOfFeatures = buffer.getInt();
+		int numberOfObservations = buffer.getInt();
+		int numberOfStrings = buffer.getInt();
+		int mtry = buffer.getInt();
+		long seed = buffer.getLong();
+		long weightsFingerprint = buffer.getLong();
+
+		// Read the string table and names.
+		String[] stringTable = new String[numberOfStrings];
+		for (int i = 0; i < numberOfStrings; i++)
+		{
+			byte[] encodedString = new byte[buffer.getInt()];
+			buffer.get(encodedString);
+			stringTable[i] = new String(encodedString, SaveForest.STRING_ENCODING);
+		}
+		int trainingDatasetIndex = buffer.getInt();
+		String trainingDataset = (trainingDatasetIndex == -1) ? null : stringTable[trainingDatasetIndex];
+		String[] featureNames = new String[numberOfFeatures];
+		for (int i = 0; i < numberOfFeatures; i++)
+		{
+			featureNames[i] = stringTable[buffer.getInt()];
+		}
+		String[] classNames = new String[numberOfClasses];
+		for (int i = 0; i < numberOfClasses; i++)
+		{
+			classNames[i] = stringTable[buffer.getInt()];
+		}
+		List<String> featuresRemoved = new ArrayList<String>();
+		int numberOfFeaturesRemoved = buffer.getInt();
+		for (int i = 0; i < numberOfFeaturesRemoved; i++)
+		{
+			featuresRemoved.add(stringTable[buffer.getInt()]);
+		}
+		buffer.position((int) SaveForest.alignToWord(buffer.position()));
+
+		// Read the trees, using the directory to locate the block of each tree.
+		List<CompiledTree> trees = new ArrayList<CompiledTree>(numberOfTrees);
+		int directoryStart = buffer.position();
+		long endOfTrees = directoryStart + (long) numberOfTrees * SaveForest.TREE_DIRECTORY_ENTRY_SIZE;
+		for (int i = 0; i < numberOfTrees; i++)
+		{
+			buffer.position(directoryStart + i * SaveForest.TREE_DIRECTORY_ENTRY_SIZE);
+			long treeOffset = buffer.getLong();
+			int numberOfNodes = buffer.getInt();
+			int numberOfLeaves = buffer.getInt();
+			double[] splitValues = new double[numberOfNodes];
+			double[] leafClassWeights = new double[numberOfLeaves * numberOfClasses];
+			int[] splitFeatures = new int[numberOfNodes];
+			int[] rightChildOrLeaf = new int[numberOfNodes];
+			buffer.position((int) treeOffset);
+			buffer.asDoubleBuffer().get(splitValues);
+			buffer.position(buffer.position() + 8 * numberOfNodes);
+			buffer.asDoubleBuffer().get(leafClassWeights);
+			buffer.position(buffer.position() + 8 * leafClassWeights.length);
+			buffer.asIntBuffer().get(splitFeatures);
+			buffer.position(buffer.position() + 4 * numberOfNodes);
+			buffer.asIntBuffer().get(rightChildOrLeaf);
+			trees.add(new CompiledTree(splitFeatures, splitValues, rightChildOrLeaf, numberOfClasses, leafClassWeights));
+			endOfTrees = treeOffset + SaveForest.treeBlockSize(numberOfNodes, numberOfLeaves, numberOfClasses);
+		}
+
+		// Read the classes of the training observations.
+		int[] observationClasses = new int[numberOfObservations];
+		buffer.position((int) endOfTrees);
+		buffer.asIntBuffer().get(observationClasses);
+		buffer.position((int) (endOfTrees + SaveForest.alignToWord(4L * numberOfObservations)));
+
+		// Read the OOB observations of each tree if they were saved.
+		List<BitSet> oobObservations = null;
+		if ((flags & SaveForest.FLAG_OOB_OBSERVATIONS) != 0)
+		{
+			oobObservations = new ArrayList<BitSet>(numberOfTrees);
+			long[] words = new long[SaveForest.oobWordsPerTree(numberOfObservations)];
+			for (int i = 0; i < numberOfTrees; i++)
+			{
+				buffer.asLongBuffer().get(words);
+				buffer.position(buffer.position() + 8 * words.length);
+				oobObservations.add(BitSet.valueOf(words));
+			}
+		}
+
+		forest.restore(trees, trainingDataset, featuresRemoved, featureNames, Arrays.asList(classNames), observationClasses, seed, mtry,
+				weightsFingerprint, oobObservations);
+	}
+
+}
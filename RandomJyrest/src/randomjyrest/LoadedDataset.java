@@ -0,0 +1,248 @@
+package randomjyrest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Implements a container for a dataset that has been loaded into memory and pre-sorted once, as generated by LoadDataset.
+ *
+ * A loaded dataset can be used to grow any number of forests without reading or sorting the data again. The features used to grow
+ * a forest are selected with a feature mask, a boolean array indexed in the same order as getFeatureNames() where true indicates that
+ * the feature should be used. The weights of the observations are applied when the forest is grown (see ProcessDataset).
+ *
+ * For each feature the values of the observations are held both in the order that the observations appear in the file (for making
+ * predictions) and sorted in ascending order alongside the original indices of the sorted values (for growing trees). Classes are
+ * given ids in the order that they are first encountered in the file.
+ *
+ * Instances are not modified after they are created, and so can be shared between threads.
+ */
+public final class LoadedDataset
+{
+
+	/**
+	 * The location of the file that the dataset was loaded from.
+	 */
+	private final String datasetLocation;
+
+	/**
+	 * The names of the features loaded, in the order that they appear in the file.
+	 */
+	private final String[] featureNames;
+
+	/**
+	 * The features of the file that were not loaded.
+	 */
+	private final List<String> featuresRemoved;
+
+	/**
+	 * The values of the observations for each feature, indexed by feature and then by the order of the observations in the file.
+	 */
+	private final double[][] featureData;
+
+	/**
+	 * The values of the observations for each feature sorted in ascending order.
+	 */
+	private final double[][] sortedFeatureData;
+
+	/**
+	 * The original indices of the values in sortedFeatureData.
+	 */
+	private final int[][] sortedFeatureIndices;
+
+	/**
+	 * The names of the classes, indexed by class id.
+	 */
+	private final String[] classNames;
+
+	/**
+	 * The id of the class of each observation.
+	 */
+	private final int[] observationClasses;
+
+
+	/**
+	 * Class constructor for a loaded dataset.
+	 *
+	 * @param datasetLocation		The location of the file that the dataset was loaded from.
+	 * @param featureNames			The names of the features loaded.
+	 * @param featuresRemoved		The features of the file that were not loaded.
+	 * @param featureData			The values of the observations for each feature, in file order.
+	 * @param sortedFeatureData		The values of the observations for each feature sorted in ascending order.
+	 * @param sortedFeatureIndices	The original indices of the sorted values.
+	 * @param classNames			The names of the classes, indexed by class id.
+	 * @param observationClasses	The id of the class of each observation.
+	 */
+	public LoadedDataset(String datasetLocation, String[] featureNames, List<String> featuresRemoved, double[][] featureData,
+			double[][] sortedFeatureData, int[][] sortedFeatureIndices, String[] classNames, int[] observationClasses)
+	{
+		this.datasetLocation = datasetLocation;
+		this.featureNames = featureNames;
+		this.featuresRemoved = featuresRemoved;
+		this.featureData = featureData;
+		this.sortedFeatureData = sortedFeatureData;
+		this.sortedFeatureIndices = sortedFeatureIndices;
+		this.classNames = classNames;
+		this.observationClasses = observationClasses;
+	}
+
+	/**
+	 * Create a feature mask that selects every loaded feature except those specified.
+	 *
+	 * @param featuresToRemove	The features that should not be used.
+	 * @return					The feature mask.
+	 */
+	public final boolean[] createFeatureMask(List<String> featuresToRemove)
+	{
+		boolean[] featureMask = new boolean[this.featureNames.length];
+		for (int i = 0; i < this.featureNames.length; i++)
+		{
+			featureMask[i] = !featuresToRemove.contains(this.featureNames[i]);
+		}
+		return featureMask;
+	}
+
+	/**
+	 * Determine the features selected by a feature mask.
+	 *
+	 * This replaces DetermineDatasetProperties.determineDatasetFeatures.
+	 *
+	 * @param featureMask	The feature mask.
+	 * @return				The names of the selected features, in the order that they appear in the file.
+	 */
+	public final List<String> determineFeaturesUsed(boolean[] featureMask)
+	{
+		List<String> featuresUsed = new ArrayList<String>();
+		for (int i = 0; i < this.featureNames.length; i++)
+		{
+			if (featureMask[i])
+			{
+				featuresUsed.add(this.featureNames[i]);
+			}
+		}
+		return featuresUsed;
+	}
+
+	/**
+	 * Determine the class of each observation.
+	 *
+	 * This replaces DetermineDatasetProperties.determineObservationClasses.
+	 *
+	 * @return		The classes of the observations in the order that the observations appear in the file.
+	 */
+	public final List<String> determineObservationClasses()
+	{
+		List<String> classOfObservations = new ArrayList<String>(this.observationClasses.length);
+		for (int c : this.observationClasses)
+		{
+			classOfObservations.add(this.classNames[c]);
+		}
+		return classOfObservations;
+	}
+
+	/**
+	 * Calculate the vector of weights for the observations from the weights of their classes.
+	 *
+	 * This replaces DetermineDatasetProperties.determineObservationWeights.
+	 *
+	 * @param classWeights	A mapping between class names and class weights.
+	 * @return				The weights of the observations in the order that the observations appear in the file.
+	 */
+	public final double[] determineObservationWeights(Map<String, Double> classWeights)
+	{
+		double[] weightOfEachClass = new double[this.classNames.length];
+		for (int c = 0; c < this.classNames.length; c++)
+		{
+			weightOfEachClass[c] = classWeights.get(this.classNames[c]);
+		}
+		int numberOfObservations = this.observationClasses.length;
+		double[] weights = new double[numberOfObservations];
+		for (int i = 0; i < numberOfObservations; i++)
+		{
+			weights[i] = weightOfEachClass[this.observationClasses[i]];
+		}
+		return weights;
+	}
+
+	/**
+	 * @return		The location of the file that the dataset was loaded from.
+	 */
+	public final String getDatasetLocation()
+	{
+		return this.datasetLocation;
+	}
+
+	/**
+	 * @return		The names of the features loaded, in the order that they appear in the file.
+	 */
+	public final String[] getFeatureNames()
+	{
+		return Arrays.copyOf(this.featureNames, this.featureNames.length);
+	}
+
+	/**
+	 * @return		The features of the file that were not loaded.
+	 */
+	public final List<String> getFeaturesRemoved()
+	{
+		return new ArrayList<String>(this.featuresRemoved);
+	}
+
+	/**
+	 * @return		The values of the observations for each feature, indexed by feature and then by observation.
+	 */
+	final double[][] getFeatureData()
+	{
+		return this.featureData;
+	}
+
+	/**
+	 * @return		The values of the observations for each feature sorted in ascending order.
+	 */
+	final double[][] getSortedFeatureData()
+	{
+		return this.sortedFeatureData;
+	}
+
+	/**
+	 * @return		The original indices of the sorted values of each feature.
+	 */
+	final int[][] getSortedFeatureIndices()
+	{
+		return this.sortedFeatureIndices;
+	}
+
+	/**
+	 * @return		The names of the classes, indexed by class id.
+	 */
+	public final String[] getClassNames()
+	{
+		return Arrays.copyOf(this.classNames, this.classNames.length);
+	}
+
+	/**
+	 * @return		The id of the class of each observation.
+	 */
+	final int[] getObservationClasses()
+	{
+		return this.observationClasses;
+	}
+
+	/**
+	 * @return		The number of features loaded.
+	 */
+	public final int getNumberOfFeatures()
+	{
+		return this.featureNames.length;
+	}
+
+	/**
+	 * @return		The number of observations in the dataset.
+	 */
+	public final int getNumberOfObservations()
+	{
+		return this.observationClasses.length;
+	}
+
+}
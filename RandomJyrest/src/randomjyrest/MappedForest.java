@@ -0,0 +1,437 @@
+package randomjyrest;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Implements a forest that makes predictions directly from a memory mapped file saved by SaveForest.
+ *
+ * Unlike LoadForest, no tree is copied onto the heap. Only the names and the location of each tree's block are read when the forest
+ * is opened, and each observation is walked down the trees by reading the node arrays straight out of the mapped file, so opening
+ * the forest takes the same time whatever the size of its trees, and the pages of the file are only read from disk as the nodes on
+ * them are first reached. As the pages belong to the operating system's page cache rather than to the heap, any number of processes
+ * on the same host that map the same file share one copy of the trees.
+ *
+ * The file is mapped in segments of at most Integer.MAX_VALUE bytes, with each tree's block lying wholly within one segment, so
+ * forests larger than a single mapping can hold can be used. The predictions are identical to those of the forest that was saved,
+ * as the weights are summed over the trees in the same order (see ForestPrediction).
+ */
+public class MappedForest
+{
+
+	/**
+	 * The features that were used in growing the forest, indexed by the feature ids used in the trees.
+	 */
+	private String[] featuresInTrainingSet;
+
+	/**
+	 * The classes in the training dataset, indexed by the class ids used in the trees.
+	 */
+	private List<String> classesInTrainingSet;
+
+	/**
+	 * The number of classes in the training dataset.
+	 */
+	private int numberOfClasses;
+
+	/**
+	 * The seed used to grow the forest.
+	 */
+	private long seedUsedForGrowing;
+
+	/**
+	 * The mapped segments of the file that hold the blocks of the trees.
+	 */
+	private MappedByteBuffer[] segments;
+
+	/**
+	 * The index in this.segments of the segment holding the block of each tree.
+	 */
+	private int[] treeSegments;
+
+	/**
+	 * The offset within its segment of the split values of each tree.
+	 */
+	private int[] splitValuesOffsets;
+
+	/**
+	 * The offset within its segment of the leaf class weights of each tree.
+	 */
+	private int[] leafClassWeightsOffsets;
+
+	/**
+	 * The offset within its segment of the split features of each tree.
+	 */
+	private int[] splitFeaturesOffsets;
+
+	/**
+	 * The offset within its segment of the right child or leaf indices of each tree.
+	 */
+	private int[] rightChildOrLeafOffsets;
+
+	/**
+	 * The number of threads to use for making predictions.
+	 */
+	private int numberOfThreads = Runtime.getRuntime().availableProcessors();
+
+
+	/**
+	 * Class constructor for a forest mapped from a file saved by SaveForest.
+	 *
+	 * @param location	The location of the file containing the saved forest.
+	 */
+	public MappedForest(String location)
+	{
+		FileChannel channel = null;
+		try
+		{
+			// The mappings stay valid once the channel is closed.
+			channel = FileChannel.open(Paths.get(location), StandardOpenOption.READ);
+			this.map(channel, location);
+		}
+		catch (IOException e)
+		{
+			// Caught an error while mapping the file. Indicate this and exit.
+			System.out.println("An error occurred while mapping the saved forest.");
+			e.printStackTrace();
+			System.exit(0);
+		}
+		catch (BufferUnderflowException e)
+		{
+			// The file ended before all the names and tree directory recorded in it were read.
+			System.out.format("The saved forest file %s is truncated.\n", location);
+			e.printStackTrace();
+			System.exit(0);
+		}
+		catch (IllegalArgumentException e)
+		{
+			// An offset or size recorded in the file lies outside it.
+			System.out.format("The saved forest file %s is corrupt.\n", location);
+			e.printStackTrace();
+			System.exit(0);
+		}
+		finally
+		{
+			try
+			{
+				if (channel != null)
+				{
+					channel.close();
+				}
+			}
+			catch (IOException e)
+			{
+				// Caught an error while closing the file. Indicate this and exit.
+				System.out.println("An error occurred while closing the saved forest file.");
+				e.printStackTrace();
+				System.exit(0);
+			}
+		}
+	}
+
+	/**
+	 * Read the names and the tree directory of a saved forest, and map the blocks of its trees.
+	 *
+	 * @param channel	The channel of the file containing the saved forest.
+	 * @param location	The location of the file containing the saved forest.
+	 * @throws IOException
+	 */
+	private final void map(FileChannel channel, String location) throws IOException
+	{
+		long fileSize = channel.size();
+		MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(fileSize, Integer.MAX_VALUE));
+
+		// Read and check the header.
+		if (buffer.getInt() != SaveForest.MAGIC_NUMBER)
+		{
+			System.out.format("The file %s does not contain a saved forest.\n", location);
+			System.exit(0);
+		}
+		int formatVersion = buffer.getInt();
+		if (formatVersion != SaveForest.FORMAT_VERSION)
+		{
+			System.out.format("The saved forest file %s is version %d, but only version %d can be mapped.\n", location, formatVersion,
+					SaveForest.FORMAT_VERSION);
+			System.exit(0);
+		}
+		buffer.getInt();  // The flags. The OOB observations are not used by a mapped forest.
+		int numberOfTrees = buffer.getInt();
+		this.numberOfClasses = buffer.getInt();
+		int numberOfFeatures = buffer.getInt();
+		buffer.getInt();  // The number of training observations.
+		int numberOfStrings = buffer.getInt();
+		buffer.getInt();  // The mtry used to grow the forest.
+		this.seedUsedForGrowing = buffer.getLong();
+		buffer.getLong();  // The fingerprint of the observation weights used to grow the forest.
+
+		// Read the string table and the names of the features and classes.
+		String[] stringTable = new String[numberOfStrings];
+		for (int i = 0; i < numberOfStrings; i++)
+		{
+			byte[] encodedString = new byte[buffer.getInt()];
+			buffer.get(encodedString);
+			stringTable[i] = new String(encodedString, SaveForest.STRING_ENCODING);
+		}
+		buffer.getInt();  // The string index of the location of the training dataset.
+		this.featuresInTrainingSet = new String[numberOfFeatures];
+		for (int i = 0; i < numberOfFeatures; i++)
+		{
+			this.featuresInTrainingSet[i] = stringTable[buffer.getInt()];
+		}
+		String[] classNames = new String[this.numberOfClasses];
+		for (int i = 0; i < this.numberOfClasses; i++)
+		{
+			classNames[i] = stringTable[buffer.getInt()];
+		}
+		this.classesInTrainingSet = Arrays.asList(classNames);
+		int numberOfFeaturesRemoved = buffer.getInt();
+		buffer.position(buffer.position() + 4 * numberOfFeaturesRemoved);
+		buffer.position((int) SaveForest.alignToWord(buffer.position()));
+
+		// Locate the block of each tree, starting a new segment whenever a block would extend past the end of the current one. When the
+		// whole file fits in one mapping, the mapping already made is the only segment.
+		this.treeSegments = new int[numberOfTrees];
+		this.splitValuesOffsets = new int[numberOfTrees];
+		this.leafClassWeightsOffsets = new int[numberOfTrees];
+		this.splitFeaturesOffsets = new int[numberOfTrees];
+		this.rightChildOrLeafOffsets = new int[numberOfTrees];
+		List<MappedByteBuffer> mappedSegments = new ArrayList<MappedByteBuffer>();
+		long segmentStart = 0;
+		long segmentSize = Math.min(fileSize, Integer.MAX_VALUE);
+		mappedSegments.add(buffer);
+		for (int i = 0; i < numberOfTrees; i++)
+		{
+			long treeOffset = buffer.getLong();
+			int numberOfNodes = buffer.getInt();
+			int numberOfLeaves = buffer.getInt();
+			long treeBlockSize = SaveForest.treeBlockSize(numberOfNodes, numberOfLeaves, this.numberOfClasses);
+			if (treeOffset < 0 || treeOffset + treeBlockSize > fileSize)
+			{
+				System.out.format("The saved forest file %s is truncated.\n", location);
+				System.exit(0);
+			}
+			if (treeOffset + treeBlockSize > segmentStart + segmentSize)
+			{
+				segmentStart = treeOffset;
+				segmentSize = Math.min(fileSize - treeOffset, Integer.MAX_VALUE);
+				mappedSegments.add(channel.map(FileChannel.MapMode.READ_ONLY, segmentStart, segmentSize));
+			}
+			int offsetInSegment = (int) (treeOffset - segmentStart);
+			this.treeSegments[i] = mappedSegments.size() - 1;
+			this.splitValuesOffsets[i] = offsetInSegment;
+			this.leafClassWeightsOffsets[i] = offsetInSegment + 8 * numberOfNodes;
+			this.splitFeaturesOffsets[i] = this.leafClassWeightsOffsets[i] + 8 * numberOfLeaves * this.numberOfClasses;
+			this.rightChildOrLeafOffsets[i] = this.splitFeaturesOffsets[i] + 4 * numberOfNodes;
+		}
+		this.segments = mappedSegments.toArray(new MappedByteBuffer[mappedSegments.size()]);
+	}
+
+	/**
+	 * Predict the class of observations in a dataset.
+	 *
+	 * @param dataset			The location of the file containing the data to be predicted.
+	 * @param featuresToRemove	The features in the dataset that should be removed (not processed).
+	 * @return					A mapping from class names to observations. Each class contains an entry for each observation in the
+	 * 							dataset. For an observation, i, the ith entry in the array for each class, c, will record the predicted
+	 * 							weight given to class c for observation i.
+	 */
+	public final Map<String, double[]> predict(String dataset, List<String> featuresToRemove)
+	{
+		return this.predict(dataset, featuresToRemove, this.numberOfThreads);
+	}
+
+	/**
+	 * Predict the class of observations in a dataset.
+	 *
+	 * The predictions are the same whatever the number of threads used.
+	 *
+	 * @param dataset			The location of the file containing the data to be predicted.
+	 * @param featuresToRemove	The features in the dataset that should be removed (not processed).
+	 * @param numberOfThreads	The number of threads to use for making the predictions.
+	 * @return					A mapping from class names to observations. Each class contains an entry for each observation in the
+	 * 							dataset. For an observation, i, the ith entry in the array for each class, c, will record the predicted
+	 * 							weight given to class c for observation i.
+	 */
+	public final Map<String, double[]> predict(String dataset, List<String> featuresToRemove, int numberOfThreads)
+	{
+		// Bind the columns of the dataset to the features used to grow the forest, and parse only the bound columns.
+		ParsedDataFile parsedData = ParseDataFile.main(dataset, featuresToRemove, this.featuresInTrainingSet);
+		double[][] predictions = this.predict(parsedData.getFeatureData(), parsedData.getNumberOfObservations(), numberOfThreads);
+
+		Map<String, double[]> predictionMap = new HashMap<String, double[]>();
+		for (int i = 0; i < this.numberOfClasses; i++)
+		{
+			predictionMap.put(this.classesInTrainingSet.get(i), predictions[i]);
+		}
+		return predictionMap;
+	}
+
+	/**
+	 * Predict every observation in a dataset whose features are already arranged by feature id.
+	 *
+	 * @param datasetToPredict		The values of the observations being predicted, indexed by feature id (see getFeatureNames) and
+	 * 								then by observation.
+	 * @param numberOfObservations	The number of observations being predicted.
+	 * @param numberOfThreads		The number of threads to use for the prediction.
+	 * @return						The predicted weight of each class for each observation, indexed by class id (see getClassNames)
+	 * 								and then by observation.
+	 */
+	public final double[][] predict(final double[][] datasetToPredict, int numberOfObservations, int numberOfThreads)
+	{
+		final double[][] predictions = new double[this.numberOfClasses][numberOfObservations];
+		ForestPrediction.runTasks(this.createPredictionTasks(datasetToPredict, numberOfObservations, numberOfThreads, predictions),
+				numberOfThreads);
+		return predictions;
+	}
+
+	/**
+	 * Predict every observation in a dataset whose features are already arranged by feature id, using an existing executor.
+	 *
+	 * Use this when many datasets are predicted one after another (e.g. when serving requests), so that a new set of threads is not
+	 * started for each of them.
+	 *
+	 * @param datasetToPredict		The values of the observations being predicted, indexed by feature id (see getFeatureNames) and
+	 * 								then by observation.
+	 * @param numberOfObservations	The number of observations being predicted.
+	 * @param numberOfThreads		The number of threads in the executor.
+	 * @param predictionPool		The executor to make the predictions on, or null if they should be made on the calling thread.
+	 * @return						The predicted weight of each class for each observation, indexed by class id (see getClassNames)
+	 * 								and then by observation.
+	 */
+	public final double[][] predict(final double[][] datasetToPredict, int numberOfObservations, int numberOfThreads,
+			ExecutorService predictionPool)
+	{
+		final double[][] predictions = new double[this.numberOfClasses][numberOfObservations];
+		ForestPrediction.runTasks(this.createPredictionTasks(datasetToPredict, numberOfObservations, numberOfThreads, predictions),
+				predictionPool);
+		return predictions;
+	}
+
+	/**
+	 * Create the tasks that predict every observation in a dataset, one for each chunk of the observations.
+	 *
+	 * @param datasetToPredict		The values of the observations being predicted, indexed by feature id and then by observation.
+	 * @param numberOfObservations	The number of observations being predicted.
+	 * @param numberOfThreads		The number of threads that will be used for the prediction.
+	 * @param predictions			The predicted weight of each class for each observation, indexed by class id and then by
+	 * 								observation.
+	 * @return						The tasks.
+	 */
+	private final List<Callable<Void>> createPredictionTasks(final double[][] datasetToPredict, int numberOfObservations,
+			int numberOfThreads, final double[][] predictions)
+	{
+		List<Callable<Void>> predictionTasks = new ArrayList<Callable<Void>>();
+		for (final int[] chunk : ForestPrediction.determineChunks(numberOfObservations, numberOfThreads))
+		{
+			predictionTasks.add(new Callable<Void>()
+				{
+					public Void call()
+					{
+						for (int blockStart = chunk[0]; blockStart < chunk[1]; blockStart += ForestPrediction.PREDICTION_BLOCK_SIZE)
+						{
+							int blockEnd = Math.min(chunk[1], blockStart + ForestPrediction.PREDICTION_BLOCK_SIZE);
+							for (int i = 0; i < MappedForest.this.treeSegments.length; i++)
+							{
+								MappedForest.this.predictOnTree(i, datasetToPredict, blockStart, blockEnd, predictions);
+							}
+						}
+						return null;
+					}
+				});
+		}
+		return predictionTasks;
+	}
+
+	/**
+	 * Add the predictions of a tree for a block of consecutive observations to the record of the predictions.
+	 *
+	 * The nodes are read with absolute gets from the mapped segment, so any number of threads can predict on the same tree at once.
+	 *
+	 * @param tree				The index of the tree in the forest.
+	 * @param datasetToPredict	The values of the observations being predicted, indexed by feature id and then by observation.
+	 * @param firstObservation	The index of the first observation in the block (inclusive).
+	 * @param lastObservation	The index of the last observation in the block (exclusive).
+	 * @param predictions		The predicted weight of each class for each observation, indexed by class id and then by observation.
+	 */
+	private final void predictOnTree(int tree, double[][] datasetToPredict, int firstObservation, int lastObservation,
+			double[][] predictions)
+	{
+		ByteBuffer segment = this.segments[this.treeSegments[tree]];
+		int splitValuesOffset = this.splitValuesOffsets[tree];
+		int leafClassWeightsOffset = this.leafClassWeightsOffsets[tree];
+		int splitFeaturesOffset = this.splitFeaturesOffsets[tree];
+		int rightChildOrLeafOffset = this.rightChildOrLeafOffsets[tree];
+		for (int i = firstObservation; i < lastObservation; i++)
+		{
+			int currentNode = 0;
+			int feature;
+			while ((feature = segment.getInt(splitFeaturesOffset + 4 * currentNode)) != -1)
+			{
+				currentNode = (datasetToPredict[feature][i] <= segment.getDouble(splitValuesOffset + 8 * currentNode)) ?
+						currentNode + 1 : segment.getInt(rightChildOrLeafOffset + 4 * currentNode);
+			}
+			int leafOffset = leafClassWeightsOffset + 8 * this.numberOfClasses * segment.getInt(rightChildOrLeafOffset + 4 * currentNode);
+			for (int c = 0; c < this.numberOfClasses; c++)
+			{
+				predictions[c][i] += segment.getDouble(leafOffset + 8 * c);
+			}
+		}
+	}
+
+	/**
+	 * @return		The features that were used in growing the forest, indexed by the feature ids used in the trees.
+	 */
+	public final String[] getFeatureNames()
+	{
+		return this.featuresInTrainingSet;
+	}
+
+	/**
+	 * @return		The classes in the training dataset, indexed by the class ids used in the trees.
+	 */
+	public final List<String> getClassNames()
+	{
+		return this.classesInTrainingSet;
+	}
+
+	/**
+	 * @return		The number of trees in the forest.
+	 */
+	public final int getNumberOfTrees()
+	{
+		return this.treeSegments.length;
+	}
+
+	/**
+	 * Get the seed used to grow the random forest.
+	 *
+	 * @return	The seed used to grow the random forest.
+	 */
+	public final long getSeed()
+	{
+		return this.seedUsedForGrowing;
+	}
+
+	/**
+	 * Set the number of threads used to make predictions when no number is given. Defaults to the number of processors available.
+	 *
+	 * @param numberOfThreads	The number of threads.
+	 */
+	public final void setNumberOfThreads(int numberOfThreads)
+	{
+		this.numberOfThreads = numberOfThreads;
+	}
+
+}
@@ -0,0 +1,149 @@
+package randomjyrest;
+
+/**
+ * Implements the record of the bin histograms that have been calculated for a node while growing a tree in binned mode.
+ *
+ * A histogram is only calculated for the features that are candidates for splitting the node (or for splitting its sibling), so the
+ * histograms are held as a short list keyed by feature id rather than as an array indexed by feature id. The histograms of a node
+ * are kept until the node's children have been evaluated, so that the histogram of a child can be found by subtracting the histogram
+ * of its sibling from that of the node.
+ *
+ * The histograms are referenced by the node, by the evaluation of its sibling and, once the node is split, by the evaluation of each
+ * of its children. When every reference has been released, the arrays of the histograms are returned to the pool they were taken
+ * from (see SplitScratch) so that they can be reused by the nodes grown later.
+ *
+ * The methods are synchronized, as the candidate features of a node may be evaluated by several threads at once when a tree is grown
+ * with fork-join parallelism.
+ */
+public class NodeHistograms
+{
+
+	/**
+	 * The ids of the features that have a histogram.
+	 */
+	private int[] features = new int[4];
+
+	/**
+	 * The weight of each class in each bin, indexed by position in the list and then by bin * numberOfClasses + class id.
+	 */
+	private double[][] classWeights = new double[4][];
+
+	/**
+	 * The number of unique observations in each bin, indexed by position in the list and then by bin.
+	 */
+	private int[][] observationCounts = new int[4][];
+
+	/**
+	 * The number of histograms in the list.
+	 */
+	private int numberOfHistograms = 0;
+
+	/**
+	 * The number of references to the histograms that have not been released.
+	 */
+	private int numberOfReferences;
+
+
+	/**
+	 * Class constructor for the histograms of a node.
+	 *
+	 * @param numberOfReferences	The number of references to the histograms: 1 for the root, and 2 (the node and its sibling) for
+	 * 								any other node.
+	 */
+	public NodeHistograms(int numberOfReferences)
+	{
+		this.numberOfReferences = numberOfReferences;
+	}
+
+	/**
+	 * @param feature	The id of the feature of interest.
+	 * @return			The position of the feature's histogram in the list, or -1 if the feature has no histogram.
+	 */
+	public final synchronized int find(int feature)
+	{
+		for (int i = 0; i < this.numberOfHistograms; i++)
+		{
+			if (this.features[i] == feature)
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Add the histogram of a feature to the list.
+	 *
+	 * @param feature				The id of the feature.
+	 * @param classWeights			The weight of each class in each bin, indexed by bin * numberOfClasses + class id.
+	 * @param observationCounts		The number of unique observations in each bin.
+	 * @return						The position of the histogram in the list.
+	 */
+	public final synchronized int add(int feature, double[] classWeights, int[] observationCounts)
+	{
+		if (this.numberOfHistograms == this.features.length)
+		{
+			int newLength = this.features.length * 2;
+			int[] newFeatures = new int[newLength];
+			double[][] newClassWeights = new double[newLength][];
+			int[][] newObservationCounts = new int[newLength][];
+			System.arraycopy(this.features, 0, newFeatures, 0, this.numberOfHistograms);
+			System.arraycopy(this.classWeights, 0, newClassWeights, 0, this.numberOfHistograms);
+			System.arraycopy(this.observationCounts, 0, newObservationCounts, 0, this.numberOfHistograms);
+			this.features = newFeatures;
+			this.classWeights = newClassWeights;
+			this.observationCounts = newObservationCounts;
+		}
+		this.features[this.numberOfHistograms] = feature;
+		this.classWeights[this.numberOfHistograms] = classWeights;
+		this.observationCounts[this.numberOfHistograms] = observationCounts;
+		return this.numberOfHistograms++;
+	}
+
+	/**
+	 * @param position	The position of the histogram in the list.
+	 * @return			The weight of each class in each bin, indexed by bin * numberOfClasses + class id.
+	 */
+	public final synchronized double[] getClassWeights(int position)
+	{
+		return this.classWeights[position];
+	}
+
+	/**
+	 * @param position	The position of the histogram in the list.
+	 * @return			The number of unique observations in each bin.
+	 */
+	public final synchronized int[] getObservationCounts(int position)
+	{
+		return this.observationCounts[position];
+	}
+
+	/**
+	 * Add a reference to the histograms, as when the node is split its children both reference them in place of the node.
+	 */
+	public final synchronized void addReference()
+	{
+		this.numberOfReferences++;
+	}
+
+	/**
+	 * Release a reference to the histograms, returning their arrays to the pool once every reference has been released.
+	 *
+	 * @param scratch	The scratch space whose pool the arrays are returned to.
+	 */
+	public final synchronized void release(SplitScratch scratch)
+	{
+		this.numberOfReferences--;
+		if (this.numberOfReferences == 0)
+		{
+			for (int i = 0; i < this.numberOfHistograms; i++)
+			{
+				scratch.recycleHistogram(this.classWeights[i], this.observationCounts[i]);
+				this.classWeights[i] = null;
+				this.observationCounts[i] = null;
+			}
+			this.numberOfHistograms = 0;
+		}
+	}
+
+}
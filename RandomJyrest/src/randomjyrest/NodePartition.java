@@ -0,0 +1,283 @@
+package randomjyrest;
+
+/**
+ * Implements the node-local record of the in bag observations used while growing a tree.
+ *
+ * For each feature the unique in bag observations are kept in ascending order of their value for the feature. Every node in the
+ * tree owns a contiguous range [start, end) of these arrays, and the range of a node contains exactly the observations that have
+ * reached the node. When a node is split, the range is stably partitioned in place so that the observations going to the left
+ * child occupy the front of the range and those going to the right child occupy the back of it. As the partitioning is stable,
+ * the observations in each child's range remain sorted for every feature, and the cost of evaluating a node therefore depends only
+ * on the number of observations that reach the node rather than the number of observations in the dataset. Nodes with disjoint
+ * ranges can be split concurrently by different threads.
+ *
+ * Splitting a node also sums the weight of each class in each child, in the order that the observations appear in the dataset, so
+ * the class weights of a node are known without another pass over its observations.
+ *
+ * Example:
+ * 		The sorted values of a feature, F, are					[2, 3, 4, 4, 7, 8]
+ * 		The original indices of the sorted values are			[2, 4, 0, 5, 1, 3]
+ * 		The in bag observations are								[1, 0, 2, 1, 0, 1]	(the number of times each observation is in bag)
+ *
+ * 		The range for F at the root node holds the values		[2, 4, 8, 4]	(the unique in bag observations)
+ * 		and the original indices								[2, 0, 3, 5]
+ * 		If the root is split on F at 5.5 the range becomes		[2, 4, 4, 8]	(left child [0, 3), right child [3, 4))
+ * 		with original indices									[2, 0, 5, 3]
+ */
+public class NodePartition
+{
+
+	/**
+	 * The values of the unique in bag observations, indexed by feature id. The values within the range of any node are sorted in
+	 * ascending order.
+	 */
+	private double[][] nodeFeatureData;
+
+	/**
+	 * The original indices of the values in nodeFeatureData, indexed by feature id.
+	 */
+	private int[][] nodeFeatureIndices;
+
+	/**
+	 * The original indices of the unique in bag observations. The indices within the range of any node are sorted in ascending
+	 * order, so that per observation sums can be made in the same order as the observations appear in the dataset.
+	 */
+	private int[] nodeObservations;
+
+	/**
+	 * The weight of each observation for each class, indexed by class id and then by the original index of the observation.
+	 */
+	private double[][] classWeights;
+
+	/**
+	 * The id of the class of each observation, indexed by the original index of the observation.
+	 */
+	private int[] observationClasses;
+
+	/**
+	 * The number of times each observation in the dataset is in bag.
+	 */
+	private int[] inBagObservations;
+
+	/**
+	 * Records whether each observation in the dataset is going to the left child of the node currently being split. Indexed by
+	 * the original indices of the observations.
+	 */
+	private boolean[] isGoingLeft;
+
+	/**
+	 * Scratch space used to hold the values of the observations going to the right child during a partition. The range of the node
+	 * being split is used, so that nodes with disjoint ranges can be split at the same time.
+	 */
+	private double[] rightChildDataBuffer;
+
+	/**
+	 * Scratch space used to hold the original indices of the observations going to the right child during a partition.
+	 */
+	private int[] rightChildIndexBuffer;
+
+
+	/**
+	 * Set up the node-local record for the root node of a tree.
+	 *
+	 * @param dataset						The processed dataset containing the sorted values of each feature.
+	 * @param inBagObservations				An array recording the number of times each observation in the dataset is in bag.
+	 * 										Observations that are not in bag are given a value of 0.
+	 * @param numberOfUniqueObservations	The number of unique in bag observations.
+	 */
+	public NodePartition(ProcessedDataset dataset, int[] inBagObservations, int numberOfUniqueObservations)
+	{
+		int numberOfObservations = inBagObservations.length;
+		int numberOfFeatures = dataset.getNumberOfFeatures();
+		this.nodeFeatureData = new double[numberOfFeatures][];
+		this.nodeFeatureIndices = new int[numberOfFeatures][];
+
+		// Record the value and original index of the unique in bag observations for each feature, maintaining the sorted order.
+		for (int f = 0; f < numberOfFeatures; f++)
+		{
+			double[] allFeatureData = dataset.getSortedFeatureData()[f];
+			int[] featureIndices = dataset.getSortedFeatureIndices()[f];
+			double[] subsetFeatureData = new double[numberOfUniqueObservations];
+			int[] subsetFeatureIndices = new int[numberOfUniqueObservations];
+			int currentInsertionIndex = 0;
+			for (int i = 0; i < numberOfObservations; i++)
+			{
+				int originalIndex = featureIndices[i];
+				if (inBagObservations[originalIndex] != 0)
+				{
+					subsetFeatureData[currentInsertionIndex] = allFeatureData[i];
+					subsetFeatureIndices[currentInsertionIndex] = originalIndex;
+					currentInsertionIndex++;
+				}
+			}
+			this.nodeFeatureData[f] = subsetFeatureData;
+			this.nodeFeatureIndices[f] = subsetFeatureIndices;
+		}
+
+		// Record the unique in bag observations in the order they appear in the dataset.
+		this.nodeObservations = new int[numberOfUniqueObservations];
+		int currentInsertionIndex = 0;
+		for (int i = 0; i < numberOfObservations; i++)
+		{
+			if (inBagObservations[i] != 0)
+			{
+				this.nodeObservations[currentInsertionIndex] = i;
+				currentInsertionIndex++;
+			}
+		}
+
+		this.classWeights = dataset.getClassWeights();
+		this.observationClasses = dataset.getObservationClasses();
+		this.inBagObservations = inBagObservations;
+		this.isGoingLeft = new boolean[numberOfObservations];
+		this.rightChildDataBuffer = new double[numberOfUniqueObservations];
+		this.rightChildIndexBuffer = new int[numberOfUniqueObservations];
+	}
+
+	/**
+	 * @param feature	The id of the feature of interest.
+	 * @return			The values of the unique in bag observations for the feature.
+	 */
+	public final double[] getFeatureData(int feature)
+	{
+		return this.nodeFeatureData[feature];
+	}
+
+	/**
+	 * @param feature	The id of the feature of interest.
+	 * @return			The original indices of the values returned by getFeatureData for the feature.
+	 */
+	public final int[] getFeatureIndices(int feature)
+	{
+		return this.nodeFeatureIndices[feature];
+	}
+
+	/**
+	 * @return		The original indices of the unique in bag observations, ordered within each node's range as the observations
+	 * 				appear in the dataset.
+	 */
+	public final int[] getObservations()
+	{
+		return this.nodeObservations;
+	}
+
+	/**
+	 * Partition the range of a node into the observations going to the left child and those going to the right child.
+	 *
+	 * An observation goes to the left child when its value for the feature being split on is less than or equal to the split value.
+	 * After partitioning, the left child owns the range [start, start + return) and the right child the range [start + return, end).
+	 *
+	 * @param featureSplitOn			The id of the feature that is used to split the node.
+	 * @param splitValue				The value of the cutpoint for the feature being split on.
+	 * @param start						The start (inclusive) of the range of the node being split.
+	 * @param end						The end (exclusive) of the range of the node being split.
+	 * @param leftChildClassWeights		Filled with the weight of each class in the left child, indexed by class id.
+	 * @param rightChildClassWeights	Filled with the weight of each class in the right child, indexed by class id.
+	 * @return							The number of unique observations going to the left child.
+	 */
+	public final int split(int featureSplitOn, double splitValue, int start, int end, double[] leftChildClassWeights,
+			double[] rightChildClassWeights)
+	{
+		// Determine where each observation is going.
+		double[] splitFeatureData = this.nodeFeatureData[featureSplitOn];
+		int[] splitFeatureIndices = this.nodeFeatureIndices[featureSplitOn];
+		int numberOfLeftObservations = 0;
+		for (int i = start; i < end; i++)
+		{
+			boolean isLeft = splitFeatureData[i] <= splitValue;
+			this.isGoingLeft[splitFeatureIndices[i]] = isLeft;
+			numberOfLeftObservations += (isLeft ? 1 : 0);
+		}
+
+		// Partition the range of every feature.
+		int numberOfFeatures = this.nodeFeatureData.length;
+		for (int f = 0; f < numberOfFeatures; f++)
+		{
+			this.partitionRange(this.nodeFeatureData[f], this.nodeFeatureIndices[f], start, end);
+		}
+		this.partitionObservations(start, end, leftChildClassWeights, rightChildClassWeights);
+
+		return numberOfLeftObservations;
+	}
+
+
+	/**
+	 * Stably partition a range of values and their original indices, so that the observations going to the left child precede those
+	 * going to the right child.
+	 *
+	 * @param featureData		The values to partition alongside the indices.
+	 * @param featureIndices	The original indices of the observations.
+	 * @param start				The start (inclusive) of the range to partition.
+	 * @param end				The end (exclusive) of the range to partition.
+	 */
+	private final void partitionRange(double[] featureData, int[] featureIndices, int start, int end)
+	{
+		int leftInsertionIndex = start;
+		int rightInsertionIndex = start;
+		for (int i = start; i < end; i++)
+		{
+			int originalIndex = featureIndices[i];
+			if (this.isGoingLeft[originalIndex])
+			{
+				featureData[leftInsertionIndex] = featureData[i];
+				featureIndices[leftInsertionIndex] = originalIndex;
+				leftInsertionIndex++;
+			}
+			else
+			{
+				this.rightChildDataBuffer[rightInsertionIndex] = featureData[i];
+				this.rightChildIndexBuffer[rightInsertionIndex] = originalIndex;
+				rightInsertionIndex++;
+			}
+		}
+
+		// Copy the observations going to the right child back in after those going to the left child.
+		System.arraycopy(this.rightChildDataBuffer, start, featureData, leftInsertionIndex, rightInsertionIndex - start);
+		System.arraycopy(this.rightChildIndexBuffer, start, featureIndices, leftInsertionIndex, rightInsertionIndex - start);
+	}
+
+	/**
+	 * Stably partition the range of the unique in bag observations, summing the weight of each class going to each child.
+	 *
+	 * The weights are summed in the order that the observations appear in the dataset, so they are exactly the sums that would be
+	 * found by summing over each child's range afterwards.
+	 *
+	 * @param start						The start (inclusive) of the range to partition.
+	 * @param end						The end (exclusive) of the range to partition.
+	 * @param leftChildClassWeights		Filled with the weight of each class in the left child, indexed by class id.
+	 * @param rightChildClassWeights	Filled with the weight of each class in the right child, indexed by class id.
+	 */
+	private final void partitionObservations(int start, int end, double[] leftChildClassWeights, double[] rightChildClassWeights)
+	{
+		for (int c = 0; c < leftChildClassWeights.length; c++)
+		{
+			leftChildClassWeights[c] = 0.0;
+			rightChildClassWeights[c] = 0.0;
+		}
+
+		int leftInsertionIndex = start;
+		int rightInsertionIndex = start;
+		for (int i = start; i < end; i++)
+		{
+			int originalIndex = this.nodeObservations[i];
+			int classOfObs = this.observationClasses[originalIndex];
+			double observationWeight = this.classWeights[classOfObs][originalIndex] * this.inBagObservations[originalIndex];
+			if (this.isGoingLeft[originalIndex])
+			{
+				leftChildClassWeights[classOfObs] += observationWeight;
+				this.nodeObservations[leftInsertionIndex] = originalIndex;
+				leftInsertionIndex++;
+			}
+			else
+			{
+				rightChildClassWeights[classOfObs] += observationWeight;
+				this.rightChildIndexBuffer[rightInsertionIndex] = originalIndex;
+				rightInsertionIndex++;
+			}
+		}
+
+		// Copy the observations going to the right child back in after those going to the left child.
+		System.arraycopy(this.rightChildIndexBuffer, start, this.nodeObservations, leftInsertionIndex, rightInsertionIndex - start);
+	}
+
+}
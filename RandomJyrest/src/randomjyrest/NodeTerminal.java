@@ -1,61 +1,40 @@
 package randomjyrest;
 
-import java.util.Map;
-import java.util.Set;
-
 /**
  * Implements a terminal node.
  */
 public class NodeTerminal extends Node
 {
 	// The attributes of a terminal node.
-	private String classPresent;  // The class that any observation reaching the node is predicted to be (terminal nodes are pure).
-	private double weightInNode;  // The weight of the observations in the training set that reached this terminal node.
+	int classIndexPresent;  // The id of the class with the greatest weight in the node (the only class present if the node is pure).
+	double weightInNode;  // The weight of the observations in the training set that reached this terminal node.
+	double[] classWeightsInNode;  // The weight of each class in the observations that reached this terminal node.
 
 	/**
 	 * Class constructor for a terminal node.
-	 * 
-	 * @param classPresent			The class of the observations from the training set that reached this node.
-	 * @param classData				The information about the weight that each observation in the training set contributes to each class.
-	 * @param inBagObservations		The observations that have reached the node.
+	 *
+	 * @param classWeightsInNode	The weight of each class in the in bag observations that have reached the node, indexed by class id.
+	 * 								Pure nodes have a non-zero weight for at most one class.
 	 */
-	public NodeTerminal(String classPresent, Map<String, double[]> classData, int[] inBagObservations)
+	public NodeTerminal(double[] classWeightsInNode)
 	{
-		// Sum up the total weight of the observations that have reached the node.
-		int numberOfObservations = inBagObservations.length;
-		double[] classWeights = classData.get(classPresent);  // The weight that every observation contributes to the class classPresent.
+		// Determine the heaviest class and the total weight of the observations that have reached the node. Ties are broken in favour
+		// of the lowest class id.
+		int heaviestClass = 0;
 		double totalClassWeight = 0.0;  // The total weight of all the observations.
-		for (int i = 0; i < numberOfObservations; i++)
+		for (int c = 0; c < classWeightsInNode.length; c++)
 		{
-			totalClassWeight += (classWeights[i] * inBagObservations[i]);
+			if (classWeightsInNode[c] > classWeightsInNode[heaviestClass])
+			{
+				heaviestClass = c;
+			}
+			totalClassWeight += classWeightsInNode[c];
 		}
 
 		// Assign the values to the node's attributes.
-		this.classPresent = classPresent;
+		this.classIndexPresent = heaviestClass;
 		this.weightInNode = totalClassWeight;
-	}
-	
-	/**
-	 * Classify every observation that has reached this node.
-	 * 
-	 * @param datasetToPredict	The data for every observation in the entire set of data that is to be predicted (not just the data
-	 * 							for the observations that have reached this node).
-	 * @param obsToPredict		The indices of the observations that have reached this node.
-	 * @param predictions		The predictions of the observations in the entire dataset.
-	 * @return					The predictions of the observations in the entire dataset that were passed in with the addition of
-	 * 							the observations that reached this node added to it with a classification of this.classPresent and
-	 * 							a prediction weight of this.weightInNode.
-	 */
-	public final Map<String, double[]> predict(Map<String, double[]> datasetToPredict, Set<Integer> obsToPredict,
-			Map<String, double[]> predictions)
-	{
-		// Add the classification of all the observation that reached this node to the prediction record.
-		double[] predictionsForNodesClass = predictions.get(this.classPresent);
-		for (Integer i : obsToPredict)
-		{
-			predictionsForNodesClass[i] += this.weightInNode;
-		}
-		return predictions;
+		this.classWeightsInNode = classWeightsInNode;
 	}
 
 }
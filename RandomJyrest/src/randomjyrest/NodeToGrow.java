@@ -0,0 +1,141 @@
+package randomjyrest;
+
+/**
+ * Implements a record of a node that is waiting to be grown, used by the iterative tree growth in Tree.
+ *
+ * The node owns the range [start, end) of the tree's partition. Once the node has been grown it is attached to its parent as the
+ * child recorded here. The split of the node is stored once it has been determined, so that nodes can be ordered by the quality of
+ * their splits before they are split.
+ */
+public class NodeToGrow
+{
+
+	/**
+	 * The start (inclusive) of the node's range in the partition.
+	 */
+	final int start;
+
+	/**
+	 * The end (exclusive) of the node's range in the partition.
+	 */
+	final int end;
+
+	/**
+	 * The depth of the node in the tree. The root has depth 0.
+	 */
+	final int depth;
+
+	/**
+	 * The nonterminal node that the node is a child of, or null if the node is the root.
+	 */
+	final NodeNonTerminal parent;
+
+	/**
+	 * The index of the node in the parent's children (0 for the left child and 1 for the right child).
+	 */
+	final int childIndex;
+
+	/**
+	 * The order in which the node was created. Used to break ties between nodes deterministically.
+	 */
+	final long creationOrder;
+
+	/**
+	 * The histograms calculated for the node in binned mode.
+	 */
+	final NodeHistograms histograms;
+
+	/**
+	 * The histograms calculated for the node's parent in binned mode, or null if the node is the root.
+	 */
+	final NodeHistograms parentHistograms;
+
+	/**
+	 * The histograms calculated for the node's sibling in binned mode, or null if the node is the root.
+	 */
+	final NodeHistograms siblingHistograms;
+
+	/**
+	 * The start (inclusive) of the sibling's range in the partition.
+	 */
+	final int siblingStart;
+
+	/**
+	 * The end (exclusive) of the sibling's range in the partition.
+	 */
+	final int siblingEnd;
+
+	/**
+	 * The weight of each class in the node, indexed by class id. Recorded when the node's parent is split, so it is null for the root.
+	 */
+	double[] classWeights = null;
+
+	/**
+	 * The seed for the node's random number generator when the tree is grown with fork-join parallelism.
+	 */
+	long seed = 0L;
+
+	/**
+	 * Whether the split of the node has been determined.
+	 */
+	boolean isEvaluated = false;
+
+	/**
+	 * The terminal node to use for the node, or null if the node is to be split. Only valid once the node has been evaluated.
+	 */
+	Node terminalNode = null;
+
+	/**
+	 * The id of the feature to split the node on.
+	 */
+	int splitFeature = -1;
+
+	/**
+	 * The value of the feature to split the node on.
+	 */
+	double splitValue = 0.0;
+
+	/**
+	 * The highest bin going to the left child in binned mode.
+	 */
+	int splitBin = -1;
+
+	/**
+	 * The decrease in weighted impurity achieved by splitting the node. Only calculated when growing best-first.
+	 */
+	double impurityDecrease = 0.0;
+
+
+	/**
+	 * Class constructor for a node waiting to be grown.
+	 *
+	 * @param start					The start (inclusive) of the node's range in the partition.
+	 * @param end					The end (exclusive) of the node's range in the partition.
+	 * @param depth					The depth of the node in the tree.
+	 * @param parent				The nonterminal node that the node is a child of, or null if the node is the root.
+	 * @param childIndex			The index of the node in the parent's children.
+	 * @param creationOrder			The order in which the node was created.
+	 * @param histograms			The histograms calculated for the node in binned mode.
+	 * @param parentHistograms		The histograms calculated for the node's parent in binned mode.
+	 * @param siblingHistograms		The histograms calculated for the node's sibling in binned mode.
+	 * @param siblingStart			The start (inclusive) of the sibling's range in the partition.
+	 * @param siblingEnd			The end (exclusive) of the sibling's range in the partition.
+	 */
+	public NodeToGrow(int start, int end, int depth, NodeNonTerminal parent, int childIndex, long creationOrder,
+			NodeHistograms histograms, NodeHistograms parentHistograms, NodeHistograms siblingHistograms, int siblingStart,
+			int siblingEnd)
+	{
+		this.start = start;
+		this.end = end;
+		this.depth = depth;
+		this.parent = parent;
+		this.childIndex = childIndex;
+		this.creationOrder = creationOrder;
+		this.histograms = histograms;
+		this.parentHistograms = parentHistograms;
+		this.siblingHistograms = siblingHistograms;
+		this.siblingStart = siblingStart;
+		this.siblingEnd = siblingEnd;
+	}
+
+}
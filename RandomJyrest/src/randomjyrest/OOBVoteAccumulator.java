@@ -0,0 +1,69 @@
+package randomjyrest;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Implements a tree consumer that accumulates the OOB predictions of a forest as it is streamed.
+ *
+ * Each tree adds the weight of its terminal nodes to the predictions of the observations that are OOB on it, so only the predictions
+ * are retained rather than the trees. As the trees are delivered in order, the predictions are the same as the OOB predictions of the
+ * forest grown in full.
+ */
+public class OOBVoteAccumulator extends TreeConsumer
+{
+
+	/**
+	 * The names of the classes in the training dataset, indexed by class id.
+	 */
+	private List<String> classNames;
+
+	/**
+	 * The values of the training observations, indexed by feature id and then by observation.
+	 */
+	private double[][] trainingData;
+
+	/**
+	 * The predicted weight of each class for each observation, indexed by class id and then by observation.
+	 */
+	private double[][] predictions;
+
+
+	@Override
+	public void start(String[] featureNames, String[] datasetFeatureNames, List<String> classNames, double[][] trainingData,
+			int[] observationClasses)
+	{
+		this.classNames = classNames;
+		this.trainingData = trainingData;
+		this.predictions = new double[classNames.size()][observationClasses.length];
+	}
+
+	@Override
+	public void consume(int treeIndex, CompiledTree tree, BitSet oobObservations)
+	{
+		tree.predict(this.trainingData, oobObservations, 0, oobObservations.length(), this.predictions);
+	}
+
+	@Override
+	public void finish()
+	{
+		this.trainingData = null;
+	}
+
+	/**
+	 * @return		A mapping from class names to the predicted weight of the class for each training observation. Observations that
+	 * 				were not OOB on any tree are given a weight of 0 for every class.
+	 */
+	public final Map<String, double[]> getPredictions()
+	{
+		Map<String, double[]> predictionMap = new HashMap<String, double[]>();
+		for (int i = 0; i < this.predictions.length; i++)
+		{
+			predictionMap.put(this.classNames.get(i), this.predictions[i]);
+		}
+		return predictionMap;
+	}
+
+}
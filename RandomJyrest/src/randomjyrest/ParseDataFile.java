@@ -0,0 +1,571 @@
+package randomjyrest;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Implements a single pass parser for tab separated data files.
+ *
+ * The file is read and tokenised in place by LineReader. No String is created for a numeric value; the bytes of the value are parsed
+ * directly into a primitive column buffer. Values made up
+ * of at most 15 significant digits with a decimal exponent of magnitude at most 22 (which covers almost every value written by
+ * numerical software) are converted exactly using a single floating point multiplication or division, as both the digits and the
+ * power of ten are then exactly representable as doubles. Any other value is passed to Double.parseDouble, so every value is parsed
+ * to the same double that Double.parseDouble would give.
+ *
+ * When the features used by a forest are given, the header is bound to them (see FeatureBinding) before any observation is read, and
+ * only the columns holding those features are parsed, so other columns need not be numeric.
+ *
+ * The column buffers are sized from an estimate of the number of lines in the file once the first observation has been read, and
+ * grown by doubling if the estimate is too small.
+ */
+public final class ParseDataFile extends LineReader
+{
+
+	/**
+	 * The name of the column that contains the class of the observations.
+	 */
+	private static final String CLASS_COLUMN_NAME = "Classification";
+
+	/**
+	 * The smallest number of observations to allocate space for in the column buffers.
+	 */
+	private static final int MINIMUM_COLUMN_CAPACITY = 1024;
+
+	/**
+	 * The maximum number of significant digits a value can have in order to be converted without calling Double.parseDouble.
+	 */
+	private static final int MAXIMUM_FAST_PATH_DIGITS = 15;
+
+	/**
+	 * The powers of ten that are exactly representable as doubles.
+	 */
+	private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14,
+		1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+	/**
+	 * The slot of the class column.
+	 */
+	private static final int COLUMN_CLASS = -2;
+
+	/**
+	 * The location of the file being parsed.
+	 */
+	private final String dataset;
+
+	/**
+	 * The size of the file in bytes.
+	 */
+	private final long fileSize;
+
+	/**
+	 * Whether the class column is parsed.
+	 */
+	private final boolean isClassRequired;
+
+	/**
+	 * The features that should not be kept.
+	 */
+	private final List<String> featuresToRemove;
+
+	/**
+	 * The features to bind the columns to, indexed by feature id, or null if every feature column not removed is kept.
+	 */
+	private final String[] featuresToBind;
+
+	/**
+	 * The names of the feature columns kept.
+	 */
+	private String[] featureNames;
+
+	/**
+	 * The column buffers, indexed by the order of the kept feature columns and then by observation.
+	 */
+	private double[][] featureData;
+
+	/**
+	 * The id of the class of each observation.
+	 */
+	private int[] observationClasses;
+
+	/**
+	 * The number of observations that space has been allocated for in the buffers.
+	 */
+	private int capacity = 0;
+
+	/**
+	 * The number of observations parsed.
+	 */
+	private int numberOfObservations = 0;
+
+	/**
+	 * The encoded names of the classes, indexed by class id.
+	 */
+	private final List<byte[]> encodedClassNames = new ArrayList<byte[]>();
+
+	/**
+	 * The names of the classes, indexed by class id.
+	 */
+	private final List<String> classNames = new ArrayList<String>();
+
+
+	/**
+	 * Parse a tab separated data file.
+	 *
+	 * The data file is expected to be tab separated with the first line containing the names of the features/columns. Lines
+	 * containing only whitespace are ignored, and leading and trailing whitespace is removed from all other lines. The values for the
+	 * features in the dataset are all assumed to be numeric.
+	 *
+	 * @param dataset			The location of the file containing the data to be parsed.
+	 * @param featuresToRemove	The features in the dataset that should be removed (not parsed).
+	 * @param isClassRequired	Whether the file must contain a column headed Classification that should be parsed. If false, any
+	 * 							Classification column is ignored.
+	 * @return					The parsed contents of the file.
+	 */
+	public static final ParsedDataFile main(String dataset, List<String> featuresToRemove, boolean isClassRequired)
+	{
+		return parse(dataset, featuresToRemove, isClassRequired, null);
+	}
+
+	/**
+	 * Parse the columns of a tab separated data file that hold the features used to grow a forest.
+	 *
+	 * The header is bound to the features before any observation is read, exiting if any feature has no column. Only the bound columns
+	 * are parsed, so the file may contain other columns (e.g. identifiers or notes) that are not numeric. The class column is ignored.
+	 *
+	 * @param dataset			The location of the file containing the data to be parsed.
+	 * @param featuresToRemove	The features in the dataset that should be removed (not bound).
+	 * @param featuresToBind	The features used to grow the forest, indexed by feature id.
+	 * @return					The parsed contents of the file, with the feature columns indexed by feature id.
+	 */
+	public static final ParsedDataFile main(String dataset, List<String> featuresToRemove, String[] featuresToBind)
+	{
+		return parse(dataset, featuresToRemove, false, featuresToBind);
+	}
+
+	/**
+	 * Parse a tab separated data file.
+	 *
+	 * @param dataset			The location of the file containing the data to be parsed.
+	 * @param featuresToRemove	The features in the dataset that should be removed (not parsed).
+	 * @param isClassRequired	Whether the file must contain a column headed Classification that should be parsed.
+	 * @param featuresToBind	The features to bind the columns to, or null if every feature column not removed is kept.
+	 * @return					The parsed contents of the file.
+	 */
+	private static final ParsedDataFile parse(String dataset, List<String> featuresToRemove, boolean isClassRequired,
+			String[] featuresToBind)
+	{
+		FileChannel channel = null;
+		ParseDataFile parser = null;
+		try
+		{
+			channel = FileChannel.open(Paths.get(dataset), StandardOpenOption.READ);
+			parser = new ParseDataFile(dataset, channel.size(), featuresToRemove, isClassRequired, featuresToBind);
+			parser.read(channel);
+		}
+		catch (IOException e)
+		{
+			// Caught an error while reading the file. Indicate this and exit.
+			System.out.println("An error occurred while parsing the input data file.");
+			e.printStackTrace();
+			System.exit(0);
+		}
+		catch (NumberFormatException e)
+		{
+			// Caught a value that is not a number. Indicate this and exit.
+			System.out.format("A non-numeric feature value was found on line %d of the input data file.\n", parser.getCurrentLineNumber());
+			e.printStackTrace();
+			System.exit(0);
+		}
+		finally
+		{
+			try
+			{
+				if (channel != null)
+				{
+					channel.close();
+				}
+			}
+			catch (IOException e)
+			{
+				// Caught an error while closing the file. Indicate this and exit.
+				System.out.println("An error occurred while closing the input data file.");
+				e.printStackTrace();
+				System.exit(0);
+			}
+		}
+
+		return parser.generateParsedFile();
+	}
+
+
+	/**
+	 * Class constructor for a parser.
+	 *
+	 * @param dataset			The location of the file being parsed.
+	 * @param fileSize			The size of the file in bytes.
+	 * @param featuresToRemove	The features in the dataset that should be removed (not parsed).
+	 * @param isClassRequired	Whether the class column should be parsed.
+	 * @param featuresToBind	The features to bind the columns to, or null if every feature column not removed is kept.
+	 */
+	private ParseDataFile(String dataset, long fileSize, List<String> featuresToRemove, boolean isClassRequired,
+			String[] featuresToBind)
+	{
+		this.dataset = dataset;
+		this.fileSize = fileSize;
+		this.featuresToRemove = featuresToRemove;
+		this.isClassRequired = isClassRequired;
+		this.featuresToBind = featuresToBind;
+	}
+
+	/**
+	 * Determine the columns to keep from the header of the file.
+	 *
+	 * Each feature column that is kept is stored in the column buffer whose index is its slot, and the class column has the slot
+	 * COLUMN_CLASS if it is parsed. If the columns are bound to features, the slot of each bound column is the feature id of its
+	 * feature.
+	 *
+	 * @param columnNames	The names of the columns, in the order that they appear in the header.
+	 * @return				The slot of each column.
+	 */
+	final int[] determineColumnSlots(String[] columnNames)
+	{
+		if (this.featuresToBind != null)
+		{
+			return this.bindColumnSlots(columnNames);
+		}
+
+		List<String> featuresToUse = new ArrayList<String>();
+		int[] slots = new int[columnNames.length];
+		boolean isClassColumnFound = false;
+		for (int i = 0; i < columnNames.length; i++)
+		{
+			String feature = columnNames[i];
+			slots[i] = COLUMN_NOT_KEPT;
+			if (feature.equals(CLASS_COLUMN_NAME))
+			{
+				// Record if the feature is actually the class column.
+				if (this.isClassRequired)
+				{
+					slots[i] = COLUMN_CLASS;
+					isClassColumnFound = true;
+				}
+			}
+			else if (!this.featuresToRemove.contains(feature))
+			{
+				// If the feature is not one to be removed, then record the column as one to extract data from.
+				slots[i] = featuresToUse.size();
+				featuresToUse.add(feature);
+			}
+		}
+
+		if (this.isClassRequired && !isClassColumnFound)
+		{
+			// No class column was provided.
+			System.out.println("No class column was provided. Please include a column headed Classification.");
+			System.exit(0);
+		}
+
+		this.featureNames = featuresToUse.toArray(new String[featuresToUse.size()]);
+		this.featureData = new double[this.featureNames.length][0];
+		this.observationClasses = new int[0];
+		return slots;
+	}
+
+	/**
+	 * Bind the columns to the features, failing before any observation is read if any feature has no column.
+	 *
+	 * @param columnNames	The names of the columns, in the order that they appear in the header.
+	 * @return				The slot of each column.
+	 */
+	private final int[] bindColumnSlots(String[] columnNames)
+	{
+		// The class column and the columns of the features removed can not be bound.
+		String[] columnsToBind = new String[columnNames.length];
+		for (int i = 0; i < columnNames.length; i++)
+		{
+			String feature = columnNames[i];
+			if (!feature.equals(CLASS_COLUMN_NAME) && !this.featuresToRemove.contains(feature))
+			{
+				columnsToBind[i] = feature;
+			}
+		}
+		FeatureBinding binding = new FeatureBinding(this.featuresToBind, columnsToBind);
+		binding.exitIfIncomplete("The dataset " + this.dataset);
+
+		this.featureNames = this.featuresToBind;
+		this.featureData = new double[this.featureNames.length][0];
+		this.observationClasses = new int[0];
+		return binding.determineColumnSlots(columnNames.length);
+	}
+
+	/**
+	 * Make room in the buffers for the next observation.
+	 *
+	 * @param lineLength	The length in bytes of the line holding the observation, counting one byte for its newline.
+	 */
+	final void startObservation(int lineLength)
+	{
+		if (this.numberOfObservations == this.capacity)
+		{
+			this.growBuffers(lineLength);
+		}
+	}
+
+	/**
+	 * Parse a value of the current observation into its column buffer, or determine the id of its class.
+	 *
+	 * @param slot		The index of the column buffer the value is stored in, or COLUMN_CLASS.
+	 * @param buffer	The buffer containing the value.
+	 * @param start		The index of the first byte of the value (inclusive).
+	 * @param end		The index of the last byte of the value (exclusive).
+	 */
+	final void parseValue(int slot, byte[] buffer, int start, int end)
+	{
+		if (slot >= 0)
+		{
+			this.featureData[slot][this.numberOfObservations] = parseDouble(buffer, start, end, FILE_CHARSET);
+		}
+		else
+		{
+			this.observationClasses[this.numberOfObservations] = this.determineClassId(buffer, start, end);
+		}
+	}
+
+	/**
+	 * Finish parsing the current observation.
+	 */
+	final void finishObservation()
+	{
+		this.numberOfObservations++;
+	}
+
+	/**
+	 * Grow the buffers to make room for more observations.
+	 *
+	 * The first time the buffers are grown, their size is estimated from the size of the file and the length of the first line.
+	 *
+	 * @param lineLength	The length of the line being parsed.
+	 */
+	private final void growBuffers(int lineLength)
+	{
+		long newCapacity;
+		if (this.capacity == 0)
+		{
+			newCapacity = Math.max(MINIMUM_COLUMN_CAPACITY, (this.fileSize / lineLength) + 1);
+		}
+		else
+		{
+			newCapacity = 2L * this.capacity;
+		}
+		this.capacity = (int) Math.min(Integer.MAX_VALUE - 8, newCapacity);
+
+		for (int i = 0; i < this.featureData.length; i++)
+		{
+			this.featureData[i] = Arrays.copyOf(this.featureData[i], this.capacity);
+		}
+		if (this.isClassRequired)
+		{
+			this.observationClasses = Arrays.copyOf(this.observationClasses, this.capacity);
+		}
+	}
+
+	/**
+	 * Determine the id of the class of an observation, giving the class the next available id if it has not been seen before.
+	 *
+	 * @param buffer	The buffer containing the class name.
+	 * @param start		The index of the first byte of the class name (inclusive).
+	 * @param end		The index of the last byte of the class name (exclusive).
+	 * @return			The id of the class.
+	 */
+	private final int determineClassId(byte[] buffer, int start, int end)
+	{
+		int length = end - start;
+		int numberOfClasses = this.encodedClassNames.size();
+		for (int c = 0; c < numberOfClasses; c++)
+		{
+			byte[] className = this.encodedClassNames.get(c);
+			if (className.length != length)
+			{
+				continue;
+			}
+			int i = 0;
+			while (i < length && className[i] == buffer[start + i])
+			{
+				i++;
+			}
+			if (i == length)
+			{
+				return c;
+			}
+		}
+
+		this.encodedClassNames.add(Arrays.copyOfRange(buffer, start, end));
+		this.classNames.add(new String(buffer, start, length, FILE_CHARSET));
+		return numberOfClasses;
+	}
+
+	/**
+	 * Generate the parsed file from the buffers, trimming the buffers to the number of observations.
+	 *
+	 * @return		The parsed contents of the file.
+	 */
+	private final ParsedDataFile generateParsedFile()
+	{
+		if (this.capacity != this.numberOfObservations)
+		{
+			for (int i = 0; i < this.featureData.length; i++)
+			{
+				this.featureData[i] = Arrays.copyOf(this.featureData[i], this.numberOfObservations);
+			}
+			if (this.isClassRequired)
+			{
+				this.observationClasses = Arrays.copyOf(this.observationClasses, this.numberOfObservations);
+			}
+		}
+		return new ParsedDataFile(this.featureNames, this.featureData, this.classNames.toArray(new String[this.classNames.size()]),
+				(this.isClassRequired ? this.observationClasses : null), this.numberOfObservations);
+	}
+
+	/**
+	 * Parse the bytes of a decimal number.
+	 *
+	 * @param buffer		The buffer containing the number.
+	 * @param start			The index of the first byte of the number (inclusive).
+	 * @param end			The index of the last byte of the number (exclusive).
+	 * @param fileCharset	The character set of the file, used when falling back to Double.parseDouble.
+	 * @return				The same double as Double.parseDouble would return for the number.
+	 */
+	static final double parseDouble(byte[] buffer, int start, int end, Charset fileCharset)
+	{
+		int i = start;
+		boolean isNegative = false;
+		if (i < end && (buffer[i] == '-' || buffer[i] == '+'))
+		{
+			isNegative = (buffer[i] == '-');
+			i++;
+		}
+
+		// Accumulate the significant digits of the number as an integer, and track the decimal exponent.
+		long significand = 0;
+		int numberOfSignificantDigits = 0;
+		int exponent = 0;
+		boolean isDigitFound = false;
+		while (i < end && buffer[i] >= '0' && buffer[i] <= '9')
+		{
+			int digit = buffer[i] - '0';
+			if (significand != 0 || digit != 0)
+			{
+				if (++numberOfSignificantDigits > MAXIMUM_FAST_PATH_DIGITS)
+				{
+					return fallbackParseDouble(buffer, start, end, fileCharset);
+				}
+				significand = (significand * 10) + digit;
+			}
+			isDigitFound = true;
+			i++;
+		}
+		if (i < end && buffer[i] == '.')
+		{
+			i++;
+			while (i < end && buffer[i] >= '0' && buffer[i] <= '9')
+			{
+				int digit = buffer[i] - '0';
+				if (significand != 0 || digit != 0)
+				{
+					if (++numberOfSignificantDigits > MAXIMUM_FAST_PATH_DIGITS)
+					{
+						return fallbackParseDouble(buffer, start, end, fileCharset);
+					}
+					significand = (significand * 10) + digit;
+				}
+				exponent--;
+				isDigitFound = true;
+				i++;
+			}
+		}
+		if (!isDigitFound)
+		{
+			return fallbackParseDouble(buffer, start, end, fileCharset);
+		}
+
+		// Parse the exponent if there is one.
+		if (i < end && (buffer[i] == 'e' || buffer[i] == 'E'))
+		{
+			i++;
+			boolean isExponentNegative = false;
+			if (i < end && (buffer[i] == '-' || buffer[i] == '+'))
+			{
+				isExponentNegative = (buffer[i] == '-');
+				i++;
+			}
+			int explicitExponent = 0;
+			boolean isExponentDigitFound = false;
+			while (i < end && buffer[i] >= '0' && buffer[i] <= '9')
+			{
+				if (explicitExponent < 100000)
+				{
+					explicitExponent = (explicitExponent * 10) + (buffer[i] - '0');
+				}
+				isExponentDigitFound = true;
+				i++;
+			}
+			if (!isExponentDigitFound)
+			{
+				return fallbackParseDouble(buffer, start, end, fileCharset);
+			}
+			exponent += (isExponentNegative ? -explicitExponent : explicitExponent);
+		}
+		if (i != end)
+		{
+			// There are characters that are not part of a plain decimal number (e.g. whitespace, NaN or a type suffix).
+			return fallbackParseDouble(buffer, start, end, fileCharset);
+		}
+
+		// Convert the number. Both the significand and the power of ten are exact, so the single rounding of the multiplication or
+		// division gives the correctly rounded result.
+		double value;
+		if (significand == 0)
+		{
+			value = 0.0;
+		}
+		else if (exponent == 0)
+		{
+			value = significand;
+		}
+		else if (exponent > 0 && exponent < POWERS_OF_TEN.length)
+		{
+			value = significand * POWERS_OF_TEN[exponent];
+		}
+		else if (exponent < 0 && -exponent < POWERS_OF_TEN.length)
+		{
+			value = significand / POWERS_OF_TEN[-exponent];
+		}
+		else
+		{
+			return fallbackParseDouble(buffer, start, end, fileCharset);
+		}
+		return isNegative ? -value : value;
+	}
+
+	/**
+	 * Parse the bytes of a number using Double.parseDouble.
+	 *
+	 * @param buffer		The buffer containing the number.
+	 * @param start			The index of the first byte of the number (inclusive).
+	 * @param end			The index of the last byte of the number (exclusive).
+	 * @param fileCharset	The character set of the file.
+	 * @return				The parsed number.
+	 */
+	private static final double fallbackParseDouble(byte[] buffer, int start, int end, Charset fileCharset)
+	{
+		return Double.parseDouble(new String(buffer, start, end - start, fileCharset));
+	}
+
+}
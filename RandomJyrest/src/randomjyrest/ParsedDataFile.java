@@ -0,0 +1,111 @@
+package randomjyrest;
+
+/**
+ * Implements a container for the contents of a tab separated data file, as generated by ParseDataFile.
+ *
+ * The values of each feature column kept are stored in a primitive array in the order that the observations appear in the file.
+ * Feature columns are indexed in the order that they appear in the file (or by feature id if they were bound to the features of a
+ * forest), and classes are given ids in the order that they are first
+ * encountered.
+ *
+ * Example:
+ * 		For the file
+ * 			F1	Classification	F2
+ * 			0.5	A	1
+ * 			0.2	B	4
+ * 			0.9	A	2
+ *
+ * 		getFeatureNames() is				["F1", "F2"]
+ * 		getFeatureData() is					[[0.5, 0.2, 0.9], [1, 4, 2]]
+ * 		getClassNames() is					["A", "B"]
+ * 		getObservationClasses() is			[0, 1, 0]
+ */
+public final class ParsedDataFile
+{
+
+	/**
+	 * The names of the feature columns that were kept, in the order that they appear in the file.
+	 */
+	private final String[] featureNames;
+
+	/**
+	 * The values of the observations for each feature column kept, indexed by column and then by observation.
+	 */
+	private final double[][] featureData;
+
+	/**
+	 * The names of the classes, indexed by class id. Empty if the class column was not parsed.
+	 */
+	private final String[] classNames;
+
+	/**
+	 * The id of the class of each observation. Null if the class column was not parsed.
+	 */
+	private final int[] observationClasses;
+
+	/**
+	 * The number of observations in the file.
+	 */
+	private final int numberOfObservations;
+
+
+	/**
+	 * Class constructor for a parsed data file.
+	 *
+	 * @param featureNames			The names of the feature columns kept.
+	 * @param featureData			The values of the observations for each feature column kept.
+	 * @param classNames			The names of the classes, indexed by class id.
+	 * @param observationClasses	The id of the class of each observation, or null if the class column was not parsed.
+	 * @param numberOfObservations	The number of observations in the file.
+	 */
+	public ParsedDataFile(String[] featureNames, double[][] featureData, String[] classNames, int[] observationClasses,
+			int numberOfObservations)
+	{
+		this.featureNames = featureNames;
+		this.featureData = featureData;
+		this.classNames = classNames;
+		this.observationClasses = observationClasses;
+		this.numberOfObservations = numberOfObservations;
+	}
+
+	/**
+	 * @return		The names of the feature columns kept, in the order that they appear in the file.
+	 */
+	public final String[] getFeatureNames()
+	{
+		return this.featureNames;
+	}
+
+	/**
+	 * @return		The values of the observations for each feature column kept, indexed by column and then by observation.
+	 */
+	public final double[][] getFeatureData()
+	{
+		return this.featureData;
+	}
+
+	/**
+	 * @return		The names of the classes, indexed by class id.
+	 */
+	public final String[] getClassNames()
+	{
+		return this.classNames;
+	}
+
+	/**
+	 * @return		The id of the class of each observation, or null if the class column was not parsed.
+	 */
+	public final int[] getObservationClasses()
+	{
+		return this.observationClasses;
+	}
+
+	/**
+	 * @return		The number of observations in the file.
+	 */
+	public final int getNumberOfObservations()
+	{
+		return this.numberOfObservations;
+	}
+
+}
@@ -0,0 +1,228 @@
+package randomjyrest;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Implements the calculation of the permutation importance of the features used to grow a forest.
+ *
+ * Each tree is handled by a separate task. A task predicts the observations that are OOB on its tree once using the original data,
+ * and then once for each feature the tree splits on with that feature's values permuted among the OOB observations. The permuted
+ * values are written into a buffer that is reused for every feature, and are substituted for the original values while walking the
+ * tree, so the dataset is never copied or modified. A tree that does not split on a feature makes the same predictions whether or
+ * not the feature is permuted, and therefore contributes no change in quality for it.
+ *
+ * The permutations are generated from a seed for each tree. The tree's seed seeds a generator that is split once for each feature
+ * id in order, and the generator for a feature is used to permute that feature's values. The permutation of a feature on a tree
+ * therefore depends only on the tree's seed and the feature id. The changes in quality are summed over the trees in the order that
+ * the trees appear in the forest, so the result is the same for a given set of seeds regardless of the number of threads used.
+ */
+public final class PermutationImportance
+{
+
+	/**
+	 * Calculate the importance of each feature used to grow a forest.
+	 *
+	 * The quality of a tree's predictions is measured by the G mean of the predictions of the observations that are OOB on it.
+	 *
+	 * @param forest				The trees of the forest.
+	 * @param oobObservations		The observations that are OOB on each tree, with the bit for each OOB observation set.
+	 * @param datasetToPredict		The values of the training observations, indexed by feature id and then by observation.
+	 * @param observationClasses	The id of the class of each training observation.
+	 * @param numberOfClasses		The number of classes the forest was trained on.
+	 * @param permutationSeeds		The seed to use for generating the permutations for each tree.
+	 * @param numberOfThreads		The number of threads to use.
+	 * @return						The importance of each feature, indexed by feature id. This is the average over all trees of the
+	 * 								decrease in G mean caused by permuting the feature.
+	 */
+	public static final double[] main(List<CompiledTree> forest, List<BitSet> oobObservations, final double[][] datasetToPredict,
+			final int[] observationClasses, final int numberOfClasses, long[] permutationSeeds, int numberOfThreads)
+	{
+		final int numberOfFeatures = datasetToPredict.length;
+		int numberOfTrees = forest.size();
+
+		// Create the tasks that calculate the change in quality for each tree.
+		List<Callable<double[]>> importanceTasks = new ArrayList<Callable<double[]>>(numberOfTrees);
+		for (int i = 0; i < numberOfTrees; i++)
+		{
+			final CompiledTree tree = forest.get(i);
+			final BitSet oobOnTree = oobObservations.get(i);
+			final long permutationSeed = permutationSeeds[i];
+			importanceTasks.add(new Callable<double[]>()
+				{
+					public double[] call()
+					{
+						return calculateQualityChanges(tree, oobOnTree, datasetToPredict, observationClasses, numberOfClasses,
+								numberOfFeatures, permutationSeed);
+					}
+				});
+		}
+
+		// Sum the changes in quality over the trees in order.
+		double[] variableImportance = new double[numberOfFeatures];
+		final ExecutorService importancePool = Executors.newFixedThreadPool(Math.max(1, numberOfThreads));
+		try
+		{
+			List<Future<double[]>> futureChanges = new ArrayList<Future<double[]>>(numberOfTrees);
+			for (Callable<double[]> task : importanceTasks)
+			{
+				futureChanges.add(importancePool.submit(task));
+			}
+			for (Future<double[]> f : futureChanges)
+			{
+				double[] qualityChanges = f.get();
+				for (int j = 0; j < numberOfFeatures; j++)
+				{
+					variableImportance[j] += qualityChanges[j];
+				}
+			}
+		}
+		catch (ExecutionException e)
+		{
+			System.out.println("Error in a variable importance thread.");
+			e.printStackTrace();
+			System.exit(0);
+		}
+		catch (InterruptedException e)
+		{
+			// Interrupted the thread, so exit the program.
+			System.out.println("Variable importance interruption received.");
+			e.printStackTrace();
+			System.exit(0);
+		}
+		finally
+		{
+			importancePool.shutdown();
+		}
+
+		for (int j = 0; j < numberOfFeatures; j++)
+		{
+			variableImportance[j] /= numberOfTrees;
+		}
+		return variableImportance;
+	}
+
+
+	/**
+	 * Calculate the change in the quality of a tree's OOB predictions caused by permuting each feature.
+	 *
+	 * @param tree					The tree.
+	 * @param oobObservations		The observations that are OOB on the tree, with the bit for each OOB observation set.
+	 * @param datasetToPredict		The values of the training observations, indexed by feature id and then by observation.
+	 * @param observationClasses	The id of the class of each training observation.
+	 * @param numberOfClasses		The number of classes the forest was trained on.
+	 * @param numberOfFeatures		The number of features used to grow the forest.
+	 * @param permutationSeed		The seed to use for generating the permutations.
+	 * @return						The decrease in G mean caused by permuting each feature, indexed by feature id.
+	 */
+	static final double[] calculateQualityChanges(CompiledTree tree, BitSet oobObservations, double[][] datasetToPredict,
+			int[] observationClasses, int numberOfClasses, int numberOfFeatures, long permutationSeed)
+	{
+		// Determine the indices of the OOB observations in ascending order.
+		int numberOfOOB = oobObservations.cardinality();
+		int[] oobOnTree = new int[numberOfOOB];
+		int currentInsertionIndex = 0;
+		for (int j = oobObservations.nextSetBit(0); j != -1; j = oobObservations.nextSetBit(j + 1))
+		{
+			oobOnTree[currentInsertionIndex] = j;
+			currentInsertionIndex++;
+		}
+		double[] qualityChanges = new double[numberOfFeatures];
+
+		// Determine the number of OOB observations in each class, and the quality of the unpermuted predictions.
+		int[] oobClassCounts = new int[numberOfClasses];
+		int[] correctPredictions = new int[numberOfClasses];
+		for (int i = 0; i < numberOfOOB; i++)
+		{
+			int observation = oobOnTree[i];
+			int observationClass = observationClasses[observation];
+			oobClassCounts[observationClass]++;
+			if (predictedClass(tree, tree.findLeaf(datasetToPredict, observation)) == observationClass)
+			{
+				correctPredictions[observationClass]++;
+			}
+		}
+		double baseQuality = calculateGMean(correctPredictions, oobClassCounts);
+
+		// Determine the change in quality caused by permuting each feature that the tree splits on.
+		boolean[] featuresUsed = new boolean[numberOfFeatures];
+		tree.markFeaturesUsed(featuresUsed);
+		double[] permutedValues = new double[numberOfOOB];
+		SplittableRandom treeRNG = new SplittableRandom(permutationSeed);
+		for (int j = 0; j < numberOfFeatures; j++)
+		{
+			// Split the generator for every feature, so that the permutation of a feature does not depend on which other features
+			// the tree splits on.
+			SplittableRandom featureRNG = treeRNG.split();
+			if (!featuresUsed[j])
+			{
+				continue;
+			}
+
+			// Permute the values of the feature among the OOB observations.
+			PermuteData.main(oobOnTree, datasetToPredict[j], permutedValues, featureRNG);
+
+			// Predict the OOB observations using the permuted values.
+			for (int c = 0; c < numberOfClasses; c++)
+			{
+				correctPredictions[c] = 0;
+			}
+			for (int i = 0; i < numberOfOOB; i++)
+			{
+				int observation = oobOnTree[i];
+				int observationClass = observationClasses[observation];
+				int leaf = tree.findLeaf(datasetToPredict, observation, j, permutedValues[i]);
+				if (predictedClass(tree, leaf) == observationClass)
+				{
+					correctPredictions[observationClass]++;
+				}
+			}
+			qualityChanges[j] = baseQuality - calculateGMean(correctPredictions, oobClassCounts);
+		}
+
+		return qualityChanges;
+	}
+
+	/**
+	 * Determine the class that a terminal node predicts.
+	 *
+	 * As in PredictionAnalysis, a class is only predicted if it is given a weight greater than 0.
+	 *
+	 * @param tree	The tree.
+	 * @param leaf	The leaf index of the terminal node.
+	 * @return		The id of the predicted class, or -1 if no class is predicted.
+	 */
+	private static final int predictedClass(CompiledTree tree, int leaf)
+	{
+		return (tree.getLeafWeight(leaf) > 0.0) ? tree.getLeafClass(leaf) : -1;
+	}
+
+	/**
+	 * Calculate the G mean of a set of predictions.
+	 *
+	 * This gives the same value as PredictionAnalysis.calculateGMean for a confusion matrix containing every class.
+	 *
+	 * @param correctPredictions	The number of observations of each class that were correctly predicted.
+	 * @param classCounts			The number of observations of each class that were predicted.
+	 * @return						The G mean of the predictions.
+	 */
+	private static final double calculateGMean(int[] correctPredictions, int[] classCounts)
+	{
+		int numberOfClasses = classCounts.length;
+		double gMean = 1.0;
+		for (int c = 0; c < numberOfClasses; c++)
+		{
+			double recall = ((double) correctPredictions[c]) / classCounts[c];
+			gMean *= recall;
+		}
+		return Math.pow(gMean, (1.0 / numberOfClasses));
+	}
+
+}
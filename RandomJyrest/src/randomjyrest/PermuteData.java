@@ -1,9 +1,6 @@
 package randomjyrest;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.Set;
+import java.util.SplittableRandom;
 
 /**
  * Implements the ability to permute the values of a feature in a dataset.
@@ -12,42 +9,39 @@ public class PermuteData
 {
 
 	/**
-	 * Generate a permutation of a feature's observation data.
+	 * Generate a reproducible permutation of the values of a feature for a subset of the observations.
+	 * 
+	 * The values of the feature for the observations being permuted are shuffled between each other (using a Fisher-Yates shuffle)
+	 * and written into permutedValues, with the value for the observation at position i in observationsToPermute being written to
+	 * permutedValues[i]. The feature's values are not modified. The same random number generator state always gives the same
+	 * permutation.
 	 * 
 	 * Example:
 	 * 		Original data is			[a, b, c, d, e] (featureValues)
 	 * 		Indices to permute is		[1, 3, 4]		(observationsToPermute)
 	 * 		Re-ordered indices are		[4, 3, 1]
-	 * 		Permuted data is			[a, e, c, d, b]	(return)
+	 * 		Permuted values are			[e, d, b]		(permutedValues)
 	 * 
-	 * @param observationsToPermute		The indices of the features values that should be permuted.
+	 * @param observationsToPermute		The indices of the observations whose values should be permuted.
 	 * @param featureValues				The feature values.
-	 * @return							An array of the permuted observation data for the feature.
+	 * @param permutedValues			The array to write the permuted values to. Must be at least as long as observationsToPermute.
+	 * @param permutationRNG			The random number generator to use for the permutation.
 	 */
-	public static final double[] main(Set<Integer> observationsToPermute, double[] featureValues)
+	public static final void main(int[] observationsToPermute, double[] featureValues, double[] permutedValues,
+			SplittableRandom permutationRNG)
 	{
-		// Permute the indices.
-		List<Integer> originalIndices = new ArrayList<Integer>(observationsToPermute);
-		List<Integer> permutedIndices = new ArrayList<Integer>(observationsToPermute);
-		Collections.shuffle(permutedIndices);
-		
-		// Make a copy of the data that is to be permuted.
-		double[] permutedFeatureData = new double[featureValues.length];
-		for (int i = 0; i < featureValues.length; i++)
+		int numberOfObservations = observationsToPermute.length;
+		for (int i = 0; i < numberOfObservations; i++)
 		{
-			permutedFeatureData[i] = featureValues[i];
+			permutedValues[i] = featureValues[observationsToPermute[i]];
 		}
-		
-		// Permute the data.
-		int numberOfObservations = originalIndices.size();
-		for (int i = 0; i < numberOfObservations; i++)
+		for (int i = numberOfObservations - 1; i > 0; i--)
 		{
-			int observationIndex = originalIndices.get(i);
-			double permutedValue = permutedFeatureData[permutedIndices.get(i)];
-			permutedFeatureData[observationIndex] = permutedValue;
+			int swapIndex = permutationRNG.nextInt(i + 1);
+			double swapValue = permutedValues[i];
+			permutedValues[i] = permutedValues[swapIndex];
+			permutedValues[swapIndex] = swapValue;
 		}
-
-		return permutedFeatureData;
 	}
 
 }
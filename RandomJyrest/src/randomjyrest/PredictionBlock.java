@@ -0,0 +1,57 @@
+package randomjyrest;
+
+/**
+ * Implements a block of consecutive observations read from a dataset that is being predicted as it is streamed (see StreamPrediction).
+ */
+public class PredictionBlock
+{
+
+	/**
+	 * The block that marks the end of the dataset.
+	 */
+	static final PredictionBlock END_OF_DATASET = new PredictionBlock(0, 0, false);
+
+	/**
+	 * The values of the observations in the block, indexed by the feature ids of the forest and then by position in the block.
+	 */
+	final double[][] featureData;
+
+	/**
+	 * The identifier of each observation in the block, or null if the observations are identified by their position in the dataset.
+	 */
+	final String[] identifiers;
+
+	/**
+	 * The maximum number of observations in the block.
+	 */
+	final int capacity;
+
+	/**
+	 * The number of observations in the block.
+	 */
+	int numberOfObservations = 0;
+
+
+	/**
+	 * Class constructor for an empty block.
+	 *
+	 * @param numberOfFeatures	The number of features used by the forest.
+	 * @param blockSize			The maximum number of observations in the block.
+	 * @param isIdentified		Whether the identifier of each observation is recorded.
+	 */
+	PredictionBlock(int numberOfFeatures, int blockSize, boolean isIdentified)
+	{
+		this.featureData = new double[numberOfFeatures][blockSize];
+		this.identifiers = (isIdentified ? new String[blockSize] : null);
+		this.capacity = blockSize;
+	}
+
+	/**
+	 * @return		Whether the block holds as many observations as it can.
+	 */
+	final boolean isFull()
+	{
+		return this.numberOfObservations == this.capacity;
+	}
+
+}
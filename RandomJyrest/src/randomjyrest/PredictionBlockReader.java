@@ -0,0 +1,180 @@
+package randomjyrest;
+
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Implements the reading of a dataset that is being predicted as it is streamed into blocks of observations (see StreamPrediction).
+ *
+ * Only the columns of the features used by the forest, and of the identifier if one is given, are parsed. Each block is put on a
+ * queue as soon as it is full, so the reading can run ahead of the prediction by as many blocks as the queue holds.
+ */
+public final class PredictionBlockReader extends LineReader
+{
+
+	/**
+	 * The slot of the identifier column.
+	 */
+	private static final int COLUMN_IDENTIFIER = -2;
+
+	/**
+	 * The location of the file containing the data to be predicted.
+	 */
+	private final String dataset;
+
+	/**
+	 * The features used to grow the forest, indexed by the feature ids used in the trees.
+	 */
+	private final String[] featureNames;
+
+	/**
+	 * The name of the column identifying each observation, or null if there is none.
+	 */
+	private final String identifierColumn;
+
+	/**
+	 * The number of observations in each block.
+	 */
+	private final int blockSize;
+
+	/**
+	 * The queue to put the blocks on.
+	 */
+	private final BlockingQueue<PredictionBlock> blocksRead;
+
+	/**
+	 * The block being filled, or null if no observation has been read since the last block was put on the queue.
+	 */
+	private PredictionBlock block = null;
+
+
+	/**
+	 * Class constructor for a block reader.
+	 *
+	 * @param dataset			The location of the file containing the data to be predicted.
+	 * @param featureNames		The features used to grow the forest, indexed by the feature ids used in the trees.
+	 * @param identifierColumn	The name of the column identifying each observation, or null if there is none.
+	 * @param blockSize			The number of observations in each block.
+	 * @param blocksRead		The queue to put the blocks on.
+	 */
+	PredictionBlockReader(String dataset, String[] featureNames, String identifierColumn, int blockSize,
+			BlockingQueue<PredictionBlock> blocksRead)
+	{
+		this.dataset = dataset;
+		this.featureNames = featureNames;
+		this.identifierColumn = identifierColumn;
+		this.blockSize = blockSize;
+		this.blocksRead = blocksRead;
+	}
+
+	/**
+	 * Put the last, partially filled, block on the queue followed by PredictionBlock.END_OF_DATASET, once the whole file has been read.
+	 */
+	final void finish()
+	{
+		if (this.block != null && this.block.numberOfObservations > 0)
+		{
+			this.putBlock(this.block);
+		}
+		this.putBlock(PredictionBlock.END_OF_DATASET);
+	}
+
+	/**
+	 * Determine the columns of the dataset that contain the features used by the forest and the identifier of the observations.
+	 *
+	 * The slot of each feature column is the feature id of the feature.
+	 *
+	 * @param columnNames	The names of the columns, in the order that they appear in the header.
+	 * @return				The slot of each column.
+	 */
+	final int[] determineColumnSlots(String[] columnNames)
+	{
+		// Bind the columns to the features used to grow the forest, failing before any observation is read if any are missing.
+		FeatureBinding binding = new FeatureBinding(this.featureNames, columnNames);
+		binding.exitIfIncomplete("The dataset " + this.dataset);
+
+		int[] slots = binding.determineColumnSlots(columnNames.length);
+		if (this.identifierColumn != null)
+		{
+			int identifierIndex = Arrays.asList(columnNames).indexOf(this.identifierColumn);
+			if (identifierIndex == -1)
+			{
+				System.out.format("The dataset %s contains no column headed %s.\n", this.dataset, this.identifierColumn);
+				System.exit(0);
+			}
+			if (slots[identifierIndex] == COLUMN_NOT_KEPT)
+			{
+				// A column that holds a feature used by the forest is parsed as that feature.
+				slots[identifierIndex] = COLUMN_IDENTIFIER;
+			}
+		}
+		return slots;
+	}
+
+	/**
+	 * Start a new block if there is no block being filled.
+	 *
+	 * @param lineLength	The length in bytes of the line holding the observation, counting one byte for its newline.
+	 */
+	final void startObservation(int lineLength)
+	{
+		if (this.block == null)
+		{
+			this.block = new PredictionBlock(this.featureNames.length, this.blockSize, this.identifierColumn != null);
+		}
+	}
+
+	/**
+	 * Parse a value of the current observation into the next position of the block.
+	 *
+	 * @param slot		The feature id of the column the value is in, or COLUMN_IDENTIFIER.
+	 * @param buffer	The buffer containing the value.
+	 * @param start		The index of the first byte of the value (inclusive).
+	 * @param end		The index of the last byte of the value (exclusive).
+	 */
+	final void parseValue(int slot, byte[] buffer, int start, int end)
+	{
+		if (slot >= 0)
+		{
+			this.block.featureData[slot][this.block.numberOfObservations] = ParseDataFile.parseDouble(buffer, start, end, FILE_CHARSET);
+		}
+		else
+		{
+			this.block.identifiers[this.block.numberOfObservations] = new String(buffer, start, end - start, FILE_CHARSET);
+		}
+	}
+
+	/**
+	 * Finish reading the current observation, putting the block on the queue if it is full.
+	 */
+	final void finishObservation()
+	{
+		this.block.numberOfObservations++;
+		if (this.block.isFull())
+		{
+			this.putBlock(this.block);
+			this.block = null;
+		}
+	}
+
+	/**
+	 * Put a block on the queue, waiting for space on it if necessary.
+	 *
+	 * @param blockRead		The block to put on the queue.
+	 */
+	private final void putBlock(PredictionBlock blockRead)
+	{
+		try
+		{
+			this.blocksRead.put(blockRead);
+		}
+		catch (InterruptedException e)
+		{
+			// Interrupted the thread, so exit the program.
+			System.out.println("Reader interruption received.");
+			e.printStackTrace();
+			System.exit(0);
+		}
+	}
+
+}
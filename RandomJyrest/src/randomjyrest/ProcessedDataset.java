@@ -0,0 +1,150 @@
+package randomjyrest;
+
+/**
+ * Implements a columnar record of a processed dataset used to grow a random forest.
+ *
+ * Features and classes are identified by dense integer ids. The id of a feature is its index in getFeatureNames(), and the id of a
+ * class is its index in getClassNames(). The names are only needed when the results of growing the forest are reported, so all
+ * lookups made while growing a tree are plain array accesses.
+ *
+ * Example:
+ * 		The values of a feature, F, with id 0 in the input file are		[4, 7, 2, 8, 3, 4]
+ * 		The classes of the observations are								[A, B, B, C, A, C]
+ * 		The weights for the observations are							[3, 2, 7, 4, 1, 1]
+ *
+ * 		getSortedFeatureData()[0] is									[2, 3, 4, 4, 7, 8]	(sorted observation values)
+ * 		getSortedFeatureIndices()[0] is									[2, 4, 0, 5, 1, 3]	(the original indices of the sorted values)
+ * 		getClassNames() is												[A, B, C]
+ * 		getObservationClasses() is										[0, 1, 1, 2, 0, 2]
+ * 		getClassWeights()[0] is											[3, 0, 0, 0, 1, 0]	(each observation's weight for class A)
+ * 		getClassWeights()[1] is											[0, 2, 7, 0, 0, 0]	(each observation's weight for class B)
+ * 		getClassWeights()[2] is											[0, 0, 0, 4, 0, 1]	(each observation's weight for class C)
+ */
+public class ProcessedDataset
+{
+
+	/**
+	 * The names of the features in the dataset, indexed by feature id.
+	 */
+	private final String[] featureNames;
+
+	/**
+	 * The names of the classes in the dataset, indexed by class id.
+	 */
+	private final String[] classNames;
+
+	/**
+	 * The values of each feature sorted in ascending order, indexed by feature id.
+	 */
+	private final double[][] sortedFeatureData;
+
+	/**
+	 * The original indices of the values in sortedFeatureData, indexed by feature id.
+	 */
+	private final int[][] sortedFeatureIndices;
+
+	/**
+	 * The weight of each observation for each class, indexed by class id and then by the original index of the observation.
+	 */
+	private final double[][] classWeights;
+
+	/**
+	 * The id of the class of each observation, indexed by the original index of the observation.
+	 */
+	private final int[] observationClasses;
+
+
+	/**
+	 * Class constructor for a processed dataset.
+	 *
+	 * @param featureNames			The names of the features in the dataset, indexed by feature id.
+	 * @param classNames			The names of the classes in the dataset, indexed by class id.
+	 * @param sortedFeatureData		The values of each feature sorted in ascending order, indexed by feature id.
+	 * @param sortedFeatureIndices	The original indices of the values in sortedFeatureData, indexed by feature id.
+	 * @param classWeights			The weight of each observation for each class, indexed by class id.
+	 * @param observationClasses	The id of the class of each observation.
+	 */
+	public ProcessedDataset(String[] featureNames, String[] classNames, double[][] sortedFeatureData, int[][] sortedFeatureIndices,
+			double[][] classWeights, int[] observationClasses)
+	{
+		this.featureNames = featureNames;
+		this.classNames = classNames;
+		this.sortedFeatureData = sortedFeatureData;
+		this.sortedFeatureIndices = sortedFeatureIndices;
+		this.classWeights = classWeights;
+		this.observationClasses = observationClasses;
+	}
+
+	/**
+	 * @return		The names of the features, indexed by feature id.
+	 */
+	public final String[] getFeatureNames()
+	{
+		return this.featureNames;
+	}
+
+	/**
+	 * @return		The names of the classes, indexed by class id.
+	 */
+	public final String[] getClassNames()
+	{
+		return this.classNames;
+	}
+
+	/**
+	 * @return		The values of each feature sorted in ascending order, indexed by feature id.
+	 */
+	public final double[][] getSortedFeatureData()
+	{
+		return this.sortedFeatureData;
+	}
+
+	/**
+	 * @return		The original indices of the sorted feature values, indexed by feature id.
+	 */
+	public final int[][] getSortedFeatureIndices()
+	{
+		return this.sortedFeatureIndices;
+	}
+
+	/**
+	 * @return		The weight of each observation for each class, indexed by class id.
+	 */
+	public final double[][] getClassWeights()
+	{
+		return this.classWeights;
+	}
+
+	/**
+	 * @return		The id of the class of each observation.
+	 */
+	public final int[] getObservationClasses()
+	{
+		return this.observationClasses;
+	}
+
+	/**
+	 * @return		The number of features in the dataset.
+	 */
+	public final int getNumberOfFeatures()
+	{
+		return this.featureNames.length;
+	}
+
+	/**
+	 * @return		The number of classes in the dataset.
+	 */
+	public final int getNumberOfClasses()
+	{
+		return this.classNames.length;
+	}
+
+	/**
+	 * @return		The number of observations in the dataset.
+	 */
+	public final int getNumberOfObservations()
+	{
+		return this.observationClasses.length;
+	}
+
+}
@@ -0,0 +1,329 @@
+package randomjyrest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Implements the saving of a grown forest to a file, so that it can be reloaded (see LoadForest) rather than regrown.
+ *
+ * The file is binary and big-endian. Every array is written as a contiguous block of primitives, and every block of doubles or longs
+ * starts at an offset that is a multiple of 8, so the file can be memory mapped and each array read with a single bulk get. The file
+ * is laid out as:
+ *
+ * 		int			magic number (0x524A4652, "RJFR")
+ * 		int			format version
+ * 		int			flags (FLAG_OOB_OBSERVATIONS is set if the OOB observations of each tree are saved)
+ * 		int			number of trees
+ * 		int			number of classes
+ * 		int			number of features used to grow the forest
+ * 		int			number of observations in the training dataset
+ * 		int			number of strings in the string table
+ * 		int			mtry used to grow the forest
+ * 		long		seed used to grow the forest
+ * 		long		fingerprint of the observation weights used to grow the forest (see Forest.fingerprintWeights)
+ * 		string table, with each string written as an int byte length followed by its UTF-8 bytes
+ * 		int			string index of the location of the training dataset (-1 if not known)
+ * 		int[]		string index of the name of each feature used, indexed by feature id
+ * 		int[]		string index of the name of each class, indexed by class id
+ * 		int			number of features removed from the training dataset
+ * 		int[]		string index of the name of each feature removed
+ * 		padding to a multiple of 8 bytes
+ * 		tree directory, with a long offset of the tree's block, an int number of nodes and an int number of leaves for each tree
+ * 		tree blocks, each made up of the double[] split values, double[] leaf class weights, int[] split features and int[] right
+ * 			child or leaf indices of the tree (see CompiledTree)
+ * 		int[]		class id of each observation in the training dataset, followed by padding to a multiple of 8 bytes
+ * 		long[]		if FLAG_OOB_OBSERVATIONS is set, the words of the OOB observations of each tree (see BitSet.toLongArray), with
+ * 					(number of observations + 63) / 64 words for every tree
+ *
+ * As the size of every block is recorded before it, the offset of any tree or OOB record can be calculated without reading the blocks
+ * before it. The class and weight of each terminal node are not saved, as they are determined from the class weights of the node.
+ */
+public final class SaveForest
+{
+
+	/**
+	 * The magic number that starts every saved forest.
+	 */
+	static final int MAGIC_NUMBER = 0x524A4652;
+
+	/**
+	 * The version of the file format written.
+	 */
+	static final int FORMAT_VERSION = 1;
+
+	/**
+	 * The flag that is set when the OOB observations of each tree are saved.
+	 */
+	static final int FLAG_OOB_OBSERVATIONS = 1;
+
+	/**
+	 * The number of bytes in the fixed size header at the start of the file.
+	 */
+	static final int HEADER_SIZE = 52;
+
+	/**
+	 * The number of bytes in the directory entry of each tree.
+	 */
+	static final int TREE_DIRECTORY_ENTRY_SIZE = 16;
+
+	/**
+	 * The encoding of the strings in the string table.
+	 */
+	static final Charset STRING_ENCODING = Charset.forName("UTF-8");
+
+
+	/**
+	 * Save a grown forest to a file.
+	 *
+	 * @param forest			The forest to save.
+	 * @param location			The location of the file to save the forest to. Any existing file is overwritten.
+	 * @param isSaveOOB			Whether the OOB observations of each tree should be saved. They are needed for OOB predictions and
+	 * 							variable importance to be calculated with the loaded forest, but take one bit per training
+	 * 							observation for every tree.
+	 */
+	public static final void main(Forest forest, String location, boolean isSaveOOB)
+	{
+		forest.checkTreesRetained();
+		if (isSaveOOB && forest.getOOBObservations() == null)
+		{
+			System.out.println("The OOB observations of the forest can not be saved as they are not known.");
+			System.exit(0);
+		}
+
+		FileChannel channel = null;
+		try
+		{
+			channel = FileChannel.open(Paths.get(location), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+					StandardOpenOption.WRITE);
+			write(forest, channel, isSaveOOB);
+		}
+		catch (IOException e)
+		{
+			// Caught an error while writing the file. Indicate this and exit.
+			System.out.println("An error occurred while saving the forest.");
+			e.printStackTrace();
+			System.exit(0);
+		}
+		finally
+		{
+			try
+			{
+				if (channel != null)
+				{
+					channel.close();
+				}
+			}
+			catch (IOException e)
+			{
+				// Caught an error while closing the file. Indicate this and exit.
+				System.out.println("An error occurred while closing the saved forest file.");
+				e.printStackTrace();
+				System.exit(0);
+			}
+		}
+	}
+
+	/**
+	 * Write a forest to a file.
+	 *
+	 * @param forest		The forest to save.
+	 * @param channel		The channel to write the forest to, positioned at the start of the file.
+	 * @param isSaveOOB		Whether the OOB observations of each tree should be saved.
+	 * @throws IOException
+	 */
+	private static final void write(Forest forest, FileChannel channel, boolean isSaveOOB) throws IOException
+	{
+		List<CompiledTree> trees = forest.getTrees();
+		String[] featureNames = forest.getFeaturesInTrainingSet();
+		List<String> classNames = forest.getClassesInTrainingSet();
+		List<String> featuresRemoved = forest.getFeaturesRemoved();
+		int[] observationClasses = forest.getObservationClassesInTrainingSet();
+		int numberOfTrees = trees.size();
+		int numberOfClasses = classNames.size();
+		int numberOfObservations = observationClasses.length;
+
+		// Build the string table, with each distinct string recorded once.
+		Map<String, Integer> stringTable = new LinkedHashMap<String, Integer>();
+		int trainingDatasetIndex = (forest.getTrainingDataset() == null) ? -1 :
+			addToStringTable(forest.getTrainingDataset(), stringTable);
+		int[] featureNameIndices = new int[featureNames.length];
+		for (int i = 0; i < featureNames.length; i++)
+		{
+			featureNameIndices[i] = addToStringTable(featureNames[i], stringTable);
+		}
+		int[] classNameIndices = new int[numberOfClasses];
+		for (int i = 0; i < numberOfClasses; i++)
+		{
+			classNameIndices[i] = addToStringTable(classNames.get(i), stringTable);
+		}
+		int[] featuresRemovedIndices = new int[featuresRemoved.size()];
+		for (int i = 0; i < featuresRemovedIndices.length; i++)
+		{
+			featuresRemovedIndices[i] = addToStringTable(featuresRemoved.get(i), stringTable);
+		}
+		byte[][] encodedStrings = new byte[stringTable.size()][];
+		int stringTableSize = 0;
+		int currentString = 0;
+		for (String s : stringTable.keySet())
+		{
+			encodedStrings[currentString] = s.getBytes(STRING_ENCODING);
+			stringTableSize += 4 + encodedStrings[currentString].length;
+			currentString++;
+		}
+
+		// Write the header, string table and names.
+		int metadataSize = (int) alignToWord(HEADER_SIZE + stringTableSize + 4 * (2 + featureNames.length + numberOfClasses +
+				featuresRemovedIndices.length));
+		ByteBuffer buffer = ByteBuffer.allocate(metadataSize);
+		buffer.putInt(MAGIC_NUMBER);
+		buffer.putInt(FORMAT_VERSION);
+		buffer.putInt(isSaveOOB ? FLAG_OOB_OBSERVATIONS : 0);
+		buffer.putInt(numberOfTrees);
+		buffer.putInt(numberOfClasses);
+		buffer.putInt(featureNames.length);
+		buffer.putInt(numberOfObservations);
+		buffer.putInt(encodedStrings.length);
+		buffer.putInt(forest.getMtry());
+		buffer.putLong(forest.getSeed());
+		buffer.putLong(forest.getWeightsFingerprint());
+		for (byte[] encodedString : encodedStrings)
+		{
+			buffer.putInt(encodedString.length);
+			buffer.put(encodedString);
+		}
+		buffer.putInt(trainingDatasetIndex);
+		buffer.asIntBuffer().put(featureNameIndices);
+		buffer.position(buffer.position() + 4 * featureNameIndices.length);
+		buffer.asIntBuffer().put(classNameIndices);
+		buffer.position(buffer.position() + 4 * classNameIndices.length);
+		buffer.putInt(featuresRemovedIndices.length);
+		buffer.asIntBuffer().put(featuresRemovedIndices);
+		buffer.position(buffer.capacity());
+		writeBuffer(buffer, channel);
+
+		// Write the tree directory. The blocks of the trees follow it in order.
+		buffer = ByteBuffer.allocate(numberOfTrees * TREE_DIRECTORY_ENTRY_SIZE);
+		long treeOffset = metadataSize + buffer.capacity();
+		for (CompiledTree tree : trees)
+		{
+			int numberOfNodes = tree.getSplitFeatures().length;
+			int numberOfLeaves = tree.getLeafClassWeights().length / numberOfClasses;
+			buffer.putLong(treeOffset);
+			buffer.putInt(numberOfNodes);
+			buffer.putInt(numberOfLeaves);
+			treeOffset += treeBlockSize(numberOfNodes, numberOfLeaves, numberOfClasses);
+		}
+		writeBuffer(buffer, channel);
+
+		// Write the trees.
+		for (CompiledTree tree : trees)
+		{
+			int[] splitFeatures = tree.getSplitFeatures();
+			double[] leafClassWeights = tree.getLeafClassWeights();
+			buffer = ByteBuffer.allocate((int) treeBlockSize(splitFeatures.length, leafClassWeights.length / numberOfClasses,
+					numberOfClasses));
+			buffer.asDoubleBuffer().put(tree.getSplitValues());
+			buffer.position(buffer.position() + 8 * splitFeatures.length);
+			buffer.asDoubleBuffer().put(leafClassWeights);
+			buffer.position(buffer.position() + 8 * leafClassWeights.length);
+			buffer.asIntBuffer().put(splitFeatures);
+			buffer.position(buffer.position() + 4 * splitFeatures.length);
+			buffer.asIntBuffer().put(tree.getRightChildOrLeaf());
+			buffer.position(buffer.capacity());
+			writeBuffer(buffer, channel);
+		}
+
+		// Write the classes of the training observations.
+		buffer = ByteBuffer.allocate((int) alignToWord(4L * numberOfObservations));
+		buffer.asIntBuffer().put(observationClasses);
+		buffer.position(buffer.capacity());
+		writeBuffer(buffer, channel);
+
+		// Write the OOB observations of each tree, padding the words of each to the same length.
+		if (isSaveOOB)
+		{
+			int numberOfWords = oobWordsPerTree(numberOfObservations);
+			buffer = ByteBuffer.allocate(8 * numberOfWords);
+			for (BitSet oobObservations : forest.getOOBObservations())
+			{
+				buffer.clear();
+				long[] words = oobObservations.toLongArray();
+				buffer.asLongBuffer().put(words);
+				buffer.position(buffer.capacity());
+				writeBuffer(buffer, channel);
+			}
+		}
+	}
+
+	/**
+	 * Add a string to the string table if it is not already in it.
+	 *
+	 * @param s				The string to add.
+	 * @param stringTable	A mapping from the strings in the table to their indices.
+	 * @return				The index of the string in the table.
+	 */
+	private static final int addToStringTable(String s, Map<String, Integer> stringTable)
+	{
+		Integer index = stringTable.get(s);
+		if (index == null)
+		{
+			index = stringTable.size();
+			stringTable.put(s, index);
+		}
+		return index;
+	}
+
+	/**
+	 * Write the contents of a buffer, from its start to its position, to a channel.
+	 *
+	 * @param buffer	The buffer to write.
+	 * @param channel	The channel to write the buffer to.
+	 * @throws IOException
+	 */
+	private static final void writeBuffer(ByteBuffer buffer, FileChannel channel) throws IOException
+	{
+		buffer.flip();
+		while (buffer.hasRemaining())
+		{
+			channel.write(buffer);
+		}
+	}
+
+	/**
+	 * @param numberOfBytes		A number of bytes.
+	 * @return					The smallest multiple of 8 that is not less than numberOfBytes.
+	 */
+	static final long alignToWord(long numberOfBytes)
+	{
+		return (numberOfBytes + 7L) & ~7L;
+	}
+
+	/**
+	 * @param numberOfNodes		The number of nodes in a tree.
+	 * @param numberOfLeaves	The number of leaves in the tree.
+	 * @param numberOfClasses	The number of classes in the forest.
+	 * @return					The number of bytes in the block of the tree. This is always a multiple of 8.
+	 */
+	static final long treeBlockSize(int numberOfNodes, int numberOfLeaves, int numberOfClasses)
+	{
+		return 16L * numberOfNodes + 8L * numberOfLeaves * numberOfClasses;
+	}
+
+	/**
+	 * @param numberOfObservations	The number of observations in the training dataset.
+	 * @return						The number of words recorded for the OOB observations of each tree.
+	 */
+	static final int oobWordsPerTree(int numberOfObservations)
+	{
+		return (numberOfObservations + 63) / 64;
+	}
+
+}
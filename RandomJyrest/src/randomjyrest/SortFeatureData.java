@@ -0,0 +1,216 @@
+package randomjyrest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Implements the sorting of the values of each feature in a dataset, alongside the original indices of the sorted values.
+ *
+ * Each feature is sorted with a least significant digit radix sort on the bits of its values, carrying the original index of each
+ * value as a payload. No object is created per value, and the sort is stable, so values that are equal keep the order that their
+ * observations appear in the dataset (as Collections.sort of IndexedDoubleData does). As with IndexedDoubleData, 0.0 and -0.0 are
+ * treated as equal.
+ */
+public final class SortFeatureData
+{
+
+	/**
+	 * The number of bits of the key sorted in each pass of the radix sort.
+	 */
+	private static final int RADIX_BITS = 8;
+
+	/**
+	 * The number of buckets in each pass of the radix sort.
+	 */
+	private static final int RADIX = 1 << RADIX_BITS;
+
+	/**
+	 * The number of passes needed to sort a 64 bit key.
+	 */
+	private static final int NUMBER_OF_PASSES = Long.SIZE / RADIX_BITS;
+
+
+	/**
+	 * Sorts the values of every feature in a dataset.
+	 *
+	 * The features are divided between the threads, with each thread reusing its own sorting buffers for all of its features.
+	 *
+	 * @param featureData			The values of the observations for each feature, in the order that the observations appear in the dataset.
+	 * @param sortedFeatureData		The array to fill with the values of each feature sorted in ascending order.
+	 * @param sortedFeatureIndices	The array to fill with the original indices of the sorted values of each feature.
+	 * @param numberOfThreads		The number of threads to use for sorting.
+	 */
+	public static final void main(final double[][] featureData, final double[][] sortedFeatureData, final int[][] sortedFeatureIndices,
+			int numberOfThreads)
+	{
+		final int numberOfFeatures = featureData.length;
+		final int numberOfTasks = Math.max(1, Math.min(numberOfThreads, numberOfFeatures));
+
+		List<Callable<Void>> sortTasks = new ArrayList<Callable<Void>>(numberOfTasks);
+		for (int t = 0; t < numberOfTasks; t++)
+		{
+			final int firstFeature = t;
+			sortTasks.add(new Callable<Void>()
+			{
+				public Void call()
+				{
+					long[] keys = null;
+					long[] keyBuffer = null;
+					int[] indexBuffer = null;
+					for (int j = firstFeature; j < numberOfFeatures; j += numberOfTasks)
+					{
+						double[] values = featureData[j];
+						int numberOfObservations = values.length;
+						if (keys == null || keys.length < numberOfObservations)
+						{
+							keys = new long[numberOfObservations];
+							keyBuffer = new long[numberOfObservations];
+							indexBuffer = new int[numberOfObservations];
+						}
+						double[] sortedValues = new double[numberOfObservations];
+						int[] sortedIndices = new int[numberOfObservations];
+						sortFeature(values, sortedValues, sortedIndices, keys, keyBuffer, indexBuffer);
+						sortedFeatureData[j] = sortedValues;
+						sortedFeatureIndices[j] = sortedIndices;
+					}
+					return null;
+				}
+			});
+		}
+
+		if (numberOfTasks == 1)
+		{
+			// Sort on the calling thread.
+			try
+			{
+				sortTasks.get(0).call();
+			}
+			catch (Exception e)
+			{
+				System.out.println("Error while sorting the feature data.");
+				e.printStackTrace();
+				System.exit(0);
+			}
+			return;
+		}
+
+		final ExecutorService sortPool = Executors.newFixedThreadPool(numberOfTasks);
+		try
+		{
+			for (Future<Void> f : sortPool.invokeAll(sortTasks))
+			{
+				f.get();
+			}
+		}
+		catch (ExecutionException e)
+		{
+			System.out.println("Error in a feature sorting thread.");
+			e.printStackTrace();
+			System.exit(0);
+		}
+		catch (InterruptedException e)
+		{
+			// Interrupted the thread, so exit the program.
+			System.out.println("Feature sorting interruption received.");
+			e.printStackTrace();
+			System.exit(0);
+		}
+		finally
+		{
+			sortPool.shutdown();
+		}
+	}
+
+	/**
+	 * Sorts the values of one feature.
+	 *
+	 * Each value is mapped to a 64 bit key whose unsigned order is the numeric order of the values. The keys are then sorted one byte at
+	 * a time from the least significant byte, skipping any byte that is the same for every key (e.g. the exponent bytes of features
+	 * with a narrow range of values).
+	 *
+	 * @param values			The values of the feature, in the order that the observations appear in the dataset.
+	 * @param sortedValues		The array to fill with the values sorted in ascending order.
+	 * @param sortedIndices		The array to fill with the original indices of the sorted values.
+	 * @param keys				A buffer with at least as many entries as there are values.
+	 * @param keyBuffer			A buffer with at least as many entries as there are values.
+	 * @param indexBuffer		A buffer with at least as many entries as there are values.
+	 */
+	static final void sortFeature(double[] values, double[] sortedValues, int[] sortedIndices, long[] keys, long[] keyBuffer,
+			int[] indexBuffer)
+	{
+		int numberOfObservations = values.length;
+		if (numberOfObservations == 0)
+		{
+			return;
+		}
+
+		// Generate the keys and count the occurrences of each byte value in each pass.
+		int[][] byteCounts = new int[NUMBER_OF_PASSES][RADIX];
+		for (int i = 0; i < numberOfObservations; i++)
+		{
+			double value = values[i];
+			long bits = Double.doubleToLongBits(value == 0.0 ? 0.0 : value);  // Map -0.0 to 0.0 so the two are equal.
+			long key = bits ^ ((bits >> 63) | Long.MIN_VALUE);  // Flip all bits of negative values, and the sign bit of positive ones.
+			keys[i] = key;
+			sortedIndices[i] = i;
+			for (int p = 0; p < NUMBER_OF_PASSES; p++)
+			{
+				byteCounts[p][(int) (key >>> (p * RADIX_BITS)) & (RADIX - 1)]++;
+			}
+		}
+
+		// Perform the passes, alternating between the output arrays and the buffers.
+		long[] sourceKeys = keys;
+		int[] sourceIndices = sortedIndices;
+		long[] targetKeys = keyBuffer;
+		int[] targetIndices = indexBuffer;
+		int[] bucketStarts = new int[RADIX];
+		for (int p = 0; p < NUMBER_OF_PASSES; p++)
+		{
+			int[] counts = byteCounts[p];
+			int shift = p * RADIX_BITS;
+			if (counts[(int) (sourceKeys[0] >>> shift) & (RADIX - 1)] == numberOfObservations)
+			{
+				// Every key has the same value for this byte, so the pass would not change the order.
+				continue;
+			}
+
+			int start = 0;
+			for (int b = 0; b < RADIX; b++)
+			{
+				bucketStarts[b] = start;
+				start += counts[b];
+			}
+			for (int i = 0; i < numberOfObservations; i++)
+			{
+				long key = sourceKeys[i];
+				int position = bucketStarts[(int) (key >>> shift) & (RADIX - 1)]++;
+				targetKeys[position] = key;
+				targetIndices[position] = sourceIndices[i];
+			}
+
+			long[] swapKeys = sourceKeys;
+			sourceKeys = targetKeys;
+			targetKeys = swapKeys;
+			int[] swapIndices = sourceIndices;
+			sourceIndices = targetIndices;
+			targetIndices = swapIndices;
+		}
+		if (sourceIndices != sortedIndices)
+		{
+			System.arraycopy(sourceIndices, 0, sortedIndices, 0, numberOfObservations);
+		}
+
+		// Record the original values in sorted order.
+		for (int i = 0; i < numberOfObservations; i++)
+		{
+			sortedValues[i] = values[sortedIndices[i]];
+		}
+	}
+
+}
@@ -0,0 +1,91 @@
+package randomjyrest;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Implements a benchmark of the memory allocated by the split search.
+ *
+ * The split search is run repeatedly over the root node of a tree grown from a dataset (with every observation in bag once) until
+ * the JIT compiler has warmed up, and the number of bytes allocated by the current thread is then measured over a further set of
+ * searches. Once warmed up the split search should allocate nothing.
+ */
+public class SplitAllocationBenchmark
+{
+
+	/**
+	 * Run the benchmark.
+	 *
+	 * @param args		The location of the dataset, followed optionally by a comma separated list of the features to remove, the
+	 * 					value of mtry and the number of searches to measure.
+	 */
+	public static void main(String[] args)
+	{
+		String dataset = args[0];
+		List<String> featuresToRemove = new ArrayList<String>();
+		if (args.length > 1 && args[1].length() > 0)
+		{
+			featuresToRemove.addAll(Arrays.asList(args[1].split(",")));
+		}
+		int mtry = (args.length > 2 ? Integer.parseInt(args[2]) : 10);
+		int numberOfSearches = (args.length > 3 ? Integer.parseInt(args[3]) : 10000);
+
+		// Set up a tree's worth of growth state with every observation in bag once.
+		ProcessedDataset processedData = ProcessDataset.main(dataset, featuresToRemove, new double[0]);
+		int numberOfObservations = processedData.getNumberOfObservations();
+		int[] inBagObservations = new int[numberOfObservations];
+		Arrays.fill(inBagObservations, 1);
+		NodePartition partition = new NodePartition(processedData, inBagObservations, numberOfObservations);
+		SplitScratch scratch = new SplitScratch(processedData.getNumberOfClasses());
+		int numberOfFeatures = processedData.getNumberOfFeatures();
+		int[] featureOrder = new int[numberOfFeatures];
+		for (int i = 0; i < numberOfFeatures; i++)
+		{
+			featureOrder[i] = i;
+		}
+		int numVarsToSelect = Math.min(numberOfFeatures, mtry);
+
+		// Warm up the split search.
+		for (int i = 0; i < numberOfSearches; i++)
+		{
+			rotateFeatures(featureOrder);
+			FindBestSplit.main(processedData, partition, inBagObservations, featureOrder, numVarsToSelect, 0, numberOfObservations,
+					scratch);
+		}
+
+		// Measure the allocation made by the split search.
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+		long bytesBefore = threadBean.getThreadAllocatedBytes(threadId);
+		long startTime = System.nanoTime();
+		for (int i = 0; i < numberOfSearches; i++)
+		{
+			rotateFeatures(featureOrder);
+			FindBestSplit.main(processedData, partition, inBagObservations, featureOrder, numVarsToSelect, 0, numberOfObservations,
+					scratch);
+		}
+		long timeTaken = System.nanoTime() - startTime;
+		long bytesAllocated = threadBean.getThreadAllocatedBytes(threadId) - bytesBefore;
+
+		System.out.format("Observations - %d, features - %d, mtry - %d, searches - %d\n", numberOfObservations, numberOfFeatures,
+				numVarsToSelect, numberOfSearches);
+		System.out.format("Bytes allocated - %d (%.3f per search)\n", bytesAllocated, (double) bytesAllocated / numberOfSearches);
+		System.out.format("Time per search - %.3f microseconds\n", (timeTaken / 1000.0) / numberOfSearches);
+	}
+
+
+	/**
+	 * Rotate the feature ids by one position, so that successive searches evaluate different candidate features.
+	 *
+	 * @param featureOrder	The feature ids.
+	 */
+	private static void rotateFeatures(int[] featureOrder)
+	{
+		int firstFeature = featureOrder[0];
+		System.arraycopy(featureOrder, 1, featureOrder, 0, featureOrder.length - 1);
+		featureOrder[featureOrder.length - 1] = firstFeature;
+	}
+
+}
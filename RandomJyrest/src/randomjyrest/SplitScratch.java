@@ -0,0 +1,285 @@
+package randomjyrest;
+
+import java.util.Arrays;
+
+/**
+ * Implements the reusable scratch space used when searching for the best split of a node.
+ *
+ * A single instance is created for each tree when its growth starts, and is then reused for every node and every candidate feature
+ * in the tree. The split search therefore performs no allocation once the tree's growth is under way. An instance must only be used
+ * by one thread at a time.
+ *
+ * In binned mode the arrays of the bin histograms are taken from a pool held by the scratch space of the tree, and returned to it once
+ * the histograms are no longer needed (see NodeHistograms), so the histograms of nodes that have been grown are reused by the nodes
+ * grown after them. The pool is shared by every scratch space created from the tree's, and may be used by several threads at once.
+ */
+public class SplitScratch
+{
+
+	/**
+	 * The weight of each class in the node being split, indexed by class id.
+	 */
+	final double[] parentClassWeights;
+
+	/**
+	 * The running weight of each class in the left child of the split being evaluated, indexed by class id.
+	 */
+	final double[] leftChildClassWeights;
+
+	/**
+	 * The weight of each class in the right child of the split being evaluated, indexed by class id.
+	 */
+	final double[] rightChildClassWeights;
+
+	/**
+	 * The running weight of the first class in the left child for each split in a block, when the dataset contains two classes.
+	 */
+	final double[] leftChildClass0Weights = new double[BinarySplitKernel.BLOCK_SIZE];
+
+	/**
+	 * The running weight of the second class in the left child for each split in a block, when the dataset contains two classes.
+	 */
+	final double[] leftChildClass1Weights = new double[BinarySplitKernel.BLOCK_SIZE];
+
+	/**
+	 * The score of each split in a block, when the dataset contains two classes.
+	 */
+	final double[] splitScores = new double[BinarySplitKernel.BLOCK_SIZE];
+
+	/**
+	 * The position in the partition of the observation immediately before each split in a block, when the dataset contains two
+	 * classes.
+	 */
+	final int[] splitPositions = new int[BinarySplitKernel.BLOCK_SIZE];
+
+	/**
+	 * The weight of each observation for its class multiplied by the number of times it is in bag, indexed by the original index of
+	 * the observation. Calculated when first needed by a dataset with two classes, as the in bag observations are fixed for a tree.
+	 */
+	private double[] inBagWeights;
+
+	/**
+	 * The value of the feature to use for the best split found by the most recent search.
+	 */
+	double splitValue;
+
+	/**
+	 * The impurity of the best split found by the most recent search.
+	 */
+	double splitImpurity;
+
+	/**
+	 * The highest bin going to the left child for the best split found by the most recent search in binned mode.
+	 */
+	int splitBin;
+
+	/**
+	 * Space used to sort the observations of small nodes by their bin in binned mode. Allocated when first needed.
+	 */
+	long[] binnedObservations;
+
+	/**
+	 * The scratch space holding the pool of histogram arrays, which is this one unless it was created from a template.
+	 */
+	private final SplitScratch histogramPool;
+
+	/**
+	 * The pooled arrays of the weight of each class in each bin.
+	 */
+	private double[][] pooledClassWeights = new double[4][];
+
+	/**
+	 * The number of arrays in pooledClassWeights.
+	 */
+	private int numberOfPooledClassWeights = 0;
+
+	/**
+	 * The pooled arrays of the number of unique observations in each bin.
+	 */
+	private int[][] pooledObservationCounts = new int[4][];
+
+	/**
+	 * The number of arrays in pooledObservationCounts.
+	 */
+	private int numberOfPooledObservationCounts = 0;
+
+
+	/**
+	 * Class constructor for the scratch space.
+	 *
+	 * @param numberOfClasses	The number of classes in the dataset the tree is being grown from.
+	 */
+	public SplitScratch(int numberOfClasses)
+	{
+		this.parentClassWeights = new double[numberOfClasses];
+		this.leftChildClassWeights = new double[numberOfClasses];
+		this.rightChildClassWeights = new double[numberOfClasses];
+		this.histogramPool = this;
+	}
+
+	/**
+	 * Class constructor for scratch space to be used by another thread growing the same tree.
+	 *
+	 * The in bag weights of the observations are shared with the template if it has calculated them, as they are only read once
+	 * calculated.
+	 *
+	 * @param template	The scratch space of the tree.
+	 */
+	public SplitScratch(SplitScratch template)
+	{
+		this.parentClassWeights = new double[template.parentClassWeights.length];
+		this.leftChildClassWeights = new double[template.parentClassWeights.length];
+		this.rightChildClassWeights = new double[template.parentClassWeights.length];
+		this.inBagWeights = template.inBagWeights;
+		this.histogramPool = template.histogramPool;
+	}
+
+	/**
+	 * Get the weight of each observation for its class multiplied by the number of times it is in bag.
+	 *
+	 * @param classData				The weight of each observation for each class, indexed by class id and then by the original
+	 * 								index of the observation.
+	 * @param observationClasses	The id of the class of each observation.
+	 * @param inBagObservations		The number of times each observation in the dataset is in bag.
+	 * @return						The in bag weight of each observation, indexed by the original index of the observation.
+	 */
+	final double[] getInBagWeights(double[][] classData, int[] observationClasses, int[] inBagObservations)
+	{
+		if (this.inBagWeights == null)
+		{
+			int numberOfObservations = inBagObservations.length;
+			this.inBagWeights = new double[numberOfObservations];
+			for (int j = 0; j < numberOfObservations; j++)
+			{
+				int classOfObs = observationClasses[j];
+				this.inBagWeights[j] = classData[classOfObs][j] * inBagObservations[j];
+			}
+		}
+		return this.inBagWeights;
+	}
+
+	/**
+	 * Take an array for the weight of each class in each bin of a histogram from the pool, allocating one if none large enough is pooled.
+	 *
+	 * @param length	The number of entries needed (number of bins * number of classes).
+	 * @return			An array whose first length entries are 0.
+	 */
+	final double[] takeHistogramClassWeights(int length)
+	{
+		return this.histogramPool.popClassWeights(length);
+	}
+
+	/**
+	 * Take an array for the number of unique observations in each bin of a histogram from the pool, allocating one if none large enough
+	 * is pooled.
+	 *
+	 * @param length	The number of bins.
+	 * @return			An array whose first length entries are 0.
+	 */
+	final int[] takeHistogramObservationCounts(int length)
+	{
+		return this.histogramPool.popObservationCounts(length);
+	}
+
+	/**
+	 * Return the arrays of a histogram that is no longer needed to the pool.
+	 *
+	 * @param classWeights			The weight of each class in each bin.
+	 * @param observationCounts		The number of unique observations in each bin.
+	 */
+	final void recycleHistogram(double[] classWeights, int[] observationCounts)
+	{
+		this.histogramPool.pushHistogram(classWeights, observationCounts);
+	}
+
+	/**
+	 * @param length	The number of entries needed.
+	 * @return			A pooled or newly allocated array whose first length entries are 0.
+	 */
+	private final synchronized double[] popClassWeights(int length)
+	{
+		// Take the most recently pooled array that is large enough, moving the last array in the pool into its place.
+		int position = this.numberOfPooledClassWeights - 1;
+		while (position >= 0 && this.pooledClassWeights[position].length < length)
+		{
+			position--;
+		}
+		if (position == -1)
+		{
+			return new double[length];
+		}
+		double[] classWeights = this.pooledClassWeights[position];
+		this.numberOfPooledClassWeights--;
+		this.pooledClassWeights[position] = this.pooledClassWeights[this.numberOfPooledClassWeights];
+		this.pooledClassWeights[this.numberOfPooledClassWeights] = null;
+		Arrays.fill(classWeights, 0, length, 0.0);
+		return classWeights;
+	}
+
+	/**
+	 * @param length	The number of entries needed.
+	 * @return			A pooled or newly allocated array whose first length entries are 0.
+	 */
+	private final synchronized int[] popObservationCounts(int length)
+	{
+		// Take the most recently pooled array that is large enough, moving the last array in the pool into its place.
+		int position = this.numberOfPooledObservationCounts - 1;
+		while (position >= 0 && this.pooledObservationCounts[position].length < length)
+		{
+			position--;
+		}
+		if (position == -1)
+		{
+			return new int[length];
+		}
+		int[] observationCounts = this.pooledObservationCounts[position];
+		this.numberOfPooledObservationCounts--;
+		this.pooledObservationCounts[position] = this.pooledObservationCounts[this.numberOfPooledObservationCounts];
+		this.pooledObservationCounts[this.numberOfPooledObservationCounts] = null;
+		Arrays.fill(observationCounts, 0, length, 0);
+		return observationCounts;
+	}
+
+	/**
+	 * @param classWeights			The weight of each class in each bin.
+	 * @param observationCounts		The number of unique observations in each bin.
+	 */
+	private final synchronized void pushHistogram(double[] classWeights, int[] observationCounts)
+	{
+		if (this.numberOfPooledClassWeights == this.pooledClassWeights.length)
+		{
+			this.pooledClassWeights = Arrays.copyOf(this.pooledClassWeights, this.pooledClassWeights.length * 2);
+		}
+		this.pooledClassWeights[this.numberOfPooledClassWeights++] = classWeights;
+		if (this.numberOfPooledObservationCounts == this.pooledObservationCounts.length)
+		{
+			this.pooledObservationCounts = Arrays.copyOf(this.pooledObservationCounts, this.pooledObservationCounts.length * 2);
+		}
+		this.pooledObservationCounts[this.numberOfPooledObservationCounts++] = observationCounts;
+	}
+
+	/**
+	 * @return		The value of the feature to use for the best split found by the most recent search.
+	 */
+	public final double getSplitValue()
+	{
+		return this.splitValue;
+	}
+
+	/**
+	 * @return		The impurity of the best split found by the most recent search.
+	 */
+	public final double getSplitImpurity()
+	{
+		return this.splitImpurity;
+	}
+
+	/**
+	 * @return		The highest bin going to the left child for the best split found by the most recent search in binned mode.
+	 */
+	public final int getSplitBin()
+	{
+		return this.splitBin;
+	}
+
+}
@@ -0,0 +1,202 @@
+package randomjyrest;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Implements the prediction of a dataset that is streamed from a file in blocks of observations, so that datasets larger than the
+ * memory available can be predicted.
+ *
+ * A reader thread parses the file into blocks of a fixed number of observations (see PredictionBlockReader), and hands each block
+ * to the predicting thread through a queue holding at most BLOCKS_READ_AHEAD blocks. The predicting thread predicts each block on every tree and writes the
+ * predictions to the output file before taking the next block, so reading the file overlaps with predicting and the memory used is
+ * bounded by the block size rather than the size of the file. The blocks are all predicted on the same pool of threads. Only the
+ * columns of the features used by the forest (and of the identifier, if one is given) are parsed, and any other columns are ignored.
+ *
+ * The output file is tab separated, with a header line naming the identifier column and the classes, followed by one line for each
+ * observation giving its identifier and the predicted weight of each class. The weights are the same as those given by
+ * Forest.predict, as each observation is predicted on the trees in the same order.
+ */
+public final class StreamPrediction
+{
+
+	/**
+	 * The number of blocks that the reader thread can read before they are predicted.
+	 */
+	private static final int BLOCKS_READ_AHEAD = 2;
+
+	/**
+	 * The name given to the identifier column of the output when observations are identified by their position in the dataset.
+	 */
+	private static final String POSITION_COLUMN_NAME = "Observation";
+
+
+	/**
+	 * Predict the observations in a dataset file, writing the predictions to a file as they are made.
+	 *
+	 * @param forest				The trees of the forest.
+	 * @param featureNames			The features used to grow the forest, indexed by the feature ids used in the trees.
+	 * @param classNames			The classes the forest was trained on, indexed by the class ids used in the trees.
+	 * @param dataset				The location of the file containing the data to be predicted.
+	 * @param identifierColumn		The name of the column identifying each observation (e.g. UPAccession), or null if the
+	 * 								observations should be identified by their position in the dataset (starting from 0).
+	 * @param outputLocation		The location of the file to write the predictions to.
+	 * @param blockSize				The number of observations in each block.
+	 * @param numberOfThreads		The number of threads to use for predicting each block.
+	 */
+	public static final void main(List<CompiledTree> forest, final String[] featureNames, List<String> classNames,
+			final String dataset, final String identifierColumn, String outputLocation, final int blockSize, int numberOfThreads)
+	{
+		if (blockSize < 1)
+		{
+			System.out.format("The block size must be at least 1. The value supplied was %d.\n", blockSize);
+			System.exit(0);
+		}
+
+		// Start reading the dataset.
+		final BlockingQueue<PredictionBlock> blocksRead = new ArrayBlockingQueue<PredictionBlock>(BLOCKS_READ_AHEAD);
+		Thread readerThread = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					readBlocks(dataset, featureNames, identifierColumn, blockSize, blocksRead);
+				}
+			}, "prediction-reader");
+		readerThread.setDaemon(true);
+		readerThread.start();
+
+		// Predict each block as it is read, and write out its predictions.
+		int numberOfClasses = classNames.size();
+		ExecutorService predictionPool = (numberOfThreads > 1) ? Executors.newFixedThreadPool(numberOfThreads) : null;
+		BufferedWriter predictionWriter = null;
+		try
+		{
+			predictionWriter = new BufferedWriter(new FileWriter(outputLocation));
+			predictionWriter.write(identifierColumn == null ? POSITION_COLUMN_NAME : identifierColumn);
+			for (String s : classNames)
+			{
+				predictionWriter.write("\t");
+				predictionWriter.write(s);
+			}
+			predictionWriter.newLine();
+
+			long observationsPredicted = 0;
+			PredictionBlock block;
+			while ((block = blocksRead.take()) != PredictionBlock.END_OF_DATASET)
+			{
+				double[][] predictions = ForestPrediction.predict(forest, block.featureData, block.numberOfObservations,
+						numberOfClasses, numberOfThreads, predictionPool);
+				for (int i = 0; i < block.numberOfObservations; i++)
+				{
+					predictionWriter.write(block.identifiers == null ? Long.toString(observationsPredicted + i) :
+						block.identifiers[i]);
+					for (int c = 0; c < numberOfClasses; c++)
+					{
+						predictionWriter.write("\t");
+						predictionWriter.write(Double.toString(predictions[c][i]));
+					}
+					predictionWriter.newLine();
+				}
+				observationsPredicted += block.numberOfObservations;
+			}
+		}
+		catch (IOException e)
+		{
+			// Caught an error while writing the predictions. Indicate this and exit.
+			System.out.println("An error occurred while writing the predictions.");
+			e.printStackTrace();
+			System.exit(0);
+		}
+		catch (InterruptedException e)
+		{
+			// Interrupted the thread, so exit the program.
+			System.out.println("Prediction interruption received.");
+			e.printStackTrace();
+			System.exit(0);
+		}
+		finally
+		{
+			if (predictionPool != null)
+			{
+				predictionPool.shutdown();
+			}
+			try
+			{
+				if (predictionWriter != null)
+				{
+					predictionWriter.close();
+				}
+			}
+			catch (IOException e)
+			{
+				// Caught an error while closing the file. Indicate this and exit.
+				System.out.println("An error occurred while closing the predictions file.");
+				e.printStackTrace();
+				System.exit(0);
+			}
+		}
+	}
+
+	/**
+	 * Read a dataset file into blocks of observations, ending with PredictionBlock.END_OF_DATASET.
+	 *
+	 * @param dataset			The location of the file containing the data to be predicted.
+	 * @param featureNames		The features used to grow the forest, indexed by the feature ids used in the trees.
+	 * @param identifierColumn	The name of the column identifying each observation, or null if there is none.
+	 * @param blockSize			The number of observations in each block.
+	 * @param blocksRead		The queue to put the blocks on.
+	 */
+	private static final void readBlocks(String dataset, String[] featureNames, String identifierColumn, int blockSize,
+			BlockingQueue<PredictionBlock> blocksRead)
+	{
+		FileChannel channel = null;
+		PredictionBlockReader reader = new PredictionBlockReader(dataset, featureNames, identifierColumn, blockSize, blocksRead);
+		try
+		{
+			channel = FileChannel.open(Paths.get(dataset), StandardOpenOption.READ);
+			reader.read(channel);
+			reader.finish();
+		}
+		catch (IOException e)
+		{
+			// Caught an error while reading the file. Indicate this and exit.
+			System.out.println("An error occurred while reading the input data file.");
+			e.printStackTrace();
+			System.exit(0);
+		}
+		catch (NumberFormatException e)
+		{
+			// Caught a value that is not a number. Indicate this and exit.
+			System.out.format("A non-numeric feature value was found on line %d of the input data file.\n", reader.getCurrentLineNumber());
+			e.printStackTrace();
+			System.exit(0);
+		}
+		finally
+		{
+			try
+			{
+				if (channel != null)
+				{
+					channel.close();
+				}
+			}
+			catch (IOException e)
+			{
+				// Caught an error while closing the file. Indicate this and exit.
+				System.out.println("An error occurred while closing the input data file.");
+				e.printStackTrace();
+				System.exit(0);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,246 @@
+package randomjyrest;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Implements a fork-join task that grows the subtree below a node of a tree.
+ *
+ * The nodes of the subtree are grown depth-first. When a node is split, both of its children are evaluated straight away, the left
+ * child first, and the subtree of any child with at least the minimum number of observations to fork is grown by a new task, so that
+ * idle threads in the pool can steal it. As every node selects its candidate features with its own random number generator, seeded
+ * from that of its parent, and the histograms of sibling nodes are always calculated in the same order, the subtree grown is the same
+ * however its nodes are divided between tasks.
+ */
+public class SubtreeGrower extends RecursiveAction
+{
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The tree being grown.
+	 */
+	private Tree tree;
+
+	/**
+	 * The root of the subtree. Once grown, it is attached to its parent.
+	 */
+	private NodeToGrow subtreeRoot;
+
+	/**
+	 * The processed dataset containing the sorted feature values and class weights.
+	 */
+	private ProcessedDataset dataset;
+
+	/**
+	 * The binned feature data of the dataset, or null if the exact split search is to be used.
+	 */
+	private BinnedFeatureData binnedData;
+
+	/**
+	 * The partition used by the exact split search, or null in binned mode. Shared by all tasks growing the tree, as each task only
+	 * partitions the ranges of the nodes in its own subtree.
+	 */
+	private NodePartition partition;
+
+	/**
+	 * The partition used by the binned split search, or null if the exact split search is used.
+	 */
+	private BinnedNodePartition binnedPartition;
+
+	/**
+	 * The scratch space of the tree, used as the template for the scratch space of the task.
+	 */
+	private SplitScratch templateScratch;
+
+	/**
+	 * The ids of all the features in the dataset, in the order that the candidate features of each node are drawn from.
+	 */
+	private int[] featureOrder;
+
+	/**
+	 * An array recording the number of times each observation in the dataset is in bag.
+	 */
+	private int[] inBagObservations;
+
+	/**
+	 * The number of features to evaluate for the cutpoint in each nonterminal node.
+	 */
+	private int mtry;
+
+	/**
+	 * The parameters controlling how the tree is grown.
+	 */
+	private GrowthParameters growthParameters;
+
+	/**
+	 * The smallest number of unique observations a node must have for its subtree to be grown by a new task.
+	 */
+	private int minimumObservationsToFork;
+
+	/**
+	 * The grown root of the tree, if the subtree is the whole tree.
+	 */
+	private Node root = null;
+
+
+	/**
+	 * Set up the information needed to grow a subtree.
+	 *
+	 * @param tree							The same as this.tree.
+	 * @param subtreeRoot					The same as this.subtreeRoot. Its seed must be set.
+	 * @param dataset						The same as this.dataset.
+	 * @param binnedData					The same as this.binnedData.
+	 * @param partition						The same as this.partition.
+	 * @param binnedPartition				The same as this.binnedPartition.
+	 * @param templateScratch				The same as this.templateScratch.
+	 * @param featureOrder					The same as this.featureOrder. Not modified.
+	 * @param inBagObservations				The same as this.inBagObservations.
+	 * @param mtry							The same as this.mtry.
+	 * @param growthParameters				The same as this.growthParameters.
+	 */
+	public SubtreeGrower(Tree tree, NodeToGrow subtreeRoot, ProcessedDataset dataset, BinnedFeatureData binnedData,
+			NodePartition partition, BinnedNodePartition binnedPartition, SplitScratch templateScratch, int[] featureOrder,
+			int[] inBagObservations, int mtry, GrowthParameters growthParameters)
+	{
+		this.tree = tree;
+		this.subtreeRoot = subtreeRoot;
+		this.dataset = dataset;
+		this.binnedData = binnedData;
+		this.partition = partition;
+		this.binnedPartition = binnedPartition;
+		this.templateScratch = templateScratch;
+		this.featureOrder = featureOrder;
+		this.inBagObservations = inBagObservations;
+		this.mtry = mtry;
+		this.growthParameters = growthParameters;
+		this.minimumObservationsToFork = growthParameters.getMinimumObservationsToFork();
+	}
+
+	/**
+	 * Grow the subtree.
+	 */
+	@Override
+	protected void compute()
+	{
+		boolean isBinned = this.binnedData != null;
+		int numberOfClasses = this.dataset.getNumberOfClasses();
+		SplitScratch scratch = new SplitScratch(this.templateScratch);
+		int[] taskFeatureOrder = this.featureOrder.clone();
+		Random nodeRNG = new Random();
+		List<SubtreeGrower> forkedGrowers = new ArrayList<SubtreeGrower>();
+
+		if (!this.subtreeRoot.isEvaluated)
+		{
+			this.evaluate(this.subtreeRoot, scratch, taskFeatureOrder, nodeRNG);
+		}
+		ArrayDeque<NodeToGrow> nodesToGrow = new ArrayDeque<NodeToGrow>();
+		nodesToGrow.push(this.subtreeRoot);
+		while (!nodesToGrow.isEmpty())
+		{
+			NodeToGrow currentNode = nodesToGrow.pop();
+			Node grownNode = currentNode.terminalNode;
+			if (grownNode == null)
+			{
+				// Split the node's range, and create and evaluate its children.
+				int start = currentNode.start;
+				int end = currentNode.end;
+				double[] leftChildClassWeights = new double[numberOfClasses];
+				double[] rightChildClassWeights = new double[numberOfClasses];
+				int leftChildEnd = start + (isBinned ?
+						this.binnedPartition.split(this.binnedData.getFeatureBins()[currentNode.splitFeature], currentNode.splitBin,
+								start, end, leftChildClassWeights, rightChildClassWeights) :
+						this.partition.split(currentNode.splitFeature, currentNode.splitValue, start, end, leftChildClassWeights,
+								rightChildClassWeights));
+				NodeNonTerminal nonTerminalNode = new NodeNonTerminal(currentNode.splitFeature, currentNode.splitValue, null, null);
+				grownNode = nonTerminalNode;
+
+				NodeHistograms leftChildHistograms = null;
+				NodeHistograms rightChildHistograms = null;
+				if (isBinned)
+				{
+					// Both children reference the node's histograms in place of the node.
+					leftChildHistograms = new NodeHistograms(2);
+					rightChildHistograms = new NodeHistograms(2);
+					currentNode.histograms.addReference();
+				}
+				int childDepth = currentNode.depth + 1;
+				NodeToGrow leftChild = new NodeToGrow(start, leftChildEnd, childDepth, nonTerminalNode, 0, 0,
+						leftChildHistograms, currentNode.histograms, rightChildHistograms, leftChildEnd, end);
+				NodeToGrow rightChild = new NodeToGrow(leftChildEnd, end, childDepth, nonTerminalNode, 1, 0,
+						rightChildHistograms, currentNode.histograms, leftChildHistograms, start, leftChildEnd);
+				leftChild.classWeights = leftChildClassWeights;
+				rightChild.classWeights = rightChildClassWeights;
+				nodeRNG.setSeed(currentNode.seed);
+				leftChild.seed = nodeRNG.nextLong();
+				rightChild.seed = nodeRNG.nextLong();
+				this.evaluate(leftChild, scratch, taskFeatureOrder, nodeRNG);
+				this.evaluate(rightChild, scratch, taskFeatureOrder, nodeRNG);
+
+				// Grow the right child's subtree after the left child's, forking off the subtree of any child that is large enough.
+				NodeToGrow[] children = new NodeToGrow[]{rightChild, leftChild};
+				for (NodeToGrow child : children)
+				{
+					if (child.terminalNode == null && (child.end - child.start) >= this.minimumObservationsToFork)
+					{
+						SubtreeGrower childGrower = new SubtreeGrower(this.tree, child, this.dataset, this.binnedData, this.partition,
+								this.binnedPartition, this.templateScratch, this.featureOrder, this.inBagObservations, this.mtry,
+								this.growthParameters);
+						childGrower.fork();
+						forkedGrowers.add(childGrower);
+					}
+					else
+					{
+						nodesToGrow.push(child);
+					}
+				}
+			}
+
+			// Attach the grown node to its parent.
+			if (currentNode.parent == null)
+			{
+				this.root = grownNode;
+			}
+			else
+			{
+				currentNode.parent.children[currentNode.childIndex] = grownNode;
+			}
+		}
+
+		// Wait for the forked subtrees, most recently forked first.
+		for (int i = forkedGrowers.size() - 1; i >= 0; i--)
+		{
+			forkedGrowers.get(i).join();
+		}
+	}
+
+	/**
+	 * Evaluate a node with its own random number generator. The first two values drawn from a node's generator are the seeds of its
+	 * children, so the candidate features are selected with the values after them.
+	 *
+	 * @param nodeToGrow	The node to evaluate.
+	 * @param scratch		The scratch space of the task.
+	 * @param featureOrder	The task's copy of the feature order.
+	 * @param nodeRNG		The random number generator reseeded for each node.
+	 */
+	private final void evaluate(NodeToGrow nodeToGrow, SplitScratch scratch, int[] featureOrder, Random nodeRNG)
+	{
+		nodeRNG.setSeed(nodeToGrow.seed);
+		nodeRNG.nextLong();
+		nodeRNG.nextLong();
+		this.tree.evaluateNode(nodeToGrow, this.dataset, this.binnedData, this.partition, this.binnedPartition, scratch, featureOrder,
+				this.inBagObservations, this.mtry, nodeRNG, this.growthParameters, false);
+	}
+
+	/**
+	 * @return		The grown root of the tree, if the subtree grown was the whole tree, else null.
+	 */
+	public final Node getRoot()
+	{
+		return this.root;
+	}
+
+}
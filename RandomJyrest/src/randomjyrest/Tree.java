@@ -1,19 +1,20 @@
 package randomjyrest;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Random;
-import java.util.Set;
-
-import utilities.ImmutableFourValues;
-import utilities.ImmutableTwoValues;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * Implements a CART decision tree.
+ * 
+ * The tree is grown iteratively from a collection of the nodes waiting to be grown, rather than recursively, so the depth of the tree
+ * is not limited by the size of the thread's stack.
  */
 public class Tree
 {
@@ -23,192 +24,608 @@ public class Tree
 	/**
 	 * Create the tree starting from the root node.
 	 * 
-	 * @param dataset						A mapping from the feature names to the data values sorted in ascending order.
-	 * @param dataIndices					A mapping from the feature names to the original indices of the data values. For example, if
-	 * 										the smallest observation value for feature F comes from the 3rd observation in the input file,
-	 * 										then the 0th entry in the array mapped to by F will be 2.
-	 * @param classData						A mapping from each class to an array containing the weight of each observation for the class.
-	 * 										The observations are ordered by their original indices (dataIndices ordering).
-	 * @param inBagObservations				An array recording which observations in the dataset have reached the node for which the split
-	 * 										is being determined (in bag observations). Observations that are not in bag are given a value
-	 * 										of 0.
+	 * @param dataset						The processed dataset containing the sorted feature values and class weights.
+	 * @param inBagObservations				An array recording the number of times each observation in the dataset is in bag.
+	 * 										Observations that are not in bag are given a value of 0.
 	 * @param mtry							The number of features to evaluate for the cutpoint in each nonterminal node.
 	 * @param treeRNG						The random number generator for the tree.
-	 * @param numberOfUniqueObservations	The number of unique observations that have reached the node. Observations can be duplicates
+	 * @param numberOfUniqueObservations	The number of unique observations that are in bag. Observations can be duplicates
 	 * 										as sampling is performed with replacement.
 	 */
-	public final void main(Map<String, double[]> dataset, Map<String, int[]> dataIndices, Map<String, double[]> classData,
-			int[] inBagObservations, int mtry, Random treeRNG, int numberOfUniqueObservations)
+	public final void main(ProcessedDataset dataset, int[] inBagObservations, int mtry, Random treeRNG, int numberOfUniqueObservations)
 	{
-		this.tree = this.growTree(dataset, dataIndices, classData, inBagObservations, mtry, treeRNG, numberOfUniqueObservations);
+		this.main(dataset, null, new GrowthParameters(), inBagObservations, mtry, treeRNG, numberOfUniqueObservations);
 	}
-
+	
 	/**
-	 * @param dataset						A mapping from the feature names to the data values sorted in ascending order.
-	 * @param dataIndices					A mapping from the feature names to the original indices of the data values. For example, if
-	 * 										the smallest observation value for feature F comes from the 3rd observation in the input file,
-	 * 										then the 0th entry in the array mapped to by F will be 2.
-	 * @param classData						A mapping from each class to an array containing the weight of each observation for the class.
-	 * 										The observations are ordered by their original indices (dataIndices ordering).
-	 * @param inBagObservations				An array recording which observations in the dataset have reached the node for which the split
-	 * 										is being determined (in bag observations). Observations that are not in bag are given a value
-	 * 										of 0.
+	 * Create the tree starting from the root node, using the binned split search if binned feature data is supplied.
+	 * 
+	 * @param dataset						The processed dataset containing the sorted feature values and class weights.
+	 * @param binnedData					The binned feature data of the dataset, or null if the exact split search is to be used.
+	 * @param growthParameters				The parameters controlling how the tree is grown.
+	 * @param inBagObservations				An array recording the number of times each observation in the dataset is in bag.
+	 * 										Observations that are not in bag are given a value of 0.
 	 * @param mtry							The number of features to evaluate for the cutpoint in each nonterminal node.
 	 * @param treeRNG						The random number generator for the tree.
-	 * @param numberOfUniqueObservations	The number of unique observations that have reached the node. Observations can be duplicates
+	 * @param numberOfUniqueObservations	The number of unique observations that are in bag. Observations can be duplicates
 	 * 										as sampling is performed with replacement.
-	 * @return								The current node. Will either be a terminal node (with associated class composition
-	 * 										information) or a nonterminal node with all its descendants calculated.
 	 */
-	private final Node growTree(Map<String, double[]> dataset, Map<String, int[]> dataIndices, Map<String, double[]> classData,
+	public final void main(ProcessedDataset dataset, BinnedFeatureData binnedData, GrowthParameters growthParameters,
 			int[] inBagObservations, int mtry, Random treeRNG, int numberOfUniqueObservations)
 	{
-		Set<String> classesPresent = this.classesPresent(classData, inBagObservations);  // The classes present in the in bag observations.
+		SplitScratch scratch = new SplitScratch(dataset.getNumberOfClasses());
 		
-		// Create a terminal node if there are only observations of one class remaining.
-		if (classesPresent.size() < 2)
+		// Initialise the order of the features that the candidate features for each node are drawn from.
+		int numberOfFeatures = dataset.getNumberOfFeatures();
+		int[] featureOrder = new int[numberOfFeatures];
+		for (int i = 0; i < numberOfFeatures; i++)
 		{
-			Iterator<String> it = classesPresent.iterator();
-			return new NodeTerminal(it.next(), classData, inBagObservations);
+			featureOrder[i] = i;
 		}
 		
-		// Determine the best split that can be made.
-		String featureUsedForSplit = null;
-		double splitValue = 0.0;
-		while (featureUsedForSplit == null)
-		{
-			//TODO Put in a value for the number of times this loop can go through before giving up and killing the search.
-			List<String> datasetFeatures = new ArrayList<String>(dataset.keySet());
-			Collections.shuffle(datasetFeatures, treeRNG);
-			int numVarsToSelect = Math.min(datasetFeatures.size(), mtry);
-			List<String> featuresToSplitOn = datasetFeatures.subList(0, numVarsToSelect);
-			ImmutableTwoValues<String, Double> bestSplit = FindBestSplit.main(dataset, dataIndices, classData, inBagObservations,
-					featuresToSplitOn, numberOfUniqueObservations);
-			featureUsedForSplit = bestSplit.first;
-			splitValue = bestSplit.second;
+		// Set up the partition of the observations used by the split search.
+		NodePartition partition = null;
+		BinnedNodePartition binnedPartition = null;
+		if (binnedData == null)
+		{
+			partition = new NodePartition(dataset, inBagObservations, numberOfUniqueObservations);
+		}
+		else
+		{
+			binnedPartition = new BinnedNodePartition(dataset, inBagObservations, numberOfUniqueObservations);
 		}
 		
-		// Split the dataset into observations going to the left child and those going to the right one based on the feature to
-		// split on and split value.
-		ImmutableFourValues<int[], Integer, int[], Integer> splitObservations = this.splitDataset(dataset.get(featureUsedForSplit),
-				dataIndices.get(featureUsedForSplit), inBagObservations, splitValue);
-		int[] leftChildInBagObservations = splitObservations.first;
-		int leftChildNumberOfUniqueObservations = splitObservations.second.intValue();
-		int[] rightChildInBagObservations = splitObservations.third;
-		int rightChildNumberOfUniqueObservations = splitObservations.fourth.intValue();
+		if (growthParameters.isForkJoin())
+		{
+			// Calculate the in bag weights up front, so that the scratch spaces of all the tasks growing the tree can share them.
+			if (dataset.getNumberOfClasses() == 2)
+			{
+				scratch.getInBagWeights(dataset.getClassWeights(), dataset.getObservationClasses(), inBagObservations);
+			}
+			NodeToGrow rootToGrow = new NodeToGrow(0, numberOfUniqueObservations, 0, null, -1, 0,
+					(binnedData != null ? new NodeHistograms(1) : null), null, null, 0, 0);
+			rootToGrow.seed = treeRNG.nextLong();
+			SubtreeGrower rootGrower = new SubtreeGrower(this, rootToGrow, dataset, binnedData, partition, binnedPartition, scratch,
+					featureOrder, inBagObservations, mtry, growthParameters);
+			rootGrower.invoke();
+			this.tree = rootGrower.getRoot();
+		}
+		else
+		{
+			this.tree = this.growTree(dataset, binnedData, partition, binnedPartition, scratch, featureOrder, inBagObservations, mtry,
+					treeRNG, numberOfUniqueObservations, growthParameters);
+		}
+	}
+
+	/**
+	 * Grow the tree from the root node.
+	 * 
+	 * Each node is taken from the collection of nodes waiting to be grown, and is either made terminal or split, in which case its
+	 * children are added to the collection. Depth-first growth uses the collection as a stack with the left child on top, so the nodes
+	 * are grown in exactly the order that a recursive implementation would grow them. Breadth-first growth uses it as a queue.
+	 * Best-first growth determines the split of a node when the node is created, and orders the nodes by the decrease in weighted
+	 * impurity of their splits.
+	 * 
+	 * @param dataset				The processed dataset containing the sorted feature values and class weights.
+	 * @param binnedData			The binned feature data of the dataset, or null if the exact split search is to be used.
+	 * @param partition				The partition used by the exact split search, or null in binned mode.
+	 * @param binnedPartition		The partition used by the binned split search, or null if the exact split search is used.
+	 * @param scratch				The scratch space used to search for the best split of each node.
+	 * @param featureOrder			The ids of all the features in the dataset. Reordered in place to select the candidate features.
+	 * @param inBagObservations		An array recording the number of times each observation in the dataset is in bag. Observations
+	 * 								that are not in bag are given a value of 0.
+	 * @param mtry					The number of features to evaluate for the cutpoint in each nonterminal node.
+	 * @param treeRNG				The random number generator for the tree.
+	 * @param numberOfUniqueObservations	The number of unique in bag observations.
+	 * @param growthParameters		The parameters controlling how the tree is grown.
+	 * @return						The root node of the tree.
+	 */
+	private final Node growTree(ProcessedDataset dataset, BinnedFeatureData binnedData, NodePartition partition,
+			BinnedNodePartition binnedPartition, SplitScratch scratch, int[] featureOrder, int[] inBagObservations, int mtry,
+			Random treeRNG, int numberOfUniqueObservations, GrowthParameters growthParameters)
+	{
+		int growthOrder = growthParameters.getGrowthOrder();
+		int maximumLeafNodes = growthParameters.getMaximumLeafNodes();
+		int numberOfLeaves = 1;  // The number of terminal nodes the tree would have if the nodes waiting to be grown were terminal.
+		boolean isBinned = binnedData != null;
+		boolean isBestFirst = growthOrder == GrowthParameters.BEST_FIRST;
+		ArrayDeque<NodeToGrow> nodesToGrow = new ArrayDeque<NodeToGrow>();
+		PriorityQueue<NodeToGrow> bestNodesToGrow = new PriorityQueue<NodeToGrow>(11, new Comparator<NodeToGrow>()
+		{
+			public int compare(NodeToGrow first, NodeToGrow second)
+			{
+				// Nodes with greater impurity decreases come first, with ties broken by the order the nodes were created in.
+				int comparison = Double.compare(second.impurityDecrease, first.impurityDecrease);
+				return (comparison != 0 ? comparison : Long.compare(first.creationOrder, second.creationOrder));
+			}
+		});
 		
-		// Generate the children of this node.
-		Node leftChild = growTree(dataset, dataIndices, classData, leftChildInBagObservations, mtry, treeRNG,
-				leftChildNumberOfUniqueObservations);
-		Node rightChild = growTree(dataset, dataIndices, classData, rightChildInBagObservations, mtry, treeRNG,
-				rightChildNumberOfUniqueObservations);
-		return new NodeNonTerminal(featureUsedForSplit, splitValue, leftChild, rightChild);
+		long nodesCreated = 0;
+		NodeToGrow rootToGrow = new NodeToGrow(0, numberOfUniqueObservations, 0, null, -1, nodesCreated++,
+				(isBinned ? new NodeHistograms(1) : null), null, null, 0, 0);
+		if (isBestFirst)
+		{
+			this.evaluateNode(rootToGrow, dataset, binnedData, partition, binnedPartition, scratch, featureOrder, inBagObservations,
+					mtry, treeRNG, growthParameters, true);
+			bestNodesToGrow.add(rootToGrow);
+		}
+		else
+		{
+			nodesToGrow.push(rootToGrow);
+		}
 		
+		Node root = null;
+		while (!nodesToGrow.isEmpty() || !bestNodesToGrow.isEmpty())
+		{
+			NodeToGrow currentNode = (isBestFirst ? bestNodesToGrow.poll() : nodesToGrow.poll());
+			if (!currentNode.isEvaluated)
+			{
+				this.evaluateNode(currentNode, dataset, binnedData, partition, binnedPartition, scratch, featureOrder,
+						inBagObservations, mtry, treeRNG, growthParameters, false);
+			}
+			
+			Node grownNode = currentNode.terminalNode;
+			if (grownNode == null && numberOfLeaves >= maximumLeafNodes)
+			{
+				// Splitting the node would give the tree too many leaves.
+				double[] nodeClassWeights = currentNode.classWeights;
+				if (nodeClassWeights == null)
+				{
+					int[] nodeObservations = (isBinned ? binnedPartition.getObservations() : partition.getObservations());
+					nodeClassWeights = this.classWeightsInNode(dataset.getClassWeights(), inBagObservations, nodeObservations,
+							currentNode.start, currentNode.end);
+				}
+				grownNode = new NodeTerminal(nodeClassWeights);
+				if (isBinned)
+				{
+					currentNode.histograms.release(scratch);
+				}
+			}
+			else if (grownNode == null)
+			{
+				// Split the node's range into observations going to the left child and those going to the right one based on the
+				// feature to split on and split value.
+				numberOfLeaves++;
+				int start = currentNode.start;
+				int end = currentNode.end;
+				int numberOfClasses = dataset.getNumberOfClasses();
+				double[] leftChildClassWeights = new double[numberOfClasses];
+				double[] rightChildClassWeights = new double[numberOfClasses];
+				int leftChildEnd = start + (isBinned ?
+						binnedPartition.split(binnedData.getFeatureBins()[currentNode.splitFeature], currentNode.splitBin, start, end,
+								leftChildClassWeights, rightChildClassWeights) :
+						partition.split(currentNode.splitFeature, currentNode.splitValue, start, end, leftChildClassWeights,
+								rightChildClassWeights));
+				NodeNonTerminal nonTerminalNode = new NodeNonTerminal(currentNode.splitFeature, currentNode.splitValue, null, null);
+				grownNode = nonTerminalNode;
+				
+				// Create the children of the node, which both reference the node's histograms in place of the node.
+				NodeHistograms leftChildHistograms = null;
+				NodeHistograms rightChildHistograms = null;
+				if (isBinned)
+				{
+					leftChildHistograms = new NodeHistograms(2);
+					rightChildHistograms = new NodeHistograms(2);
+					currentNode.histograms.addReference();
+				}
+				int childDepth = currentNode.depth + 1;
+				NodeToGrow leftChild = new NodeToGrow(start, leftChildEnd, childDepth, nonTerminalNode, 0, nodesCreated++,
+						leftChildHistograms, currentNode.histograms, rightChildHistograms, leftChildEnd, end);
+				NodeToGrow rightChild = new NodeToGrow(leftChildEnd, end, childDepth, nonTerminalNode, 1, nodesCreated++,
+						rightChildHistograms, currentNode.histograms, leftChildHistograms, start, leftChildEnd);
+				leftChild.classWeights = leftChildClassWeights;
+				rightChild.classWeights = rightChildClassWeights;
+				if (isBestFirst)
+				{
+					this.evaluateNode(leftChild, dataset, binnedData, partition, binnedPartition, scratch, featureOrder,
+							inBagObservations, mtry, treeRNG, growthParameters, true);
+					this.evaluateNode(rightChild, dataset, binnedData, partition, binnedPartition, scratch, featureOrder,
+							inBagObservations, mtry, treeRNG, growthParameters, true);
+					bestNodesToGrow.add(leftChild);
+					bestNodesToGrow.add(rightChild);
+				}
+				else if (growthOrder == GrowthParameters.BREADTH_FIRST)
+				{
+					nodesToGrow.addLast(leftChild);
+					nodesToGrow.addLast(rightChild);
+				}
+				else
+				{
+					nodesToGrow.push(rightChild);
+					nodesToGrow.push(leftChild);
+				}
+			}
+			
+			// Attach the grown node to its parent.
+			if (currentNode.parent == null)
+			{
+				root = grownNode;
+			}
+			else
+			{
+				currentNode.parent.children[currentNode.childIndex] = grownNode;
+			}
+		}
+		
+		return root;
 	}
 	
+	/**
+	 * Determine whether a node is terminal, and if it is not then determine the split of the node.
+	 * 
+	 * In binned mode, the node's references to the histograms of its parent and sibling are then released, as is its reference to
+	 * its own histograms if it is terminal.
+	 * 
+	 * A node is made terminal if it is pure, if it can not be split, or if any of the stopping rules in growthParameters apply to it
+	 * (other than the maximum number of leaves, which depends on the rest of the tree).
+	 * 
+	 * @param nodeToGrow			The node to evaluate. The results of the evaluation are recorded in it.
+	 * @param dataset				The processed dataset containing the sorted feature values and class weights.
+	 * @param binnedData			The binned feature data of the dataset, or null if the exact split search is to be used.
+	 * @param partition				The partition used by the exact split search, or null in binned mode.
+	 * @param binnedPartition		The partition used by the binned split search, or null if the exact split search is used.
+	 * @param scratch				The scratch space used to search for the best split of each node.
+	 * @param featureOrder			The ids of all the features in the dataset. Reordered in place to select the candidate features.
+	 * @param inBagObservations		An array recording the number of times each observation in the dataset is in bag. Observations
+	 * 								that are not in bag are given a value of 0.
+	 * @param mtry					The number of features to evaluate for the cutpoint in each nonterminal node.
+	 * @param treeRNG				The random number generator for the tree.
+	 * @param growthParameters		The parameters controlling how the tree is grown. When growing with fork-join parallelism,
+	 * 								featureOrder is restored after the candidate features are selected, so that the candidates depend
+	 * 								only on treeRNG, and the candidate features of large nodes are evaluated in parallel.
+	 * @param isBestFirst			Whether the decrease in weighted impurity of the split should be calculated.
+	 */
+	final void evaluateNode(NodeToGrow nodeToGrow, ProcessedDataset dataset, BinnedFeatureData binnedData,
+			NodePartition partition, BinnedNodePartition binnedPartition, SplitScratch scratch, int[] featureOrder,
+			int[] inBagObservations, int mtry, Random treeRNG, GrowthParameters growthParameters, boolean isBestFirst)
+	{
+		this.determineSplit(nodeToGrow, dataset, binnedData, partition, binnedPartition, scratch, featureOrder, inBagObservations,
+				mtry, treeRNG, growthParameters, isBestFirst);
+		if (binnedData != null)
+		{
+			if (nodeToGrow.parentHistograms != null)
+			{
+				nodeToGrow.parentHistograms.release(scratch);
+				nodeToGrow.siblingHistograms.release(scratch);
+			}
+			if (nodeToGrow.terminalNode != null)
+			{
+				nodeToGrow.histograms.release(scratch);
+			}
+		}
+	}
 	
 	/**
-	 * Determine the names of the classes of the specified set of observations.
-	 * 
-	 * @param classData				A mapping from each class to an array containing the weight of each observation for the class.
-	 * 								The observations are ordered by their original indices (dataIndices ordering).
-	 * @param inBagObservations		An array recording which observations in the dataset have reached the node for which the split
-	 * 								is being determined (in bag observations). Observations that are not in bag are given a value
-	 * 								of 0.
-	 * @return						A set containing the names of the different classes of the specified observations.
+	 * Determine whether a node is terminal, and if it is not then determine the split of the node (see evaluateNode).
+	 * 
+	 * @param nodeToGrow			The node to evaluate. The results of the evaluation are recorded in it.
+	 * @param dataset				The processed dataset containing the sorted feature values and class weights.
+	 * @param binnedData			The binned feature data of the dataset, or null if the exact split search is to be used.
+	 * @param partition				The partition used by the exact split search, or null in binned mode.
+	 * @param binnedPartition		The partition used by the binned split search, or null if the exact split search is used.
+	 * @param scratch				The scratch space used to search for the best split of each node.
+	 * @param featureOrder			The ids of all the features in the dataset. Reordered in place to select the candidate features.
+	 * @param inBagObservations		An array recording the number of times each observation in the dataset is in bag. Observations
+	 * 								that are not in bag are given a value of 0.
+	 * @param mtry					The number of features to evaluate for the cutpoint in each nonterminal node.
+	 * @param treeRNG				The random number generator for the tree.
+	 * @param growthParameters		The parameters controlling how the tree is grown. When growing with fork-join parallelism,
+	 * 								featureOrder is restored after the candidate features are selected, so that the candidates depend
+	 * 								only on treeRNG, and the candidate features of large nodes are evaluated in parallel.
+	 * @param isBestFirst			Whether the decrease in weighted impurity of the split should be calculated.
 	 */
-	private final Set<String> classesPresent(Map<String, double[]> classData, int[] inBagObservations)
+	private final void determineSplit(NodeToGrow nodeToGrow, ProcessedDataset dataset, BinnedFeatureData binnedData,
+			NodePartition partition, BinnedNodePartition binnedPartition, SplitScratch scratch, int[] featureOrder,
+			int[] inBagObservations, int mtry, Random treeRNG, GrowthParameters growthParameters, boolean isBestFirst)
 	{
-		Set<String> classesPresent = new HashSet<String>();
-		Set<String> allClasses = new HashSet<String>(classData.keySet());
+		nodeToGrow.isEvaluated = true;
+		nodeToGrow.impurityDecrease = Double.POSITIVE_INFINITY;  // Terminal nodes are resolved as soon as possible when best-first.
+		double[][] classData = dataset.getClassWeights();
+		int[] nodeObservations = (binnedData == null ? partition.getObservations() : binnedPartition.getObservations());
+		int start = nodeToGrow.start;
+		int end = nodeToGrow.end;
+		double[] nodeClassWeights = (nodeToGrow.classWeights != null ? nodeToGrow.classWeights :
+				this.classWeightsInNode(classData, inBagObservations, nodeObservations, start, end));
 		
-		// Add the classes that have non-zero weight for an in bag observation (and are therefore present).
-		int numberOfObservations = inBagObservations.length;
-		for (String s : allClasses)
+		// Create a terminal node if there are only observations of one class remaining, or if the node is too deep or too light to be
+		// split.
+		double nodeWeight = 0.0;
+		int numberOfClassesPresent = 0;
+		for (double classWeight : nodeClassWeights)
 		{
-			double[] classWeights = classData.get(s);
-			double classWeightSum = 0.0;
-			for (int i = 0; i < numberOfObservations; i++)
+			nodeWeight += classWeight;
+			numberOfClassesPresent += (classWeight != 0.0 ? 1 : 0);
+		}
+		if (numberOfClassesPresent < 2 || nodeToGrow.depth >= growthParameters.getMaximumDepth() ||
+				nodeWeight < growthParameters.getMinimumNodeWeight())
+		{
+			nodeToGrow.terminalNode = new NodeTerminal(nodeClassWeights);
+			return;
+		}
+		
+		// Create a terminal node if every observation has the same value (or in binned mode is in the same bin) for every feature, as
+		// the node can then not be split. In binned mode this can happen even though the observations have different values.
+		if ((binnedData == null && !this.isSplitPossible(partition, featureOrder.length, start, end)) ||
+				(binnedData != null && !this.isBinnedSplitPossible(binnedData, nodeObservations, start, end)))
+		{
+			nodeToGrow.terminalNode = new NodeTerminal(nodeClassWeights);
+			return;
+		}
+		
+		// Determine the best split that can be made. If none of the draws of candidate features can split the node, then it is made
+		// terminal.
+		int featureUsedForSplit = -1;
+		int numberOfFeatures = featureOrder.length;
+		int numVarsToSelect = Math.min(numberOfFeatures, mtry);
+		boolean isForkJoin = growthParameters.isForkJoin();
+		int[] swapIndices = (isForkJoin ? new int[numVarsToSelect] : null);
+		boolean isParallelSearch = isForkJoin && numVarsToSelect > 1 && (end - start) >= growthParameters.getMinimumObservationsToFork();
+		int maximumSplitAttempts = growthParameters.getMaximumSplitAttempts();
+		for (int attempt = 0; featureUsedForSplit == -1 && attempt < maximumSplitAttempts; attempt++)
+		{
+			// Select the candidate features by moving a random sample of the feature ids to the front of featureOrder.
+			for (int i = 0; i < numVarsToSelect; i++)
+			{
+				int swapIndex = i + treeRNG.nextInt(numberOfFeatures - i);
+				int swapFeature = featureOrder[swapIndex];
+				featureOrder[swapIndex] = featureOrder[i];
+				featureOrder[i] = swapFeature;
+				if (isForkJoin)
+				{
+					swapIndices[i] = swapIndex;
+				}
+			}
+			int[] candidateFeatures = featureOrder;
+			if (isForkJoin)
 			{
-				classWeightSum += (classWeights[i] * inBagObservations[i]);
+				// Copy the candidates and undo the swaps, so that every node selects its candidates from the same feature order.
+				candidateFeatures = new int[numVarsToSelect];
+				System.arraycopy(featureOrder, 0, candidateFeatures, 0, numVarsToSelect);
+				for (int i = numVarsToSelect - 1; i >= 0; i--)
+				{
+					int swapFeature = featureOrder[swapIndices[i]];
+					featureOrder[swapIndices[i]] = featureOrder[i];
+					featureOrder[i] = swapFeature;
+				}
 			}
-			if (classWeightSum != 0.0)
+			
+			if (isParallelSearch)
 			{
-				classesPresent.add(s);
+				featureUsedForSplit = this.findSplitInParallel(nodeToGrow, dataset, binnedData, partition, binnedPartition, scratch,
+						candidateFeatures, inBagObservations);
+			}
+			else
+			{
+				featureUsedForSplit = this.findSplit(nodeToGrow, dataset, binnedData, partition, binnedPartition, scratch,
+						candidateFeatures, numVarsToSelect, inBagObservations);
 			}
 		}
-
-		return classesPresent;
+		if (featureUsedForSplit == -1)
+		{
+			nodeToGrow.terminalNode = new NodeTerminal(nodeClassWeights);
+			return;
+		}
+		
+		// Create a terminal node if the split does not decrease the impurity enough.
+		double minimumImpurityDecrease = growthParameters.getMinimumImpurityDecrease();
+		if (isBestFirst || minimumImpurityDecrease > 0.0)
+		{
+			double impurityDecrease = this.impurityDecrease(nodeClassWeights, nodeWeight, scratch.getSplitImpurity());
+			if (minimumImpurityDecrease > 0.0 && impurityDecrease < minimumImpurityDecrease)
+			{
+				nodeToGrow.terminalNode = new NodeTerminal(nodeClassWeights);
+				return;
+			}
+			if (isBestFirst)
+			{
+				nodeToGrow.impurityDecrease = impurityDecrease;
+			}
+		}
+		nodeToGrow.splitFeature = featureUsedForSplit;
+		nodeToGrow.splitValue = scratch.getSplitValue();
+		nodeToGrow.splitBin = scratch.getSplitBin();
+	}
+	
+	/**
+	 * Search for the best split of a node among a set of candidate features.
+	 * 
+	 * @param nodeToGrow			The node being split.
+	 * @param dataset				The processed dataset containing the sorted feature values and class weights.
+	 * @param binnedData			The binned feature data of the dataset, or null if the exact split search is to be used.
+	 * @param partition				The partition used by the exact split search, or null in binned mode.
+	 * @param binnedPartition		The partition used by the binned split search, or null if the exact split search is used.
+	 * @param scratch				The scratch space that the split found is recorded in.
+	 * @param candidateFeatures		An array whose first numberOfCandidates entries are the ids of the candidate features.
+	 * @param numberOfCandidates	The number of candidate features.
+	 * @param inBagObservations		An array recording the number of times each observation in the dataset is in bag.
+	 * @return						The id of the feature to split on, or -1 if no split could be made.
+	 */
+	private final int findSplit(NodeToGrow nodeToGrow, ProcessedDataset dataset, BinnedFeatureData binnedData, NodePartition partition,
+			BinnedNodePartition binnedPartition, SplitScratch scratch, int[] candidateFeatures, int numberOfCandidates,
+			int[] inBagObservations)
+	{
+		if (binnedData == null)
+		{
+			return FindBestSplit.main(dataset, partition, inBagObservations, candidateFeatures, numberOfCandidates, nodeToGrow.start,
+					nodeToGrow.end, scratch);
+		}
+		else
+		{
+			return FindBestBinnedSplit.main(dataset, binnedData, binnedPartition, inBagObservations, candidateFeatures,
+					numberOfCandidates, nodeToGrow.start, nodeToGrow.end, nodeToGrow.histograms, nodeToGrow.parentHistograms,
+					nodeToGrow.siblingHistograms, nodeToGrow.siblingStart, nodeToGrow.siblingEnd, scratch);
+		}
+	}
+	
+	/**
+	 * Search for the best split of a node by evaluating blocks of the candidate features as parallel tasks in the current fork-join
+	 * pool.
+	 * 
+	 * Each block is searched in the order that its features appear in candidateFeatures, and the blocks are combined in order keeping
+	 * the first split with the lowest impurity, so the split found is the same as that found by searching all the candidates at once.
+	 * 
+	 * @param nodeToGrow			The node being split.
+	 * @param dataset				The processed dataset containing the sorted feature values and class weights.
+	 * @param binnedData			The binned feature data of the dataset, or null if the exact split search is to be used.
+	 * @param partition				The partition used by the exact split search, or null in binned mode.
+	 * @param binnedPartition		The partition used by the binned split search, or null if the exact split search is used.
+	 * @param scratch				The scratch space that the split found is recorded in.
+	 * @param candidateFeatures		The ids of the candidate features.
+	 * @param inBagObservations		An array recording the number of times each observation in the dataset is in bag.
+	 * @return						The id of the feature to split on, or -1 if no split could be made.
+	 */
+	private final int findSplitInParallel(final NodeToGrow nodeToGrow, final ProcessedDataset dataset,
+			final BinnedFeatureData binnedData, final NodePartition partition, final BinnedNodePartition binnedPartition,
+			SplitScratch scratch, int[] candidateFeatures, final int[] inBagObservations)
+	{
+		ForkJoinPool pool = ForkJoinTask.getPool();
+		int parallelism = (pool == null ? ForkJoinPool.getCommonPoolParallelism() : pool.getParallelism());
+		int numberOfCandidates = candidateFeatures.length;
+		int numberOfBlocks = Math.max(1, Math.min(numberOfCandidates, parallelism));
+		
+		final SplitScratch[] blockScratches = new SplitScratch[numberOfBlocks];
+		final int[] blockFeatures = new int[numberOfBlocks];
+		List<ForkJoinTask<?>> blockSearches = new ArrayList<ForkJoinTask<?>>(numberOfBlocks);
+		for (int b = 0; b < numberOfBlocks; b++)
+		{
+			final int block = b;
+			int firstCandidate = (int) (((long) b * numberOfCandidates) / numberOfBlocks);
+			int lastCandidate = (int) (((long) (b + 1) * numberOfCandidates) / numberOfBlocks);
+			final int[] candidatesInBlock = Arrays.copyOfRange(candidateFeatures, firstCandidate, lastCandidate);
+			blockScratches[b] = new SplitScratch(scratch);
+			blockSearches.add(ForkJoinTask.adapt(new Runnable()
+			{
+				public void run()
+				{
+					blockFeatures[block] = findSplit(nodeToGrow, dataset, binnedData, partition, binnedPartition,
+							blockScratches[block], candidatesInBlock, candidatesInBlock.length, inBagObservations);
+				}
+			}));
+		}
+		ForkJoinTask.invokeAll(blockSearches);
+		
+		// Combine the results of the blocks.
+		int bestFeatureForSplit = -1;
+		for (int b = 0; b < numberOfBlocks; b++)
+		{
+			if (blockFeatures[b] != -1 && (bestFeatureForSplit == -1 || blockScratches[b].splitImpurity < scratch.splitImpurity))
+			{
+				bestFeatureForSplit = blockFeatures[b];
+				scratch.splitValue = blockScratches[b].splitValue;
+				scratch.splitBin = blockScratches[b].splitBin;
+				scratch.splitImpurity = blockScratches[b].splitImpurity;
+			}
+		}
+		return bestFeatureForSplit;
 	}
-
 	
 	/**
-	 * Predict the classes of a set of observations.
-	 * 
-	 * @param datasetToPredict	A mapping from each feature name to the values of the observations for it. The feature values are
-	 * 							ordered in the same order as the observations appear in the file they were read from.
-	 * @param obsToPredict		The indices of the observations to predict.
-	 * @param predictions		A mapping from class names to observations. Used as an accumulator as it is passed down and then up
-	 * 							the tree. Each class contains an entry for each observation in datasetToPredict. For an observation, i,
-	 * 							the ith entry in the array for each class, c, will record the predicted weight given to class c for
-	 * 							observation i. 
-	 * @return					The updated predictions mapping.
+	 * Determine the decrease in weighted Gini impurity achieved by splitting a node.
+	 * 
+	 * @param nodeClassWeights		The weight of each class in the node.
+	 * @param nodeWeight			The total weight of the node.
+	 * @param splitImpurity			The Gini impurity of the split.
+	 * @return						The weight of the node multiplied by the difference between its impurity and that of the split.
 	 */
-	public final Map<String, double[]> predict(Map<String, double[]> datasetToPredict, Set<Integer> obsToPredict,
-			Map<String, double[]> predictions)
+	private final double impurityDecrease(double[] nodeClassWeights, double nodeWeight, double splitImpurity)
 	{
-		return this.tree.predict(datasetToPredict, obsToPredict, predictions);
+		double nodeImpurity = 1.0;
+		for (double classWeight : nodeClassWeights)
+		{
+			double fractionOfClass = classWeight / nodeWeight;
+			nodeImpurity = nodeImpurity - (fractionOfClass * fractionOfClass);
+		}
+		return nodeWeight * (nodeImpurity - splitImpurity);
 	}
 	
 	
 	/**
-	 * Split the dataset into the observations going to the left child and those going to the right child.
+	 * Determine the weight of each class in the specified set of observations.
 	 * 
-	 * @param splitFeatureData		The observation values for the feature being split on.
-	 * @param splitDataIndices		An array recording the original indices of the observations associated with the feature values in
-	 * 								splitFeatureData.
-	 * @param inBagObservations		An array recording the transformed indices of the observations that are still in bag. Observations
+	 * @param classData				The weight of each observation for each class, indexed by class id and then by the original index
+	 * 								of the observation.
+	 * @param inBagObservations		An array recording the number of times each observation in the dataset is in bag. Observations
 	 * 								that are not in bag are given a value of 0.
-	 * @param splitValue			The value of the cutpoint for the feature being split on.
-	 * @return						Four values.
-	 * 								1) The indices of the observations that will be in bag for the left hand child.
-	 * 								2) The number of unique observations going to the left hand child.
-	 * 								3) The indices of the observations that will be in bag for the right hand child.
-	 * 								4) The number of unique observations going to the right hand child.
+	 * @param nodeObservations		The original indices of the unique in bag observations, in dataset order within each node's range.
+	 * @param start					The start (inclusive) of the node's range in nodeObservations.
+	 * @param end					The end (exclusive) of the node's range in nodeObservations.
+	 * @return						The weight of each class in the observations, indexed by class id. A class is present if its weight
+	 * 								is non-zero.
 	 */
-	private final ImmutableFourValues<int[], Integer, int[], Integer> splitDataset(double[] splitFeatureData,
-			int[] splitDataIndices, int[] inBagObservations, double splitValue)
+	private final double[] classWeightsInNode(double[][] classData, int[] inBagObservations, int[] nodeObservations, int start,
+			int end)
 	{
-		// Initialise the arrays recording the observations going down the left and right hand branches.
-		int numberOfObservations = inBagObservations.length;
-		int[] leftChildInBag = new int[numberOfObservations];
-		int numberOfUniqueLeftObservations = 0;
-		int[] rightChildInBag = new int[numberOfObservations];
-		int numberOfUniqueRightObservations = 0;
-
-		// Determine where each observation is going.
-		for (int i = 0; i < numberOfObservations; i++)
+		int numberOfClasses = classData.length;
+		double[] classWeightSums = new double[numberOfClasses];
+		for (int c = 0; c < numberOfClasses; c++)
 		{
-			double dataValue = splitFeatureData[i];  // The observation's value for the feature being split on.
-			int originalObsIndex = splitDataIndices[i];  // The original index of the observation.
-			int inBagCount = inBagObservations[originalObsIndex];  // The number of times the observation is in bag.
-			int inBagUnique = (inBagCount == 0 ? 0 : 1);  // 0 if the observation is not in bag and 1 otherwise.
-			if (dataValue <= splitValue)
+			double[] classWeights = classData[c];
+			double classWeightSum = 0.0;
+			for (int i = start; i < end; i++)
 			{
-				// The observation should go down the left hand branch.
-				leftChildInBag[originalObsIndex] = inBagCount;
-				numberOfUniqueLeftObservations += inBagUnique;
+				int observationIndex = nodeObservations[i];
+				classWeightSum += (classWeights[observationIndex] * inBagObservations[observationIndex]);
 			}
-			else
+			classWeightSums[c] = classWeightSum;
+		}
+		return classWeightSums;
+	}
+	
+	/**
+	 * Determine whether the specified set of observations can be split with exact splits.
+	 * 
+	 * @param partition				The partition holding the sorted values of the observations in each node.
+	 * @param numberOfFeatures		The number of features in the dataset.
+	 * @param start					The start (inclusive) of the node's range in the partition.
+	 * @param end					The end (exclusive) of the node's range in the partition.
+	 * @return						Whether the observations have more than one value for any feature.
+	 */
+	private final boolean isSplitPossible(NodePartition partition, int numberOfFeatures, int start, int end)
+	{
+		for (int f = 0; f < numberOfFeatures; f++)
+		{
+			double[] featureData = partition.getFeatureData(f);
+			if (featureData[start] != featureData[end - 1])
 			{
-				// The observation should go down the right hand branch.
-				rightChildInBag[originalObsIndex] = inBagCount;
-				numberOfUniqueRightObservations += inBagUnique;
+				return true;
 			}
 		}
-		
-		return new ImmutableFourValues<int[], Integer, int[], Integer>(leftChildInBag, numberOfUniqueLeftObservations,
-				rightChildInBag, numberOfUniqueRightObservations);
+		return false;
+	}
+	
+	/**
+	 * Determine whether the specified set of observations can be split in binned mode.
+	 * 
+	 * @param binnedData			The bin of each observation for each feature.
+	 * @param nodeObservations		The original indices of the unique in bag observations.
+	 * @param start					The start (inclusive) of the node's range in nodeObservations.
+	 * @param end					The end (exclusive) of the node's range in nodeObservations.
+	 * @return						Whether the observations are in more than one bin for any feature.
+	 */
+	private final boolean isBinnedSplitPossible(BinnedFeatureData binnedData, int[] nodeObservations, int start, int end)
+	{
+		for (byte[] bins : binnedData.getFeatureBins())
+		{
+			byte firstBin = bins[nodeObservations[start]];
+			for (int i = start + 1; i < end; i++)
+			{
+				if (bins[nodeObservations[i]] != firstBin)
+				{
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Flatten the grown tree into the array-backed form used for prediction.
+	 * 
+	 * @return		The flattened tree.
+	 */
+	public final CompiledTree compile()
+	{
+		return new CompiledTree(this.tree);
 	}
 	
 }
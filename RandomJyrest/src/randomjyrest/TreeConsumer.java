@@ -0,0 +1,48 @@
+package randomjyrest;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Implements the abstract concept of a consumer of the trees of a forest as they are grown.
+ *
+ * When a forest is streamed (see Forest.stream), each tree is handed to the consumers as soon as it and all the trees before it
+ * have been grown, and is then discarded by the forest. The trees are delivered one at a time, in the order that they appear in the
+ * forest, on the thread that is streaming the forest, so consumers do not need to be thread safe and results that are summed over
+ * the trees are the same as those of a forest grown in full.
+ */
+public abstract class TreeConsumer
+{
+
+	/**
+	 * Prepare to receive the trees of a forest. Called once before the first tree is delivered.
+	 *
+	 * @param featureNames			The names of the features used to grow the forest, indexed by the feature ids used in the trees.
+	 * @param datasetFeatureNames	The names of the features of the training dataset that were not removed, including those that
+	 * 								were not used to grow the forest (e.g. because they only have one value).
+	 * @param classNames			The names of the classes in the training dataset, indexed by the class ids used in the trees.
+	 * @param trainingData			The values of the training observations, indexed by feature id and then by observation.
+	 * @param observationClasses	The id of the class of each training observation.
+	 */
+	public void start(String[] featureNames, String[] datasetFeatureNames, List<String> classNames, double[][] trainingData,
+			int[] observationClasses)
+	{
+	}
+
+	/**
+	 * Receive a tree of the forest.
+	 *
+	 * @param treeIndex			The position of the tree in the forest.
+	 * @param tree				The tree.
+	 * @param oobObservations	The observations that are OOB on the tree, with the bit for each OOB observation set.
+	 */
+	public abstract void consume(int treeIndex, CompiledTree tree, BitSet oobObservations);
+
+	/**
+	 * Finish receiving the trees of a forest. Called once after the last tree is delivered.
+	 */
+	public void finish()
+	{
+	}
+
+}
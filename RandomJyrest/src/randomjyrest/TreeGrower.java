@@ -1,10 +1,7 @@
 package randomjyrest;
 
-import java.util.HashSet;
-import java.util.List;
-import java.util.Map;
+import java.util.BitSet;
 import java.util.Random;
-import java.util.Set;
 import java.util.concurrent.Callable;
 
 import utilities.ImmutableTwoValues;
@@ -12,25 +9,23 @@ import utilities.ImmutableTwoValues;
 /**
  * Implements a class to enable parallel growth of the trees in the forest.
  */
-public class TreeGrower implements Callable<ImmutableTwoValues<Set<Integer>, Tree>>
+public class TreeGrower implements Callable<ImmutableTwoValues<BitSet, CompiledTree>>
 {
 	
 	/**
-	 * A mapping from the feature names to the data values sorted in ascending order.
+	 * The processed dataset containing the sorted feature values and class weights.
 	 */
-	private Map<String, double[]> dataset;
+	private ProcessedDataset dataset;
 	
 	/**
-	 * A mapping from the feature names to the original indices of the data values. For example, if the smallest observation value for
-	 * feature F comes from the 3rd observation in the input file, then the 0th entry in the array mapped to by F will be 2.
+	 * The binned feature data of the dataset, or null if the tree is grown with the exact split search.
 	 */
-	private Map<String, int[]> dataIndices;
+	private BinnedFeatureData binnedData;
 	
 	/**
-	 * A mapping from each class to an array containing the weight of each observation for the class.
-	 * The observations are ordered by their original indices (dataIndices ordering).
+	 * The parameters controlling how the tree is grown.
 	 */
-	private Map<String, double[]> classData;
+	private GrowthParameters growthParameters;
 	
 	/**
 	 * The number of features to test for each split.
@@ -43,9 +38,9 @@ public class TreeGrower implements Callable<ImmutableTwoValues<Set<Integer>, Tre
 	private Random treeRNG;
 	
 	/**
-	 * The indices of the observations that are OOB for this tree.
+	 * Records which observations are OOB for this tree, with the bit for each observation set if it is OOB.
 	 */
-	private Set<Integer> oobOnThisTree;
+	private BitSet oobOnThisTree;
 	
 	/**
 	 * Records which observations in the dataset are in bag for this tree. Observations that are not in bag are given a value of 0.
@@ -62,41 +57,52 @@ public class TreeGrower implements Callable<ImmutableTwoValues<Set<Integer>, Tre
 	/**
 	 * Set up the information needed to grow a tree.
 	 * 
-	 * @param featureData					The same as this.dataset.
-	 * @param indexData						The same as this.dataIndices.
-	 * @param classData						The same as this.classData.
+	 * @param dataset						The same as this.dataset.
 	 * @param mtry							The same as this.mtry.
 	 * @param seed							The seed for this tree's random number generator.
-	 * @param observationsFromEachClass		A mapping from class names to the indices of the observations that are members of the class.
-	 * @param numberOfObservations			The total number of observations in the dataset.
+	 * @param observationsFromEachClass		The indices of the observations that are members of each class, indexed by class id.
 	 */
-	public TreeGrower(Map<String, double[]> featureData, Map<String, int[]> indexData, Map<String, double[]> classData,
-			int mtry, long seed, Map<String, List<Integer>> observationsFromEachClass, int numberOfObservations)
+	public TreeGrower(ProcessedDataset dataset, int mtry, long seed, int[][] observationsFromEachClass)
 	{
-		this.dataset = featureData;
-		this.dataIndices = indexData;
-		this.classData = classData;
+		this(dataset, null, new GrowthParameters(), mtry, seed, observationsFromEachClass);
+	}
+	
+	/**
+	 * Set up the information needed to grow a tree, using the binned split search if binned feature data is supplied.
+	 * 
+	 * @param dataset						The same as this.dataset.
+	 * @param binnedData					The same as this.binnedData.
+	 * @param growthParameters				The same as this.growthParameters.
+	 * @param mtry							The same as this.mtry.
+	 * @param seed							The seed for this tree's random number generator.
+	 * @param observationsFromEachClass		The indices of the observations that are members of each class, indexed by class id.
+	 */
+	public TreeGrower(ProcessedDataset dataset, BinnedFeatureData binnedData, GrowthParameters growthParameters, int mtry, long seed,
+			int[][] observationsFromEachClass)
+	{
+		this.dataset = dataset;
+		this.binnedData = binnedData;
+		this.growthParameters = growthParameters;
 		this.mtry = mtry;
 		this.treeRNG = new Random(seed);
 		
 		// Determine observations to use. Perform a stratified bootstrap sampling to get the in bag observations.
+		int numberOfObservations = dataset.getNumberOfObservations();
 		this.inBagObservations = new int[numberOfObservations];
-		Set<String> classes = observationsFromEachClass.keySet();
-		for (String s : classes)
+		for (int[] indicesOfObservationsInClass : observationsFromEachClass)
 		{
-			List<Integer> indicesOfObservationsInClass = observationsFromEachClass.get(s);
-			int numberOfObservationsInClass = indicesOfObservationsInClass.size();
+			int numberOfObservationsInClass = indicesOfObservationsInClass.length;
 			for (int j = 0; j < numberOfObservationsInClass; j++)
 			{
 				int observationToSelect = treeRNG.nextInt(numberOfObservationsInClass);
-				int observationIndex = indicesOfObservationsInClass.get(observationToSelect).intValue();
+				int observationIndex = indicesOfObservationsInClass[observationToSelect];
 				int oldCount = this.inBagObservations[observationIndex];
 				this.inBagObservations[observationIndex] = oldCount + 1;
 			}
 		}
 		
 		// Determine the number of unique observations and the OOB observations.
-		this.oobOnThisTree = new HashSet<Integer>();
+		this.oobOnThisTree = new BitSet(numberOfObservations);
 		for (int i = 0; i < numberOfObservations; i++)
 		{
 			if (this.inBagObservations[i] != 0)
@@ -105,18 +111,18 @@ public class TreeGrower implements Callable<ImmutableTwoValues<Set<Integer>, Tre
 			}
 			else
 			{
-				this.oobOnThisTree.add(i);
+				this.oobOnThisTree.set(i);
 			}
 		}
 	}
 
-	public ImmutableTwoValues<Set<Integer>, Tree> call()
+	public ImmutableTwoValues<BitSet, CompiledTree> call()
 	{
-		// Initialise, grow and return the tree.
+		// Initialise and grow the tree, and then return it in the flattened form used for prediction.
 		Tree tree = new Tree();
-		tree.main(this.dataset, this.dataIndices, this.classData, this.inBagObservations, this.mtry, this.treeRNG,
+		tree.main(this.dataset, this.binnedData, this.growthParameters, this.inBagObservations, this.mtry, this.treeRNG,
 				this.numberOfUniqueObservations);
-		return new ImmutableTwoValues<Set<Integer>, Tree>(this.oobOnThisTree, tree);
+		return new ImmutableTwoValues<BitSet, CompiledTree>(this.oobOnThisTree, tree.compile());
 	}
 	
 }
@@ -0,0 +1,70 @@
+package scoringservice;
+
+import java.util.Arrays;
+
+/**
+ * Implements a thread safe record of the latencies of the most recent requests, from which percentiles of the latency are calculated.
+ */
+public class LatencyRecorder
+{
+
+	/**
+	 * The latencies of the most recent requests in nanoseconds, used as a ring buffer.
+	 */
+	private final long[] latencies;
+
+	/**
+	 * The total number of latencies recorded. The most recent latency is at index (numberOfLatencies - 1) % latencies.length.
+	 */
+	private long numberOfLatencies = 0;
+
+
+	/**
+	 * Class constructor for a latency recorder.
+	 *
+	 * @param windowSize	The number of most recent latencies that percentiles are calculated from.
+	 */
+	public LatencyRecorder(int windowSize)
+	{
+		this.latencies = new long[windowSize];
+	}
+
+	/**
+	 * Record the latency of a request.
+	 *
+	 * @param latency	The latency in nanoseconds.
+	 */
+	public final synchronized void record(long latency)
+	{
+		this.latencies[(int) (this.numberOfLatencies % this.latencies.length)] = latency;
+		this.numberOfLatencies++;
+	}
+
+	/**
+	 * Calculate a percentile of the latencies of the most recent requests, using the nearest rank method.
+	 *
+	 * @param percentile	The percentile to calculate, between 0 and 100.
+	 * @return				The percentile in nanoseconds, or 0 if no latencies have been recorded.
+	 */
+	public final synchronized long percentile(double percentile)
+	{
+		int numberInWindow = (int) Math.min(this.numberOfLatencies, this.latencies.length);
+		if (numberInWindow == 0)
+		{
+			return 0;
+		}
+		long[] sortedLatencies = Arrays.copyOf(this.latencies, numberInWindow);
+		Arrays.sort(sortedLatencies);
+		int rank = (int) Math.ceil((percentile / 100.0) * numberInWindow);
+		return sortedLatencies[Math.max(0, Math.min(numberInWindow, rank) - 1)];
+	}
+
+	/**
+	 * @return		The total number of latencies recorded.
+	 */
+	public final synchronized long getNumberOfLatencies()
+	{
+		return this.numberOfLatencies;
+	}
+
+}
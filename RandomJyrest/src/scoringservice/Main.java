@@ -0,0 +1,68 @@
+package scoringservice;
+
+import java.io.IOException;
+
+import randomjyrest.MappedForest;
+
+/**
+ * Implements a long-running service that predicts observations using a saved random forest.
+ */
+public class Main
+{
+
+	/**
+	 * Serve predictions from a forest saved by SaveForest until the process is killed.
+	 *
+	 * See ScoringServer for the format of the requests and responses.
+	 *
+	 * @param args		The location of the saved forest, the port to listen on, and optionally the number of threads used to predict
+	 * 					each batch (default 1), the number of observations at which a batch is predicted without waiting for more
+	 * 					requests (default 1024) and the longest time in microseconds that a request waits for others to join its batch
+	 * 					(default 2000).
+	 */
+	public static void main(String[] args)
+	{
+		// Parse the input arguments.
+		String modelLocation = args[0];  // The location of the saved forest.
+		int port = Integer.parseInt(args[1]);  // The port to listen on.
+		int numberOfThreads = 1;  // The number of threads used to predict each batch.
+		if (args.length > 2)
+		{
+			numberOfThreads = Integer.parseInt(args[2]);
+		}
+		int maximumBatchSize = 1024;  // The number of observations at which a batch is predicted without waiting for more requests.
+		if (args.length > 3)
+		{
+			maximumBatchSize = Integer.parseInt(args[3]);
+		}
+		long maximumBatchDelay = 2000;  // The longest time in microseconds that a request waits for others to join its batch.
+		if (args.length > 4)
+		{
+			maximumBatchDelay = Long.parseLong(args[4]);
+		}
+
+		// Load the forest and start serving.
+		MappedForest forest = new MappedForest(modelLocation);
+		final ScoringServer server = new ScoringServer(forest, numberOfThreads, maximumBatchSize, maximumBatchDelay);
+		try
+		{
+			server.start(port);
+		}
+		catch (IOException e)
+		{
+			// Caught an error while starting the server. Indicate this and exit.
+			System.out.println("An error occurred while starting the scoring server.");
+			e.printStackTrace();
+			System.exit(0);
+		}
+		Runtime.getRuntime().addShutdownHook(new Thread()
+			{
+				public void run()
+				{
+					server.stop(1);
+				}
+			});
+		System.out.format("Serving predictions from %d trees on port %d.\n", forest.getNumberOfTrees(), server.getPort());
+	}
+
+}
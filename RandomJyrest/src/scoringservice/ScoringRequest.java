@@ -0,0 +1,113 @@
+package scoringservice;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Implements a request to predict a set of observations that is waiting to be predicted as part of a batch.
+ */
+public class ScoringRequest
+{
+
+	/**
+	 * The values of the observations to predict, indexed by the feature ids of the forest and then by observation.
+	 */
+	final double[][] datasetToPredict;
+
+	/**
+	 * The number of observations to predict.
+	 */
+	final int numberOfObservations;
+
+	/**
+	 * The time, from System.nanoTime, at which the request was received.
+	 */
+	final long receivedAt;
+
+	/**
+	 * The predicted weight of each class for each observation, indexed by class id and then by observation. Set once the batch
+	 * containing the request has been predicted.
+	 */
+	private double[][] predictions = null;
+
+	/**
+	 * The reason the request could not be predicted, or null if it was predicted.
+	 */
+	private String error = null;
+
+	/**
+	 * Released once the request has been predicted or has failed.
+	 */
+	private final CountDownLatch completed = new CountDownLatch(1);
+
+
+	/**
+	 * Class constructor for a request.
+	 *
+	 * @param datasetToPredict		The same as this.datasetToPredict.
+	 * @param numberOfObservations	The same as this.numberOfObservations.
+	 * @param receivedAt			The same as this.receivedAt.
+	 */
+	public ScoringRequest(double[][] datasetToPredict, int numberOfObservations, long receivedAt)
+	{
+		this.datasetToPredict = datasetToPredict;
+		this.numberOfObservations = numberOfObservations;
+		this.receivedAt = receivedAt;
+	}
+
+	/**
+	 * Record the predictions of the request's observations from the predictions of the batch containing them.
+	 *
+	 * @param batchPredictions	The predicted weight of each class for each observation in the batch, indexed by class id and then by
+	 * 							observation.
+	 * @param batchOffset		The position in the batch of the request's first observation.
+	 */
+	final void complete(double[][] batchPredictions, int batchOffset)
+	{
+		double[][] requestPredictions = new double[batchPredictions.length][this.numberOfObservations];
+		for (int c = 0; c < batchPredictions.length; c++)
+		{
+			System.arraycopy(batchPredictions[c], batchOffset, requestPredictions[c], 0, this.numberOfObservations);
+		}
+		this.predictions = requestPredictions;
+		this.completed.countDown();
+	}
+
+	/**
+	 * Record that the request could not be predicted.
+	 *
+	 * @param error		The reason the request could not be predicted.
+	 */
+	final void fail(String error)
+	{
+		this.error = error;
+		this.completed.countDown();
+	}
+
+	/**
+	 * Wait until the request has been predicted or has failed.
+	 *
+	 * @throws InterruptedException
+	 */
+	final void await() throws InterruptedException
+	{
+		this.completed.await();
+	}
+
+	/**
+	 * @return		The predicted weight of each class for each observation, indexed by class id and then by observation, or null if
+	 * 				the request failed.
+	 */
+	final double[][] getPredictions()
+	{
+		return this.predictions;
+	}
+
+	/**
+	 * @return		The reason the request could not be predicted, or null if it was predicted.
+	 */
+	final String getError()
+	{
+		return this.error;
+	}
+
+}
@@ -0,0 +1,489 @@
+package scoringservice;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import randomjyrest.FeatureBinding;
+import randomjyrest.MappedForest;
+
+/**
+ * Implements an HTTP server that predicts observations using a forest that is loaded once when the server starts.
+ *
+ * Observations are predicted by POSTing them to /predict as tab separated text, in the same format as a dataset file: the first line
+ * contains the names of the columns, and each following line contains the values of one observation. Every feature used to grow the
+ * forest must have a column, and other columns (e.g. Classification or UPAccession) are ignored. The response is tab separated text
+ * with the names of the classes on the first line, followed by one line for each observation giving the predicted weight of each
+ * class, exactly as Forest.predict would give it.
+ *
+ * Requests are not predicted individually. A single batching thread takes the oldest waiting request, gathers the requests that
+ * arrive within the maximum batch delay (up to the maximum batch size), and predicts all of their observations together, so
+ * concurrent requests share the block-wise passes over the trees. As each observation is predicted independently of the others in
+ * its batch, the predictions do not depend on how the requests are batched.
+ *
+ * GET /stats reports the number of requests, observations and batches served, and the p50 and p99 latency (from a request being
+ * received to its response being ready) of the most recent requests.
+ */
+public class ScoringServer
+{
+
+	/**
+	 * The encoding of the bodies of requests and responses.
+	 */
+	private static final Charset ENCODING = Charset.forName("UTF-8");
+
+	/**
+	 * The number of threads handling HTTP exchanges. Each thread waits while its request is predicted, so this bounds the number of
+	 * requests that can be coalesced into one batch.
+	 */
+	private static final int NUMBER_OF_HANDLER_THREADS = 64;
+
+	/**
+	 * The number of most recent requests that the latency percentiles are calculated from.
+	 */
+	private static final int LATENCY_WINDOW_SIZE = 10000;
+
+	/**
+	 * The forest used to make the predictions.
+	 */
+	private final MappedForest forest;
+
+	/**
+	 * The number of threads used to predict each batch.
+	 */
+	private final int numberOfThreads;
+
+	/**
+	 * The number of observations at which a batch is predicted without waiting for more requests.
+	 */
+	private final int maximumBatchSize;
+
+	/**
+	 * The longest time in nanoseconds that the oldest request in a batch waits for other requests to join it.
+	 */
+	private final long maximumBatchDelay;
+
+	/**
+	 * The requests waiting to be predicted, oldest first.
+	 */
+	private final BlockingQueue<ScoringRequest> waitingRequests = new LinkedBlockingQueue<ScoringRequest>();
+
+	/**
+	 * The latencies of the most recent requests.
+	 */
+	private final LatencyRecorder latencies = new LatencyRecorder(LATENCY_WINDOW_SIZE);
+
+	/**
+	 * The number of observations predicted.
+	 */
+	private final AtomicLong numberOfObservations = new AtomicLong();
+
+	/**
+	 * The number of batches predicted.
+	 */
+	private final AtomicLong numberOfBatches = new AtomicLong();
+
+	/**
+	 * The HTTP server, or null if the server has not been started.
+	 */
+	private HttpServer server = null;
+
+	/**
+	 * The executor running the handlers of the HTTP exchanges.
+	 */
+	private ExecutorService handlerPool = null;
+
+	/**
+	 * The executor that the batches are predicted on, or null if they are predicted on the batching thread. It is created once when
+	 * the server starts, so no threads are started while a batch is being predicted.
+	 */
+	private ExecutorService predictionPool = null;
+
+	/**
+	 * The thread that gathers the waiting requests into batches and predicts them.
+	 */
+	private Thread batchingThread = null;
+
+
+	/**
+	 * Class constructor for a scoring server.
+	 *
+	 * @param forest				The forest used to make the predictions.
+	 * @param numberOfThreads		The number of threads used to predict each batch.
+	 * @param maximumBatchSize		The number of observations at which a batch is predicted without waiting for more requests.
+	 * @param maximumBatchDelay		The longest time in microseconds that the oldest request in a batch waits for other requests to
+	 * 								join it.
+	 */
+	public ScoringServer(MappedForest forest, int numberOfThreads, int maximumBatchSize, long maximumBatchDelay)
+	{
+		this.forest = forest;
+		this.numberOfThreads = numberOfThreads;
+		this.maximumBatchSize = maximumBatchSize;
+		this.maximumBatchDelay = TimeUnit.MICROSECONDS.toNanos(maximumBatchDelay);
+	}
+
+	/**
+	 * Start serving predictions.
+	 *
+	 * @param port	The port to listen on. If 0, any free port is used (see getPort).
+	 * @throws IOException
+	 */
+	public final void start(int port) throws IOException
+	{
+		this.server = HttpServer.create(new InetSocketAddress(port), 0);
+		this.server.createContext("/predict", new HttpHandler()
+			{
+				public void handle(HttpExchange exchange) throws IOException
+				{
+					ScoringServer.this.handlePredict(exchange);
+				}
+			});
+		this.server.createContext("/stats", new HttpHandler()
+			{
+				public void handle(HttpExchange exchange) throws IOException
+				{
+					ScoringServer.this.handleStats(exchange);
+				}
+			});
+		this.handlerPool = Executors.newFixedThreadPool(NUMBER_OF_HANDLER_THREADS);
+		this.server.setExecutor(this.handlerPool);
+		if (this.numberOfThreads > 1)
+		{
+			this.predictionPool = Executors.newFixedThreadPool(this.numberOfThreads);
+		}
+
+		this.batchingThread = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					ScoringServer.this.predictBatches();
+				}
+			}, "scoring-batcher");
+		this.batchingThread.start();
+		this.server.start();
+	}
+
+	/**
+	 * Stop serving predictions. Requests that are being handled are allowed up to the given delay to finish.
+	 *
+	 * @param delay		The longest time in seconds to wait for requests being handled to finish.
+	 */
+	public final void stop(int delay)
+	{
+		this.server.stop(delay);
+		this.batchingThread.interrupt();
+		this.handlerPool.shutdown();
+		if (this.predictionPool != null)
+		{
+			this.predictionPool.shutdown();
+		}
+	}
+
+	/**
+	 * @return		The port that the server is listening on.
+	 */
+	public final int getPort()
+	{
+		return this.server.getAddress().getPort();
+	}
+
+	/**
+	 * Gather the waiting requests into batches and predict them, until the batching thread is interrupted.
+	 */
+	private final void predictBatches()
+	{
+		List<ScoringRequest> batch = new ArrayList<ScoringRequest>();
+		while (!Thread.currentThread().isInterrupted())
+		{
+			batch.clear();
+			try
+			{
+				// Wait for a request, and then for others to join it until the batch is full or the oldest request has waited long
+				// enough.
+				ScoringRequest oldestRequest = this.waitingRequests.take();
+				batch.add(oldestRequest);
+				int batchSize = oldestRequest.numberOfObservations;
+				long batchDeadline = System.nanoTime() + this.maximumBatchDelay;
+				while (batchSize < this.maximumBatchSize)
+				{
+					long remainingDelay = batchDeadline - System.nanoTime();
+					ScoringRequest nextRequest = (remainingDelay > 0) ?
+							this.waitingRequests.poll(remainingDelay, TimeUnit.NANOSECONDS) : this.waitingRequests.poll();
+					if (nextRequest == null)
+					{
+						break;
+					}
+					batch.add(nextRequest);
+					batchSize += nextRequest.numberOfObservations;
+				}
+				this.predictBatch(batch, batchSize);
+			}
+			catch (InterruptedException e)
+			{
+				// The server is stopping, so fail the requests that have not been predicted.
+				this.waitingRequests.drainTo(batch);
+				for (ScoringRequest request : batch)
+				{
+					request.fail("The server is stopping.");
+				}
+				return;
+			}
+			catch (RuntimeException e)
+			{
+				// Caught an error while predicting the batch. Fail its requests, but keep serving.
+				System.out.println("An error occurred while predicting a batch of requests.");
+				e.printStackTrace();
+				for (ScoringRequest request : batch)
+				{
+					request.fail("An error occurred while predicting the request.");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Predict the observations of a batch of requests together, and hand each request its predictions.
+	 *
+	 * @param batch			The requests in the batch.
+	 * @param batchSize		The total number of observations in the requests.
+	 */
+	private final void predictBatch(List<ScoringRequest> batch, int batchSize)
+	{
+		// Concatenate the observations of the requests.
+		int numberOfFeatures = this.forest.getFeatureNames().length;
+		double[][] batchDataset = new double[numberOfFeatures][batchSize];
+		int batchOffset = 0;
+		for (ScoringRequest request : batch)
+		{
+			for (int i = 0; i < numberOfFeatures; i++)
+			{
+				System.arraycopy(request.datasetToPredict[i], 0, batchDataset[i], batchOffset, request.numberOfObservations);
+			}
+			batchOffset += request.numberOfObservations;
+		}
+
+		double[][] batchPredictions = this.forest.predict(batchDataset, batchSize, this.numberOfThreads,
+				this.predictionPool);
+		batchOffset = 0;
+		for (ScoringRequest request : batch)
+		{
+			request.complete(batchPredictions, batchOffset);
+			batchOffset += request.numberOfObservations;
+		}
+		this.numberOfObservations.addAndGet(batchSize);
+		this.numberOfBatches.incrementAndGet();
+	}
+
+	/**
+	 * Handle a request to predict observations.
+	 *
+	 * @param exchange	The HTTP exchange.
+	 * @throws IOException
+	 */
+	private final void handlePredict(HttpExchange exchange) throws IOException
+	{
+		long receivedAt = System.nanoTime();
+		if (!exchange.getRequestMethod().equals("POST"))
+		{
+			this.sendResponse(exchange, 405, "Observations must be POSTed to /predict.\n");
+			return;
+		}
+
+		// Parse the observations and wait for them to be predicted.
+		ScoringRequest request = null;
+		try
+		{
+			request = this.parseRequest(exchange, receivedAt);
+		}
+		catch (IllegalArgumentException e)
+		{
+			this.sendResponse(exchange, 400, e.getMessage() + "\n");
+			return;
+		}
+		if (request.numberOfObservations == 0)
+		{
+			request.complete(new double[this.forest.getClassNames().size()][0], 0);
+		}
+		else
+		{
+			this.waitingRequests.add(request);
+		}
+		try
+		{
+			request.await();
+		}
+		catch (InterruptedException e)
+		{
+			this.sendResponse(exchange, 503, "The server is stopping.\n");
+			return;
+		}
+		if (request.getError() != null)
+		{
+			this.sendResponse(exchange, 503, request.getError() + "\n");
+			return;
+		}
+
+		// Write the predictions.
+		double[][] predictions = request.getPredictions();
+		List<String> classNames = this.forest.getClassNames();
+		StringBuilder response = new StringBuilder();
+		for (int c = 0; c < classNames.size(); c++)
+		{
+			response.append(c == 0 ? "" : "\t").append(classNames.get(c));
+		}
+		response.append("\n");
+		for (int i = 0; i < request.numberOfObservations; i++)
+		{
+			for (int c = 0; c < classNames.size(); c++)
+			{
+				response.append(c == 0 ? "" : "\t").append(Double.toString(predictions[c][i]));
+			}
+			response.append("\n");
+		}
+		this.latencies.record(System.nanoTime() - request.receivedAt);
+		this.sendResponse(exchange, 200, response.toString());
+	}
+
+	/**
+	 * Handle a request for the statistics of the server.
+	 *
+	 * @param exchange	The HTTP exchange.
+	 * @throws IOException
+	 */
+	private final void handleStats(HttpExchange exchange) throws IOException
+	{
+		String stats = String.format("Requests\t%d\nObservations\t%d\nBatches\t%d\nLatencyP50Milliseconds\t%.3f\n" +
+				"LatencyP99Milliseconds\t%.3f\n", this.latencies.getNumberOfLatencies(), this.numberOfObservations.get(),
+				this.numberOfBatches.get(), this.latencies.percentile(50) / 1e6, this.latencies.percentile(99) / 1e6);
+		this.sendResponse(exchange, 200, stats);
+	}
+
+	/**
+	 * Parse the observations in the body of a request to predict them.
+	 *
+	 * @param exchange		The HTTP exchange.
+	 * @param receivedAt	The time, from System.nanoTime, at which the request was received.
+	 * @return				The request, with the observations arranged by the feature ids of the forest.
+	 * @throws IOException
+	 * @throws IllegalArgumentException	If the body is not a valid set of observations.
+	 */
+	private final ScoringRequest parseRequest(HttpExchange exchange, long receivedAt) throws IOException
+	{
+		BufferedReader reader = new BufferedReader(new InputStreamReader(exchange.getRequestBody(), ENCODING));
+		String line = reader.readLine();
+		while (line != null && line.trim().length() == 0)
+		{
+			line = reader.readLine();
+		}
+		if (line == null)
+		{
+			throw new IllegalArgumentException("The request contains no header line.");
+		}
+
+		// Bind the columns to the features used by the forest, rejecting the request before reading its observations if any are
+		// missing.
+		String[] columnNames = splitLine(line);
+		FeatureBinding binding = new FeatureBinding(this.forest.getFeatureNames(), columnNames);
+		if (!binding.isComplete())
+		{
+			throw new IllegalArgumentException(binding.describeMissingFeatures("The request"));
+		}
+		int[] featureColumns = binding.getFeatureColumns();
+		int numberOfFeatures = featureColumns.length;
+
+		// Read the observations.
+		List<double[]> observations = new ArrayList<double[]>();
+		int lineNumber = 1;
+		while ((line = reader.readLine()) != null)
+		{
+			lineNumber++;
+			if (line.trim().length() == 0)
+			{
+				continue;
+			}
+			String[] values = splitLine(line);
+			if (values.length != columnNames.length)
+			{
+				throw new IllegalArgumentException(String.format("Line %d of the request has %d values, but the header has %d columns.",
+						lineNumber, values.length, columnNames.length));
+			}
+			double[] observation = new double[numberOfFeatures];
+			for (int i = 0; i < numberOfFeatures; i++)
+			{
+				try
+				{
+					observation[i] = Double.parseDouble(values[featureColumns[i]]);
+				}
+				catch (NumberFormatException e)
+				{
+					throw new IllegalArgumentException(String.format("A non-numeric value was found on line %d of the request.",
+							lineNumber));
+				}
+			}
+			observations.add(observation);
+		}
+
+		// Arrange the observations by feature id.
+		int numberOfObservations = observations.size();
+		double[][] datasetToPredict = new double[numberOfFeatures][numberOfObservations];
+		for (int j = 0; j < numberOfObservations; j++)
+		{
+			double[] observation = observations.get(j);
+			for (int i = 0; i < numberOfFeatures; i++)
+			{
+				datasetToPredict[i][j] = observation[i];
+			}
+		}
+		return new ScoringRequest(datasetToPredict, numberOfObservations, receivedAt);
+	}
+
+	/**
+	 * Split a line of a request into its values. Empty values are kept, including those at the end of the line (e.g. an empty
+	 * Classification column for an unlabelled observation), so that every line has as many values as the header has columns.
+	 *
+	 * @param line	The line, with any carriage return at its end.
+	 * @return		The values on the line.
+	 */
+	private static final String[] splitLine(String line)
+	{
+		if (line.endsWith("\r"))
+		{
+			line = line.substring(0, line.length() - 1);
+		}
+		return line.split("\t", -1);
+	}
+
+	/**
+	 * Send a text response to an HTTP exchange and close it.
+	 *
+	 * @param exchange		The HTTP exchange.
+	 * @param statusCode	The HTTP status code of the response.
+	 * @param body			The body of the response.
+	 * @throws IOException
+	 */
+	private final void sendResponse(HttpExchange exchange, int statusCode, String body) throws IOException
+	{
+		byte[] encodedBody = body.getBytes(ENCODING);
+		exchange.getResponseHeaders().set("Content-Type", "text/tab-separated-values; charset=utf-8");
+		exchange.sendResponseHeaders(statusCode, encodedBody.length);
+		OutputStream responseBody = exchange.getResponseBody();
+		responseBody.write(encodedBody);
+		responseBody.close();
+	}
+
+}
@@ -0,0 +1,8 @@
+/**
+ * Serve predictions from a saved random forest over HTTP.
+ * 
+ * The forest is loaded once, and the observations in concurrent requests are predicted together in small batches.
+ * 
+ * @author Simon Bull
+ */
+package scoringservice;
@@ -13,6 +13,8 @@ import java.util.List;
 import java.util.Map;
 
 import randomjyrest.Forest;
+import randomjyrest.LoadForest;
+import randomjyrest.SaveForest;
 import utilities.DetermineDatasetProperties;
 
 /**
@@ -42,6 +44,7 @@ public class FinalClassification
 		Map<String, Long> seeds = new HashMap<String, Long>();  // The seeds used for growing the forest for each cutoff.
 		Map<String, Map<String, Double>> classWeights = new HashMap<String, Map<String, Double>>();  // The weights for each class for each cutoff.
 		Map<String, List<String>> featuresToRemove = new HashMap<String, List<String>>();  // The features to remove for each cutoff.
+		Map<String, String> modelLocations = new HashMap<String, String>();  // The location of the saved forest for each cutoff.
 		BufferedReader reader = null;
 		try
 		{
@@ -99,6 +102,12 @@ public class FinalClassification
 					// If the first entry on the line is Seed, then the line contains the seed to use for the given cutoff.
 					seeds.put(chunks[1], Long.parseLong(chunks[2]));
 				}
+				else if (chunks[0].equals("Model"))
+				{
+					// If the first entry on the line is Model, then the line contains the location of the saved forest for the given
+					// cutoff. The forest is loaded if the file exists, and grown and saved to it otherwise.
+					modelLocations.put(chunks[1], chunks[2]);
+				}
 				else
 				{
 					// Got an unexpected line in the parameter file.
@@ -162,14 +171,34 @@ public class FinalClassification
 			Map<String, Double> cutoffWeights = classWeights.get(s);
 			long cutoffSeed = seeds.get(s);
 			List<String> cutoffFeaturesToIgnore = featuresToRemove.get(s);
+			String cutoffModelLocation = modelLocations.get(s);
 			
 			// Determine the vector of weights for the observations.
 			double[] weights = DetermineDatasetProperties.determineObservationWeights(trainingDataset, cutoffWeights);
 			
-			// Determine the OOB predictions (predictions for the training set) and the test set predictions.
-			Forest forest = new Forest();
-			Map<String, double[]> oobPredictions = forest.main(trainingDataset, numberOfTrees, mtry, cutoffFeaturesToIgnore, weights,
-					cutoffSeed, numberOfThreads, isCalculateOOB);
+			// Determine the OOB predictions (predictions for the training set) and the test set predictions. If a saved forest exists
+			// it is loaded rather than grown again, provided that it was grown with the parameters given.
+			Forest forest = null;
+			Map<String, double[]> oobPredictions = new HashMap<String, double[]>();
+			if (cutoffModelLocation != null && new File(cutoffModelLocation).exists())
+			{
+				forest = LoadForest.main(cutoffModelLocation, trainingDataset, numberOfTrees, mtry, cutoffFeaturesToIgnore, weights,
+						cutoffSeed);
+				if (isCalculateOOB)
+				{
+					oobPredictions = forest.predictOOB();
+				}
+			}
+			else
+			{
+				forest = new Forest();
+				oobPredictions = forest.main(trainingDataset, numberOfTrees, mtry, cutoffFeaturesToIgnore, weights, cutoffSeed,
+						numberOfThreads, isCalculateOOB);
+				if (cutoffModelLocation != null)
+				{
+					SaveForest.main(forest, cutoffModelLocation, true);
+				}
+			}
 			Map<String, double[]> testSetPredictions = forest.predict(testingDataset, cutoffFeaturesToIgnore);
 
 			// Define the names of the class and UniProt accession columns in the datasets.
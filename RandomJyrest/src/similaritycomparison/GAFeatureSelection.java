@@ -12,7 +12,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import utilities.DetermineDatasetProperties;
+import randomjyrest.LoadDataset;
+import randomjyrest.LoadedDataset;
 
 /**
  * Implements the feature selection using a genetic algorithm.
@@ -324,8 +325,9 @@ public class GAFeatureSelection
 			if (Integer.parseInt(s) >= Integer.parseInt(startingCutoff))
 			{
 				String inputFile = inputDir + "/NonRedundant_" + s + ".txt";
-				double[] weights = DetermineDatasetProperties.determineObservationWeights(inputFile, classWeights);
-				featureselection.CHCGeneticAlgorithm.main(inputFile, resultsDir + "/" + s, populationSize, isVerboseOutput, mtry,
+				LoadedDataset loadedData = LoadDataset.main(inputFile, featuresToRemove);
+				double[] weights = loadedData.determineObservationWeights(classWeights);
+				featureselection.CHCGeneticAlgorithm.main(loadedData, resultsDir + "/" + s, populationSize, isVerboseOutput, mtry,
 						numberOfTreesPerForest, numberOfThreads, weights, featuresToRemove, generationsWithoutChange);
 			}
 		}
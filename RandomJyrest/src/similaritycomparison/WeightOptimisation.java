@@ -17,8 +17,9 @@ import java.util.Map;
 import java.util.Random;
 
 import randomjyrest.Forest;
+import randomjyrest.LoadDataset;
+import randomjyrest.LoadedDataset;
 import randomjyrest.PredictionAnalysis;
-import utilities.DetermineDatasetProperties;
 
 /**
  * Implements the testing of different mtry and class weight combinations.
@@ -246,8 +247,13 @@ public class WeightOptimisation
 				System.exit(0);
 			}
 
+			// Load the dataset once. Every forest reuses its sorted feature columns, and only the class weights are regenerated when
+			// the observation weights change.
+			LoadedDataset loadedData = LoadDataset.main(inputFile, featuresToRemove);
+			boolean[] featureMask = loadedData.createFeatureMask(featuresToRemove);
+			
 			// Determine the class of each observation and the number of each class.
-			List<String> classOfObservations = DetermineDatasetProperties.determineObservationClasses(inputFile);
+			List<String> classOfObservations = loadedData.determineObservationClasses();
 			
 			for (int mtry : mtryToUse)
 			{
@@ -285,7 +291,7 @@ public class WeightOptimisation
 							// Grow the forest.
 							Date startTime = new Date();
 							Forest forest = new Forest();
-							Map<String, double[]> predictionsFromForest = forest.main(inputFile, numberOfTreesPerForest, mtry, featuresToRemove,
+							Map<String, double[]> predictionsFromForest = forest.main(loadedData, featureMask, numberOfTreesPerForest, mtry,
 									weights, seeds.get(i), numberOfThreads, isCalculateOOB);
 							Date endTime = new Date();
 							timeTaken += (endTime.getTime() - startTime.getTime());